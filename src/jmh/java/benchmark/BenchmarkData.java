@@ -0,0 +1,80 @@
+package benchmark;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.mkcoding.llm.PromptBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs shared by the benchmarks, so runs are comparable without any fixture files.
+ */
+final class BenchmarkData {
+
+    static final int DIMENSION = 384;
+
+    private static final String[] WORDS = {
+            "document", "embedding", "segment", "retrieval", "answer", "question", "model", "vector", "index",
+            "upload", "cache", "token", "prompt", "context", "search", "score", "store", "service", "request",
+            "latency", "the", "a", "of", "and", "to", "is", "in", "for", "with", "on", "every", "each", "when"
+    };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Prose of roughly {@code characters} characters: sentences of 8 to 20 words, paragraphs of 3 to 7 sentences.
+     */
+    static String text(int characters, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(characters + 256);
+        while (text.length() < characters) {
+            int sentences = 3 + random.nextInt(5);
+            for (int s = 0; s < sentences; s++) {
+                int words = 8 + random.nextInt(13);
+                for (int w = 0; w < words; w++) {
+                    String word = WORDS[random.nextInt(WORDS.length)];
+                    text.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                    text.append(w == words - 1 ? ". " : " ");
+                }
+            }
+            text.append("\n\n");
+        }
+        return text.toString();
+    }
+
+    static List<TextSegment> segments(int count, int characters, long seed) {
+        List<TextSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(TextSegment.from(text(characters, seed + i).strip(), Metadata.from("index", String.valueOf(i))));
+        }
+        return segments;
+    }
+
+    static List<Content> contents(int count, int characters, long seed) {
+        List<TextSegment> segments = segments(count, characters, seed);
+        List<Content> contents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // Consecutive segments of one document, as retrieval results for the prompt builder
+            contents.add(PromptBuilder.positioned(segments.get(i), 1L, i));
+        }
+        return contents;
+    }
+
+    static float[] unitVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,111 @@
+package benchmark;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mkcoding.cache.SemanticAnswerCache;
+import org.mkcoding.embedding.EmbeddingExecutor;
+import org.mkcoding.embedding.SegmentEmbeddingCache;
+import org.mkcoding.ingestion.DocumentTextExtractor;
+import org.mkcoding.ingestion.IngestionProgressListener;
+import org.mkcoding.ingestion.StreamingIngestionPipeline;
+import org.mkcoding.lexical.LexicalIndexRegistry;
+import org.mkcoding.llm.ContentRetrieverService;
+import org.mkcoding.llm.PromptBuilder;
+import org.mkcoding.repository.InMemoryDocumentRepository;
+import org.mkcoding.service.DocumentService;
+import org.mkcoding.store.EmbeddingStoreFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole {@link DocumentService#chatWithDocument} path, offline: a stub chat model answers instantly and the
+ * answer cache is disabled, so every call retrieves, builds the prompt and generates. Questions rotate over a
+ * small set, so query embeddings come from the cache after the first round.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatBenchmark {
+
+    private static final List<String> QUESTIONS = List.of(
+            "How is the embedding cache invalidated?",
+            "What happens to a request when the model is busy?",
+            "Which segments end up in the prompt?",
+            "How are uploads indexed?");
+
+    private EmbeddingExecutor embeddingExecutor;
+    private ContentRetrieverService contentRetrieverService;
+    private DocumentService documentService;
+    private Long documentId;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+        embeddingExecutor = new EmbeddingExecutor(embeddingModel, 0, 16, 64, meterRegistry);
+        contentRetrieverService = new ContentRetrieverService(embeddingModel, 10, 0.5, 1000, 60, 0,
+                new LexicalIndexRegistry("dense"), 20, 60, meterRegistry);
+        documentService = new DocumentService(
+                new InMemoryDocumentRepository(),
+                embeddingModel,
+                new StubChatLanguageModel(),
+                contentRetrieverService,
+                new PromptBuilder(new OpenAiTokenizer(OpenAiChatModelName.GPT_4_O_MINI), 1000, 0.9, 0, meterRegistry),
+                new StreamingIngestionPipeline(embeddingExecutor, new SegmentEmbeddingCache(true, 1000, meterRegistry), new DocumentTextExtractor(1, meterRegistry), "character", 300, 0, null, 64, meterRegistry),
+                new EmbeddingStoreFactory("memory", 16, 200, 64, 1000, 4096, "data/documents", 4, 0, 1024),
+                new SemanticAnswerCache(false, 0.95f, 100, 1000, meterRegistry),
+                new LexicalIndexRegistry("dense"),
+                meterRegistry);
+
+        byte[] document = BenchmarkData.text(256 * 1024, 1).getBytes(StandardCharsets.UTF_8);
+        documentId = documentService.ingestDocument(new ByteArrayInputStream(document), IngestionProgressListener.NONE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        contentRetrieverService.shutdown();
+        embeddingExecutor.shutdown();
+    }
+
+    @Benchmark
+    public String chatWithDocument() {
+        String question = QUESTIONS.get(next);
+        next = (next + 1) % QUESTIONS.size();
+        return documentService.chatWithDocument(documentId, question);
+    }
+
+    private static class StubChatLanguageModel implements ChatLanguageModel {
+
+        @Override
+        public Response<AiMessage> generate(List<ChatMessage> messages) {
+            return Response.from(AiMessage.from("The answer."));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package benchmark;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mkcoding.concurrency.ModelConcurrencyLimiter;
+import org.mkcoding.concurrency.VirtualThreads;
+import org.mkcoding.llm.ConcurrencyLimitedChatLanguageModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to serve a burst of {@code chats} concurrent /chat requests against a stub model that only sleeps for
+ * {@code latencyMillis}, behind the model concurrency limiter with {@code permits} permits:
+ * <ul>
+ *     <li>{@code platform} - the 200 platform threads Tomcat uses by default, so at most 200 chats wait on the model
+ *     at once</li>
+ *     <li>{@code virtual} - a virtual thread per request, as with {@code spring.threads.virtual.enabled=true}, so
+ *     only the limiter bounds them</li>
+ * </ul>
+ * The {@code virtual} mode needs a Java 21+ JVM and fails in setup on older ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChatLoadBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"2000"})
+    public int chats;
+
+    @Param({"200"})
+    public long latencyMillis;
+
+    @Param({"1000"})
+    public int permits;
+
+    private ExecutorService requestThreads;
+    private ChatLanguageModel model;
+
+    @Setup
+    public void setUp() {
+        requestThreads = "virtual".equals(threads)
+                ? VirtualThreads.newThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+        ChatLanguageModel stub = messages -> {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Response.from(AiMessage.from("answer"));
+        };
+        model = new ConcurrencyLimitedChatLanguageModel(stub,
+                new ModelConcurrencyLimiter("stub", permits, 60_000, new SimpleMeterRegistry()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws Exception {
+        List<Future<String>> answers = new ArrayList<>(chats);
+        for (int i = 0; i < chats; i++) {
+            answers.add(requestThreads.submit(() -> model.generate("question")));
+        }
+        int completed = 0;
+        for (Future<String> answer : answers) {
+            answer.get();
+            completed++;
+        }
+        return completed;
+    }
+}
@@ -0,0 +1,156 @@
+package benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.mkcoding.ingestion.DocumentFormat;
+import org.mkcoding.ingestion.DocumentTextExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting the text of a corpus of 8 documents of 64 pages each (about 3 KB of text per page) with the
+ * {@link DocumentTextExtractor}, as the splitter would read it. Only PDF extraction uses {@code parallelism};
+ * for the other formats run with {@code -p parallelism=1}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DocumentParsingBenchmark {
+
+    private static final int DOCUMENTS = 8;
+    private static final int PAGES = 64;
+    private static final int PAGE_CHARACTERS = 3000;
+    private static final int LINE_CHARACTERS = 90;
+
+    @Param({"TEXT", "PDF", "DOCX"})
+    public DocumentFormat format;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private DocumentTextExtractor extractor;
+    private List<byte[]> corpus;
+    private final char[] buffer = new char[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        extractor = new DocumentTextExtractor(parallelism, new SimpleMeterRegistry());
+        corpus = new ArrayList<>(DOCUMENTS);
+        for (int d = 0; d < DOCUMENTS; d++) {
+            List<String> pages = new ArrayList<>(PAGES);
+            for (int p = 0; p < PAGES; p++) {
+                pages.add(BenchmarkData.text(PAGE_CHARACTERS, (long) d * PAGES + p));
+            }
+            corpus.add(switch (format) {
+                case TEXT -> String.join("", pages).getBytes(StandardCharsets.UTF_8);
+                case PDF -> pdf(pages);
+                case DOCX -> docx(pages);
+                case DOC -> throw new IllegalArgumentException("POI cannot write DOC files");
+            });
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Benchmark
+    public long extractCorpus() throws IOException {
+        long characters = 0;
+        for (byte[] document : corpus) {
+            try (Reader reader = extractor.open(new ByteArrayInputStream(document), format)) {
+                for (int read; (read = reader.read(buffer)) >= 0; ) {
+                    characters += read;
+                }
+            }
+        }
+        return characters;
+    }
+
+    private static byte[] pdf(List<String> pages) throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (String text : pages) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 7);
+                    content.setLeading(8);
+                    content.newLineAtOffset(36, 760);
+                    for (String line : lines(text)) {
+                        content.showText(line);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(pdf);
+        }
+        return pdf.toByteArray();
+    }
+
+    private static byte[] docx(List<String> pages) throws IOException {
+        ByteArrayOutputStream docx = new ByteArrayOutputStream();
+        try (XWPFDocument document = new XWPFDocument()) {
+            for (String text : pages) {
+                for (String paragraph : text.split("\n\n")) {
+                    document.createParagraph().createRun().setText(paragraph);
+                }
+            }
+            document.write(docx);
+        }
+        return docx.toByteArray();
+    }
+
+    /**
+     * Wraps text at word boundaries, since a PDF content stream cannot show line breaks.
+     */
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder(LINE_CHARACTERS);
+        for (String word : text.split("\\s+")) {
+            if (!line.isEmpty() && line.length() + word.length() >= LINE_CHARACTERS) {
+                lines.add(line.toString());
+                line.setLength(0);
+            }
+            if (!line.isEmpty()) {
+                line.append(' ');
+            }
+            line.append(word);
+        }
+        if (!line.isEmpty()) {
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,97 @@
+package benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mkcoding.embedding.BgeSmallEmbeddingModel;
+import org.mkcoding.embedding.EmbeddingModelPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of embedding a question while {@code UPLOAD_THREADS} threads keep embedding 16-segment batches, as
+ * the embedding executor does during a large upload:
+ * <ul>
+ *     <li>{@code shared} - the single {@code BgeSmallEnV15QuantizedEmbeddingModel} every caller used to share</li>
+ *     <li>{@code pool-N} - an {@link EmbeddingModelPool} of N instances, which embeds questions first</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class EmbeddingPoolBenchmark {
+
+    private static final int UPLOAD_THREADS = 2;
+
+    @Param({"shared", "pool-1", "pool-2"})
+    public String model;
+
+    private EmbeddingModel embeddingModel;
+    private List<Thread> uploads;
+    private volatile boolean running;
+
+    @Setup
+    public void setUp() {
+        if ("shared".equals(model)) {
+            embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+        } else {
+            int size = Integer.parseInt(model.substring("pool-".length()));
+            int intraOpThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / size);
+            byte[] bytes = BgeSmallEmbeddingModel.loadModel();
+            List<BgeSmallEmbeddingModel> models = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                models.add(new BgeSmallEmbeddingModel(bytes, intraOpThreads, size == 1));
+            }
+            embeddingModel = new EmbeddingModelPool(models, new SimpleMeterRegistry());
+        }
+
+        List<TextSegment> batch = BenchmarkData.segments(16, 300, 1);
+        running = true;
+        uploads = new ArrayList<>(UPLOAD_THREADS);
+        for (int i = 0; i < UPLOAD_THREADS; i++) {
+            Thread upload = new Thread(() -> {
+                while (running) {
+                    embeddingModel.embedAll(batch);
+                }
+            }, "upload-" + i);
+            upload.setDaemon(true);
+            upload.start();
+            uploads.add(upload);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        running = false;
+        for (Thread upload : uploads) {
+            upload.join();
+        }
+        if (embeddingModel instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    @Benchmark
+    public Embedding embedQuestion() {
+        return embeddingModel.embed("How does the tiered repository decide which documents to evict?").content();
+    }
+}
@@ -0,0 +1,52 @@
+package benchmark;
+
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.rag.content.Content;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mkcoding.llm.PromptBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PromptBuilder#buildPrompt} with the default budget of 1000 tokens, including local token counting,
+ * for retrieval results of 300-character segments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PromptBuilderBenchmark {
+
+    @Param({"5", "10", "20"})
+    public int segments;
+
+    private PromptBuilder promptBuilder;
+    private List<Content> contents;
+
+    @Setup
+    public void setUp() {
+        promptBuilder = new PromptBuilder(new OpenAiTokenizer(OpenAiChatModelName.GPT_4_O_MINI), 1000, 0.9, 0,
+                new SimpleMeterRegistry());
+        contents = BenchmarkData.contents(segments, 300, 1);
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return promptBuilder.buildPrompt(contents, "How is the embedding cache invalidated?");
+    }
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mkcoding.lexical.LexicalIndexRegistry;
+import org.mkcoding.llm.ContentRetrieverService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ContentRetrieverService#retrieveRelevantContents} over a document of 2000 embedded segments,
+ * either repeating a question (query embedding cached) or asking a new one every call (embedded each time).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetrievalBenchmark {
+
+    private static final int SEGMENTS = 2000;
+
+    @Param({"true", "false"})
+    public boolean repeatedQuestion;
+
+    private ContentRetrieverService contentRetrieverService;
+    private InMemoryEmbeddingStore<TextSegment> embeddingStore;
+    private long questions;
+
+    @Setup
+    public void setUp() {
+        EmbeddingModel embeddingModel = new BgeSmallEnV15QuantizedEmbeddingModel();
+        List<TextSegment> segments = BenchmarkData.segments(SEGMENTS, 300, 1);
+        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.addAll(embeddings, segments);
+
+        contentRetrieverService = new ContentRetrieverService(embeddingModel, 10, 0.5, 1000, 60, 0,
+                new LexicalIndexRegistry("dense"), 20, 60, new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        contentRetrieverService.shutdown();
+    }
+
+    @Benchmark
+    public List<Content> retrieveRelevantContents() {
+        String question = repeatedQuestion
+                ? "How is the embedding cache invalidated?"
+                : "How is the embedding cache invalidated for request " + questions++ + "?";
+        return contentRetrieverService.retrieveRelevantContents(question, embeddingStore);
+    }
+}
@@ -0,0 +1,81 @@
+package benchmark;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.mkcoding.ingestion.ContentHash;
+import org.mkcoding.ingestion.StreamingTextSplitter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting a document into 300-character segments:
+ * <ul>
+ *     <li>{@code recursive} - the way ingestion originally did, with {@code DocumentSplitters.recursive(300, 0)}</li>
+ *     <li>{@code streaming} - with the {@link StreamingTextSplitter}, copying every segment into a {@link TextSegment}</li>
+ *     <li>{@code streamingViews} - with the {@link StreamingTextSplitter}, only reading each view</li>
+ *     <li>{@code streamingViewsHashed} - hashing each view, the work a replacement does for an unchanged segment</li>
+ * </ul>
+ * With the default {@code -prof gc}, {@code gc.alloc.rate.norm} divided by {@code kilobytes / 1024} is the
+ * allocation per MB of text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int kilobytes;
+
+    private DocumentSplitter splitter;
+    private StreamingTextSplitter streamingSplitter;
+    private String text;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        splitter = DocumentSplitters.recursive(300, 0);
+        streamingSplitter = new StreamingTextSplitter(300);
+        text = BenchmarkData.text(kilobytes * 1024, 1);
+        document = Document.from(text);
+    }
+
+    @Benchmark
+    public List<TextSegment> recursive() {
+        return splitter.split(document);
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        streamingSplitter.split(new StringReader(text), blackhole::consume);
+    }
+
+    @Benchmark
+    public void streamingViews(Blackhole blackhole) throws IOException {
+        streamingSplitter.splitViews(new StringReader(text), view -> blackhole.consume(view.charAt(view.length() - 1)));
+    }
+
+    @Benchmark
+    public void streamingViewsHashed(Blackhole blackhole) throws IOException {
+        streamingSplitter.splitViews(new StringReader(text), view -> blackhole.consume(ContentHash.of(view)));
+    }
+}
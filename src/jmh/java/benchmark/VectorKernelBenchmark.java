@@ -0,0 +1,90 @@
+package benchmark;
+
+import org.mkcoding.store.NeighborQueue;
+import org.mkcoding.store.VectorKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The exact scan of the off-heap store with each {@link VectorKernel}: top-5 of {@code segments} random
+ * 384-dimensional unit vectors packed in direct buffers, selected with a {@link NeighborQueue}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class VectorKernelBenchmark {
+
+    private static final int QUERIES = 64;
+    private static final int VECTORS_PER_CHUNK = 4096;
+    private static final int MAX_RESULTS = 5;
+
+    @Param({"100000", "1000000"})
+    public int segments;
+
+    @Param({"scalar", "simd"})
+    public String kernel;
+
+    private VectorKernel vectorKernel;
+    private ByteBuffer[] chunks;
+    private float[][] queries;
+    private int dimension;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        vectorKernel = "simd".equals(kernel)
+                ? VectorKernel.simd().orElseThrow(() -> new IllegalStateException("jdk.incubator.vector is not available"))
+                : VectorKernel.scalar();
+        Random random = new Random(1);
+        dimension = BenchmarkData.unitVector(random).length;
+        chunks = new ByteBuffer[(segments + VECTORS_PER_CHUNK - 1) / VECTORS_PER_CHUNK];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = ByteBuffer.allocateDirect(VECTORS_PER_CHUNK * dimension * Float.BYTES).order(ByteOrder.nativeOrder());
+        }
+        for (int i = 0; i < segments; i++) {
+            ByteBuffer chunk = chunks[i / VECTORS_PER_CHUNK];
+            int offset = (i % VECTORS_PER_CHUNK) * dimension * Float.BYTES;
+            float[] vector = BenchmarkData.unitVector(random);
+            for (int d = 0; d < dimension; d++) {
+                chunk.putFloat(offset + d * Float.BYTES, vector[d]);
+            }
+        }
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = BenchmarkData.unitVector(random);
+        }
+    }
+
+    @Benchmark
+    public int scan() {
+        float[] query = queries[next];
+        next = (next + 1) % QUERIES;
+        NeighborQueue results = new NeighborQueue(MAX_RESULTS, true);
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            int first = chunk * VECTORS_PER_CHUNK;
+            int count = Math.min(VECTORS_PER_CHUNK, segments - first);
+            for (int slot = 0; slot < count; slot++) {
+                float dot = vectorKernel.dot(query, chunks[chunk], slot * dimension * Float.BYTES);
+                results.insertWithOverflow(first + slot, Math.max(0f, 1f - dot), MAX_RESULTS);
+            }
+        }
+        return results.topNode();
+    }
+}
@@ -0,0 +1,80 @@
+package benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.mkcoding.store.OffHeapEmbeddingStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-5 search of a store filled with random 384-dimensional unit vectors: langchain4j's
+ * {@code InMemoryEmbeddingStore} ({@code memory}) or the {@link OffHeapEmbeddingStore} ({@code offheap}), which
+ * scores with the SIMD kernel. The 1M case needs about 2 GB of heap for the vectors alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx6g", "--add-modules=jdk.incubator.vector"})
+public class VectorSearchBenchmark {
+
+    private static final int QUERIES = 64;
+
+    @Param({"10000", "100000", "1000000"})
+    public int segments;
+
+    @Param({"memory", "offheap"})
+    public String store;
+
+    private EmbeddingStore<TextSegment> embeddingStore;
+    private List<EmbeddingSearchRequest> requests;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        embeddingStore = "offheap".equals(store) ? new OffHeapEmbeddingStore(4096) : new InMemoryEmbeddingStore<>();
+        List<Embedding> embeddings = new ArrayList<>(segments);
+        List<TextSegment> embedded = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) {
+            embeddings.add(new Embedding(BenchmarkData.unitVector(random)));
+            embedded.add(TextSegment.from("segment " + i));
+        }
+        embeddingStore.addAll(embeddings, embedded);
+
+        requests = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            requests.add(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(new Embedding(BenchmarkData.unitVector(random)))
+                    .maxResults(5)
+                    .minScore(0.0)
+                    .build());
+        }
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> search() {
+        EmbeddingSearchRequest request = requests.get(next);
+        next = (next + 1) % QUERIES;
+        return embeddingStore.search(request);
+    }
+}
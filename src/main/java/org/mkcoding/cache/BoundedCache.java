@@ -0,0 +1,116 @@
+package org.mkcoding.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Thread-safe LRU cache bounded by entry count, with an optional time-to-live per entry.
+ * <p>
+ * Hits, misses and evictions are published with the Micrometer cache meter names
+ * ({@code cache.gets}, {@code cache.evictions}, {@code cache.size}), tagged with the cache name.
+ * The loader runs outside the lock, so a slow load never blocks lookups of other keys.
+ */
+public class BoundedCache<K, V> {
+
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    /**
+     * @param ttlNanos time-to-live of an entry after it was written, 0 for no expiry
+     */
+    public BoundedCache(String name, int maximumSize, long ttlNanos, MeterRegistry meterRegistry) {
+        this(name, maximumSize, ttlNanos, meterRegistry, System::nanoTime);
+    }
+
+    public BoundedCache(String name, int maximumSize, long ttlNanos, MeterRegistry meterRegistry, LongSupplier clock) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive.");
+        }
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        this.hits = Counter.builder("cache.gets").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cache.gets").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("cache.evictions").tag("cache", name).register(meterRegistry);
+        Gauge.builder("cache.size", this, BoundedCache::size).tag("cache", name).register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached value, or {@code null} when it is absent or expired.
+     */
+    public V getIfPresent(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && isExpired(entry)) {
+                entries.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+            (entry != null ? hits : misses).increment();
+            return entry != null ? entry.value : null;
+        }
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value, clock.getAsLong()));
+            Iterator<Entry<V>> eldest = entries.values().iterator();
+            while (entries.size() > maximumSize) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry) {
+        return ttlNanos > 0 && clock.getAsLong() - entry.writtenAtNanos >= ttlNanos;
+    }
+
+    private record Entry<V>(V value, long writtenAtNanos) {
+    }
+}
@@ -0,0 +1,153 @@
+package org.mkcoding.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.store.VectorMath;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Per-document cache of generated answers, looked up by question similarity rather than exact text.
+ * <p>
+ * A question hits when the cosine similarity between its embedding and a cached question's embedding is at
+ * least {@code answer.cache.similarity.threshold}. Each document keeps at most
+ * {@code answer.cache.max.entries.per.document} answers in LRU order, and at most
+ * {@code answer.cache.max.documents} documents are cached, also in LRU order.
+ * <p>
+ * Every hit records the generation latency of the cached answer in {@code answer.cache.saved.latency}.
+ * <p>
+ * Each document has a version that {@link #invalidate} bumps. A chat takes the {@link #version} before it reads
+ * the document and passes it to {@link #put}, which drops the answer if the document changed in the meantime.
+ */
+@Component
+@Slf4j
+public class SemanticAnswerCache {
+
+    private final boolean enabled;
+    private final float similarityThreshold;
+    private final int maxEntriesPerDocument;
+    private final int maxDocuments;
+    private final LinkedHashMap<Long, Deque<CachedAnswer>> answersByDocument = new LinkedHashMap<>(16, 0.75f, true);
+    // Guarded by answersByDocument; documents never invalidated are at version 0
+    private final Map<Long, Long> versions = new HashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Timer savedLatency;
+
+    public SemanticAnswerCache(
+            @Value("${answer.cache.enabled:true}") boolean enabled,
+            @Value("${answer.cache.similarity.threshold:0.95}") float similarityThreshold,
+            @Value("${answer.cache.max.entries.per.document:100}") int maxEntriesPerDocument,
+            @Value("${answer.cache.max.documents:1000}") int maxDocuments,
+            MeterRegistry meterRegistry
+    ) {
+        if (maxEntriesPerDocument <= 0 || maxDocuments <= 0) {
+            throw new IllegalArgumentException("Answer cache bounds must be positive.");
+        }
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntriesPerDocument = maxEntriesPerDocument;
+        this.maxDocuments = maxDocuments;
+
+        this.hits = Counter.builder("answer.cache.lookups").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("answer.cache.lookups").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("answer.cache.evictions").register(meterRegistry);
+        this.savedLatency = Timer.builder("answer.cache.saved.latency")
+                .description("Chat model latency avoided by answering from the cache")
+                .register(meterRegistry);
+    }
+
+    public Optional<String> lookup(Long documentId, Embedding question) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        float[] vector = VectorMath.normalize(question.vector());
+        synchronized (answersByDocument) {
+            Deque<CachedAnswer> answers = answersByDocument.get(documentId);
+            if (answers != null) {
+                CachedAnswer best = null;
+                float bestSimilarity = similarityThreshold;
+                for (CachedAnswer answer : answers) {
+                    float similarity = VectorMath.dot(vector, answer.question);
+                    if (similarity >= bestSimilarity) {
+                        best = answer;
+                        bestSimilarity = similarity;
+                    }
+                }
+                if (best != null) {
+                    // Move to the most recently used end
+                    answers.remove(best);
+                    answers.addLast(best);
+                    hits.increment();
+                    savedLatency.record(Duration.ofNanos(best.generationNanos));
+                    return Optional.of(best.answer);
+                }
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * The document's current version, to be taken before reading the content an answer is generated from.
+     */
+    public long version(Long documentId) {
+        synchronized (answersByDocument) {
+            return versions.getOrDefault(documentId, 0L);
+        }
+    }
+
+    /**
+     * Caches an answer generated from the document at {@code version}, unless the document has changed since.
+     */
+    public void put(Long documentId, long version, Embedding question, String answer, long generationNanos) {
+        if (!enabled) {
+            return;
+        }
+        CachedAnswer cached = new CachedAnswer(VectorMath.normalize(question.vector()), answer, generationNanos);
+        synchronized (answersByDocument) {
+            if (version != versions.getOrDefault(documentId, 0L)) {
+                log.debug("Dropping answer for document {} generated from an outdated version", documentId);
+                return;
+            }
+            Deque<CachedAnswer> answers = answersByDocument.computeIfAbsent(documentId, id -> new ArrayDeque<>());
+            answers.addLast(cached);
+            if (answers.size() > maxEntriesPerDocument) {
+                answers.removeFirst();
+                evictions.increment();
+            }
+            Iterator<Deque<CachedAnswer>> eldest = answersByDocument.values().iterator();
+            while (answersByDocument.size() > maxDocuments) {
+                evictions.increment(eldest.next().size());
+                eldest.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops every cached answer of the document and bumps its version, to be called whenever its content changes.
+     */
+    public void invalidate(Long documentId) {
+        synchronized (answersByDocument) {
+            answersByDocument.remove(documentId);
+            versions.merge(documentId, 1L, Long::sum);
+        }
+    }
+
+    private record CachedAnswer(float[] question, String answer, long generationNanos) {
+    }
+}
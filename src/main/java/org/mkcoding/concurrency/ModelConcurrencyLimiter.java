@@ -0,0 +1,72 @@
+package org.mkcoding.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.mkcoding.exception.exceptions.ModelBusyException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of in-flight calls to one upstream model. Callers wait up to {@code acquireTimeoutMillis}
+ * for a permit in arrival order, and are rejected with {@link ModelBusyException} after that.
+ * <p>
+ * The wait is cheap with virtual threads, which is what lets the request threads outnumber the permits.
+ */
+public class ModelConcurrencyLimiter {
+
+    private final String model;
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+
+    private final Timer permitWait;
+    private final Counter rejected;
+
+    public ModelConcurrencyLimiter(String model, int maxConcurrent, long acquireTimeoutMillis, MeterRegistry meterRegistry) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("Model concurrency limit must be positive.");
+        }
+        this.model = model;
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+
+        this.permitWait = Timer.builder("model.permit.wait")
+                .description("Time spent waiting for a model concurrency permit")
+                .tag("model", model)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("model.permit.rejected")
+                .tag("model", model)
+                .register(meterRegistry);
+        Gauge.builder("model.in.flight", permits, semaphore -> maxConcurrent - semaphore.availablePermits())
+                .tag("model", model)
+                .register(meterRegistry);
+    }
+
+    public void acquire() {
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        permitWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            rejected.increment();
+            throw new ModelBusyException("Too many concurrent requests to model " + model + ", please retry later",
+                    Math.max(1, TimeUnit.MILLISECONDS.toSeconds(acquireTimeoutMillis)));
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+}
@@ -0,0 +1,251 @@
+package org.mkcoding.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.mkcoding.exception.exceptions.WorkloadRejectedException;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares {@code slots} concurrent units of work between the {@link Lane}s, so that a bulk upload cannot take the
+ * capacity interactive requests need.
+ * <p>
+ * Each lane runs at most {@code maxConcurrent} units at once and queues at most {@code queueCapacity} more. When
+ * a slot frees up, the backlogged lane that has received the smallest share relative to its {@code weight} gets
+ * it (stride scheduling), so with both lanes backlogged, slots are handed out in proportion to their weights.
+ * An idle lane's share goes to the others.
+ * <p>
+ * {@link #admit} rejects with {@link WorkloadRejectedException} when the lane's queue is full or the wait exceeds
+ * {@code queueTimeoutMillis}. {@link #await} is for work already admitted by a bounded queue of its own, such as
+ * background upload jobs, and waits for as long as it takes.
+ */
+public class WorkloadScheduler {
+
+    public enum Lane {
+        INTERACTIVE, INGESTION;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public record LaneLimits(int weight, int maxConcurrent, int queueCapacity) {
+        public LaneLimits {
+            if (weight <= 0 || maxConcurrent <= 0 || queueCapacity < 0) {
+                throw new IllegalArgumentException("Lane weight and concurrency must be positive, queue capacity not negative.");
+            }
+        }
+    }
+
+    private final int slots;
+    private final long queueTimeoutNanos;
+    private final long retryAfterSeconds;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private int running;
+    // Pass of the last dispatch; a lane that becomes backlogged starts here instead of catching up on its idle time
+    private double virtualTime;
+
+    public WorkloadScheduler(int slots, Map<Lane, LaneLimits> limits, long queueTimeoutMillis, long retryAfterSeconds, MeterRegistry meterRegistry) {
+        if (slots <= 0) {
+            throw new IllegalArgumentException("Workload slots must be positive.");
+        }
+        this.slots = slots;
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis);
+        this.retryAfterSeconds = retryAfterSeconds;
+        for (Lane lane : Lane.values()) {
+            LaneLimits laneLimits = limits.get(lane);
+            if (laneLimits == null) {
+                throw new IllegalArgumentException("No limits for workload lane " + lane.tag());
+            }
+            lanes.put(lane, new LaneState(lane, laneLimits, meterRegistry));
+        }
+    }
+
+    /**
+     * Waits for a slot in the lane, or rejects the work if the lane is full.
+     *
+     * @throws WorkloadRejectedException if the lane's queue is full or no slot frees up in time
+     */
+    public Permit admit(Lane lane) {
+        return acquire(lane, true);
+    }
+
+    /**
+     * Waits for a slot in the lane without admission control.
+     */
+    public Permit await(Lane lane) {
+        return acquire(lane, false);
+    }
+
+    private Permit acquire(Lane lane, boolean admissionControl) {
+        LaneState state = lanes.get(lane);
+        long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (state.waiting.isEmpty() && canRun(state)) {
+                start(state);
+                state.queueWait.record(0, TimeUnit.NANOSECONDS);
+                return new Permit(state);
+            }
+            if (admissionControl && state.waiting.size() >= state.limits.queueCapacity()) {
+                throw reject(state, "full");
+            }
+            if (state.waiting.isEmpty()) {
+                state.pass = Math.max(state.pass, virtualTime);
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            state.waiting.addLast(waiter);
+            try {
+                long remaining = queueTimeoutNanos;
+                while (!waiter.granted) {
+                    if (!admissionControl) {
+                        waiter.condition.awaitUninterruptibly();
+                    } else if (remaining <= 0) {
+                        state.waiting.remove(waiter);
+                        throw reject(state, "timeout");
+                    } else {
+                        remaining = waiter.condition.awaitNanos(remaining);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!waiter.granted) {
+                    state.waiting.remove(waiter);
+                    throw new IllegalStateException("Interrupted while waiting for a " + lane.tag() + " slot", e);
+                }
+            }
+            state.queueWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return new Permit(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(LaneState state) {
+        lock.lock();
+        try {
+            state.running--;
+            running--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (running < slots) {
+            LaneState next = null;
+            for (LaneState state : lanes.values()) {
+                if (!state.waiting.isEmpty() && canRun(state) && (next == null || state.pass < next.pass)) {
+                    next = state;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            Waiter waiter = next.waiting.removeFirst();
+            start(next);
+            waiter.granted = true;
+            waiter.condition.signal();
+        }
+    }
+
+    private boolean canRun(LaneState state) {
+        return running < slots && state.running < state.limits.maxConcurrent();
+    }
+
+    private void start(LaneState state) {
+        virtualTime = state.pass;
+        state.pass += 1.0 / state.limits.weight();
+        state.running++;
+        running++;
+    }
+
+    private WorkloadRejectedException reject(LaneState state, String reason) {
+        state.rejected(reason).increment();
+        return new WorkloadRejectedException("Too much " + state.lane.tag() + " work in progress, retry later", retryAfterSeconds);
+    }
+
+    /**
+     * A slot held until {@link #close()}.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final LaneState state;
+        private boolean closed;
+
+        private Permit(LaneState state) {
+            this.state = state;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(state);
+            }
+        }
+    }
+
+    private static final class Waiter {
+
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    private static final class LaneState {
+
+        private final Lane lane;
+        private final LaneLimits limits;
+        private final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        private final Timer queueWait;
+        private final Counter rejectedFull;
+        private final Counter rejectedTimeout;
+        private int running;
+        private double pass;
+
+        private LaneState(Lane lane, LaneLimits limits, MeterRegistry meterRegistry) {
+            this.lane = lane;
+            this.limits = limits;
+            this.queueWait = Timer.builder("workload.queue.wait")
+                    .description("Time work waited for a slot in its lane")
+                    .tag("lane", lane.tag())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry);
+            this.rejectedFull = rejectedCounter(lane, "full", meterRegistry);
+            this.rejectedTimeout = rejectedCounter(lane, "timeout", meterRegistry);
+            // Read without the lock; a slightly stale value is fine for a gauge
+            Gauge.builder("workload.queue.size", waiting, ArrayDeque::size)
+                    .tag("lane", lane.tag())
+                    .register(meterRegistry);
+            Gauge.builder("workload.running", this, state -> state.running)
+                    .tag("lane", lane.tag())
+                    .register(meterRegistry);
+        }
+
+        private Counter rejected(String reason) {
+            return "full".equals(reason) ? rejectedFull : rejectedTimeout;
+        }
+
+        private static Counter rejectedCounter(Lane lane, String reason, MeterRegistry meterRegistry) {
+            return Counter.builder("workload.rejected")
+                    .description("Work rejected with 429 because its lane was full")
+                    .tag("lane", lane.tag())
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,40 +1,162 @@
 package org.mkcoding.controller;
 
 import jakarta.validation.Valid;
+import org.mkcoding.concurrency.WorkloadScheduler;
+import org.mkcoding.concurrency.WorkloadScheduler.Lane;
 import org.mkcoding.dto.ChatRequestDto;
 import org.mkcoding.dto.ChatResponseDto;
+import org.mkcoding.dto.DocumentUpdateDto;
+import org.mkcoding.dto.MultiDocumentChatRequestDto;
+import org.mkcoding.dto.SearchMatchDto;
+import org.mkcoding.dto.SearchResponseDto;
+import org.mkcoding.dto.UploadJobDto;
 import org.mkcoding.dto.UploadResponseDto;
+import org.mkcoding.ingestion.UploadJob;
+import org.mkcoding.llm.RetrievedSegment;
+import org.mkcoding.service.ChatStreamService;
 import org.mkcoding.service.DocumentService;
+import org.mkcoding.service.DocumentUpdate;
+import org.mkcoding.service.UploadJobService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
 
 
 @RestController
 @Validated
 public class DocumentController {
     private final DocumentService service;
+    private final UploadJobService uploadJobService;
+    private final ChatStreamService chatStreamService;
+    private final WorkloadScheduler workloadScheduler;
+    private final long streamTimeoutMillis;
 
-    public DocumentController(DocumentService service) {
+    public DocumentController(
+            DocumentService service,
+            UploadJobService uploadJobService,
+            ChatStreamService chatStreamService,
+            WorkloadScheduler workloadScheduler,
+            @Value("${chat.streaming.timeout.millis:120000}") long streamTimeoutMillis
+    ) {
         this.service = service;
+        this.uploadJobService = uploadJobService;
+        this.chatStreamService = chatStreamService;
+        this.workloadScheduler = workloadScheduler;
+        this.streamTimeoutMillis = streamTimeoutMillis;
     }
 
     @PostMapping("/upload")
     public ResponseEntity<UploadResponseDto> uploadDocument(@RequestParam("file") MultipartFile file) {
-        Long documentId = service.uploadDocument(file);
+        Long documentId;
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INGESTION)) {
+            documentId = service.uploadDocument(file);
+        }
         UploadResponseDto response = new UploadResponseDto(documentId, "Success");
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping(value = "/upload", params = "async=true")
+    public ResponseEntity<UploadJobDto> uploadDocumentAsync(@RequestParam("file") MultipartFile file) {
+        UploadJob job = uploadJobService.submit(file);
+        return ResponseEntity.accepted().body(toDto(job));
+    }
+
+    @GetMapping("/upload/{jobId}")
+    public ResponseEntity<UploadJobDto> getUploadJob(@PathVariable("jobId") String jobId) {
+        UploadJob job = uploadJobService.getJob(jobId);
+        return ResponseEntity.ok(toDto(job));
+    }
+
+    @PostMapping("/documents/{documentId}/append")
+    public ResponseEntity<DocumentUpdateDto> appendToDocument(@PathVariable("documentId") Long documentId, @RequestParam("file") MultipartFile file) {
+        DocumentUpdate update;
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INGESTION)) {
+            update = service.appendToDocument(documentId, file);
+        }
+        return ResponseEntity.ok(toDto(update));
+    }
+
+    @PutMapping("/documents/{documentId}")
+    public ResponseEntity<DocumentUpdateDto> replaceDocument(@PathVariable("documentId") Long documentId, @RequestParam("file") MultipartFile file) {
+        DocumentUpdate update;
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INGESTION)) {
+            update = service.replaceDocument(documentId, file);
+        }
+        return ResponseEntity.ok(toDto(update));
+    }
+
+    @DeleteMapping("/documents/{documentId}")
+    public ResponseEntity<Void> deleteDocument(@PathVariable("documentId") Long documentId) {
+        service.deleteDocument(documentId);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/chat")
     public ResponseEntity<ChatResponseDto> chatWithDocument(@Valid @RequestBody ChatRequestDto requestDto) {
-        String answer = service.chatWithDocument(requestDto.getDocumentId(), requestDto.getQuestion());
+        String answer;
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INTERACTIVE)) {
+            answer = service.chatWithDocument(requestDto.getDocumentId(), requestDto.getQuestion());
+        }
         ChatResponseDto response = new ChatResponseDto(answer);
         return ResponseEntity.ok(response);
     }
 
+    @PostMapping("/chat/documents")
+    public ResponseEntity<ChatResponseDto> chatWithDocuments(@Valid @RequestBody MultiDocumentChatRequestDto requestDto) {
+        String answer;
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INTERACTIVE)) {
+            answer = service.chatWithDocuments(selectedDocuments(requestDto), requestDto.getQuestion());
+        }
+        return ResponseEntity.ok(new ChatResponseDto(answer));
+    }
+
+    @PostMapping("/search")
+    public ResponseEntity<SearchResponseDto> searchDocuments(@Valid @RequestBody MultiDocumentChatRequestDto requestDto) {
+        List<RetrievedSegment> segments;
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INTERACTIVE)) {
+            segments = service.searchDocuments(selectedDocuments(requestDto), requestDto.getQuestion());
+        }
+        List<SearchMatchDto> matches = segments.stream()
+                .map(segment -> new SearchMatchDto(segment.documentId(), segment.score(), segment.segment().text()))
+                .toList();
+        return ResponseEntity.ok(new SearchResponseDto(matches));
+    }
+
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChatWithDocument(@Valid @RequestBody ChatRequestDto requestDto) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        // Held for retrieval only; the tokens arrive later, under the chat model's own concurrency limit
+        try (WorkloadScheduler.Permit permit = workloadScheduler.admit(Lane.INTERACTIVE)) {
+            chatStreamService.streamChatWithDocument(requestDto.getDocumentId(), requestDto.getQuestion(), new SseChatStreamHandler(emitter));
+        }
+        return emitter;
+    }
+
+    private static List<Long> selectedDocuments(MultiDocumentChatRequestDto requestDto) {
+        // null selects every document
+        return requestDto.isAllDocuments() ? null : requestDto.getDocumentIds();
+    }
+
+    private static UploadJobDto toDto(UploadJob job) {
+        return new UploadJobDto(job.getId(), job.getStatus().name(), job.getSegmentsEmbedded(),
+                job.getTotalSegments(), job.getDocumentId(), job.getError());
+    }
+
+    private static DocumentUpdateDto toDto(DocumentUpdate update) {
+        return new DocumentUpdateDto(update.documentId(), update.segmentsKept(), update.segmentsAdded(), update.segmentsRemoved());
+    }
+
 }
\ No newline at end of file
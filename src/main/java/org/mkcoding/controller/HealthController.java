@@ -1,5 +1,9 @@
 package org.mkcoding.controller;
 
+import org.mkcoding.health.ModelReadinessHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -8,8 +12,22 @@ import org.springframework.web.bind.annotation.RestController;
 @RestController
 public class HealthController {
 
+    private final ModelReadinessHealthIndicator modelReadiness;
+
+    public HealthController(ModelReadinessHealthIndicator modelReadiness) {
+        this.modelReadiness = modelReadiness;
+    }
+
     @GetMapping("/health")
     public ResponseEntity<String> healthCheck() {
         return ResponseEntity.ok("Application is running");
     }
+
+    // Ready once the models can serve requests, 503 otherwise so load balancers stop routing here
+    @GetMapping("/health/ready")
+    public ResponseEntity<Health> readinessCheck() {
+        Health health = modelReadiness.health();
+        HttpStatus status = Status.UP.equals(health.getStatus()) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(health);
+    }
 }
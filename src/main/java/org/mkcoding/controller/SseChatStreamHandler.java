@@ -0,0 +1,57 @@
+package org.mkcoding.controller;
+
+import dev.langchain4j.rag.content.Content;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.dto.ChatResponseDto;
+import org.mkcoding.llm.ChatStreamHandler;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes a streamed chat as Server-Sent Events: one {@code context} event with the retrieved segment texts,
+ * a {@code token} event per token, then {@code done} with the full answer or {@code error}.
+ */
+@Slf4j
+class SseChatStreamHandler implements ChatStreamHandler {
+
+    private final SseEmitter emitter;
+
+    SseChatStreamHandler(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void onContext(List<Content> contents) {
+        List<String> segments = contents.stream().map(content -> content.textSegment().text()).toList();
+        send(SseEmitter.event().name("context").data(segments, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void onToken(String token) {
+        send(SseEmitter.event().name("token").data(token));
+    }
+
+    @Override
+    public void onComplete(String answer) {
+        send(SseEmitter.event().name("done").data(new ChatResponseDto(answer), MediaType.APPLICATION_JSON));
+        emitter.complete();
+    }
+
+    @Override
+    public void onError(Throwable error) {
+        send(SseEmitter.event().name("error").data(String.valueOf(error.getMessage())));
+        emitter.complete();
+    }
+
+    private void send(SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; the remaining tokens are dropped
+            log.debug("Could not send chat stream event: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package org.mkcoding.dto;
+
+public record DocumentUpdateDto(Long documentId, int segmentsKept, int segmentsAdded, int segmentsRemoved) {
+}
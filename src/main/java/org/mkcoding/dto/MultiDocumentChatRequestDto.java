@@ -0,0 +1,28 @@
+package org.mkcoding.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+@Getter
+@NoArgsConstructor
+public class MultiDocumentChatRequestDto {
+
+    private List<Long> documentIds;
+
+    private boolean allDocuments;
+
+    @NotBlank(message = "Question cannot be empty")
+    private String question;
+
+    @JsonIgnore
+    @AssertTrue(message = "Either documentIds or allDocuments must be set")
+    public boolean isDocumentSelectionValid() {
+        return allDocuments != (documentIds != null && !documentIds.isEmpty());
+    }
+}
@@ -0,0 +1,4 @@
+package org.mkcoding.dto;
+
+public record SearchMatchDto(Long documentId, double score, String text) {
+}
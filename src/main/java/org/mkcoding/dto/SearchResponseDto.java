@@ -0,0 +1,6 @@
+package org.mkcoding.dto;
+
+import java.util.List;
+
+public record SearchResponseDto(List<SearchMatchDto> matches) {
+}
@@ -0,0 +1,4 @@
+package org.mkcoding.dto;
+
+public record UploadJobDto(String jobId, String status, int segmentsEmbedded, Long totalSegments, Long documentId, String error) {
+}
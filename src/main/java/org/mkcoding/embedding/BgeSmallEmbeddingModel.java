@@ -0,0 +1,89 @@
+package org.mkcoding.embedding;
+
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import dev.langchain4j.model.embedding.onnx.AbstractInProcessEmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.OnnxBertBiEncoder;
+import dev.langchain4j.model.embedding.onnx.PoolingMode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The quantized bge-small-en-v1.5 model bundled with langchain4j, but with an ONNX session of its own.
+ * {@code BgeSmallEnV15QuantizedEmbeddingModel} keeps one static session for every instance, so pooling it
+ * would not add any capacity.
+ * <p>
+ * Segments of one {@code embedAll} call are embedded one after another on the calling thread; parallelism comes
+ * from the session's intra-op threads and from running several instances.
+ */
+public class BgeSmallEmbeddingModel extends AbstractInProcessEmbeddingModel implements AutoCloseable {
+
+    public static final String MODEL_RESOURCE = "bge-small-en-v1.5-q.onnx";
+    public static final String TOKENIZER_RESOURCE = "bge-small-en-v1.5-q-tokenizer.json";
+    private static final int DIMENSION = 384;
+
+    private final OrtSession session;
+    private final OnnxBertBiEncoder encoder;
+
+    /**
+     * @param model          the ONNX model, see {@link #loadModel()}
+     * @param intraOpThreads threads the session may use for one segment
+     * @param allowSpinning  whether idle intra-op threads busy-wait for work, which lowers latency but burns
+     *                       cores other sessions could use
+     */
+    public BgeSmallEmbeddingModel(byte[] model, int intraOpThreads, boolean allowSpinning) {
+        super(Runnable::run);
+        OrtEnvironment environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions();
+             InputStream tokenizer = resource(TOKENIZER_RESOURCE)) {
+            options.setIntraOpNumThreads(intraOpThreads);
+            options.setInterOpNumThreads(1);
+            options.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL);
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.addConfigEntry("session.intra_op.allow_spinning", allowSpinning ? "1" : "0");
+            this.session = environment.createSession(model, options);
+            this.encoder = new OnnxBertBiEncoder(environment, session, tokenizer, PoolingMode.CLS);
+        } catch (OrtException e) {
+            throw new IllegalStateException("Failed to create an ONNX session for " + MODEL_RESOURCE, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + TOKENIZER_RESOURCE, e);
+        }
+    }
+
+    /**
+     * Reads the bundled model once, so that every instance can create its session from the same bytes.
+     */
+    public static byte[] loadModel() {
+        try (InputStream model = resource(MODEL_RESOURCE)) {
+            return model.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + MODEL_RESOURCE, e);
+        }
+    }
+
+    @Override
+    protected OnnxBertBiEncoder model() {
+        return encoder;
+    }
+
+    @Override
+    protected Integer knownDimension() {
+        return DIMENSION;
+    }
+
+    @Override
+    public void close() throws OrtException {
+        session.close();
+    }
+
+    private static InputStream resource(String name) throws IOException {
+        InputStream stream = BgeSmallEmbeddingModel.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Missing resource " + name);
+        }
+        return stream;
+    }
+}
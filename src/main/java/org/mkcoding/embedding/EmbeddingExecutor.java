@@ -0,0 +1,150 @@
+package org.mkcoding.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits embedding work into micro-batches and runs them on a bounded worker pool.
+ * Results are returned in the order of the input segments. When the work queue is full,
+ * the calling thread embeds the batch itself, which throttles producers instead of buffering.
+ */
+@Component
+@Slf4j
+public class EmbeddingExecutor {
+
+    private final EmbeddingModel embeddingModel;
+    private final int microBatchSize;
+    private final ThreadPoolExecutor workers;
+
+    private final Counter embeddedSegments;
+    private final Timer batchLatency;
+    private final DistributionSummary throughput;
+
+    public EmbeddingExecutor(
+            EmbeddingModel embeddingModel,
+            @Value("${embedding.executor.threads:0}") int threads,
+            @Value("${embedding.executor.batch.size:16}") int microBatchSize,
+            @Value("${embedding.executor.queue.capacity:64}") int queueCapacity,
+            MeterRegistry meterRegistry
+    ) {
+        if (microBatchSize <= 0) {
+            throw new IllegalArgumentException("Embedding micro-batch size must be positive.");
+        }
+        // 0 means one worker per available core
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+
+        this.embeddingModel = embeddingModel;
+        this.microBatchSize = microBatchSize;
+        this.workers = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+
+        this.embeddedSegments = Counter.builder("embedding.segments")
+                .description("Segments embedded by the embedding executor")
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("embedding.batch.latency")
+                .description("Latency of a single embedding micro-batch")
+                .tag("batch.size", String.valueOf(microBatchSize))
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.throughput = DistributionSummary.builder("embedding.throughput")
+                .description("Segments embedded per second, per embedAll call")
+                .baseUnit("segments/s")
+                .register(meterRegistry);
+        Gauge.builder("embedding.executor.queue.size", workers, executor -> executor.getQueue().size())
+                .register(meterRegistry);
+        Gauge.builder("embedding.executor.active", workers, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+
+        log.info("Embedding executor started with {} workers and micro-batches of {}", poolSize, microBatchSize);
+    }
+
+    public List<Embedding> embedAll(List<TextSegment> segments) {
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+
+        List<Embedding> embeddings;
+        if (segments.size() <= microBatchSize) {
+            // Not worth a hand-off to the pool
+            embeddings = embedBatch(segments);
+        } else {
+            List<Future<List<Embedding>>> futures = new ArrayList<>();
+            for (int from = 0; from < segments.size(); from += microBatchSize) {
+                List<TextSegment> batch = segments.subList(from, Math.min(from + microBatchSize, segments.size()));
+                futures.add(workers.submit(() -> embedBatch(batch)));
+            }
+            embeddings = new ArrayList<>(segments.size());
+            for (Future<List<Embedding>> future : futures) {
+                embeddings.addAll(await(future));
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        if (seconds > 0) {
+            throughput.record(segments.size() / seconds);
+        }
+        return embeddings;
+    }
+
+    private List<Embedding> embedBatch(List<TextSegment> batch) {
+        List<Embedding> embeddings = batchLatency.record(() -> embeddingModel.embedAll(batch).content());
+        if (embeddings == null || embeddings.size() != batch.size()) {
+            throw new IllegalStateException("Embedding model returned " + (embeddings == null ? 0 : embeddings.size())
+                    + " embeddings for " + batch.size() + " segments.");
+        }
+        embeddedSegments.increment(batch.size());
+        return embeddings;
+    }
+
+    private static List<Embedding> await(Future<List<Embedding>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for embeddings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Embedding batch failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "embedding-worker-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.mkcoding.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedding model backed by several model instances, each driven by a worker thread of its own.
+ * <p>
+ * Calls wait in one priority queue: {@link #embed(String)} and {@link #embed(TextSegment)}, which are how
+ * questions are embedded, run at {@link Priority#QUERY} and overtake every waiting {@link #embedAll} call,
+ * which is how ingestion embeds its micro-batches. Batches are embedded one segment at a time and a waiting
+ * query runs between two segments, so a query waits for at most one segment, however long the upload in front
+ * of it.
+ */
+@Slf4j
+public class EmbeddingModelPool implements EmbeddingModel, AutoCloseable {
+
+    public enum Priority {
+        // Declared in dispatch order
+        QUERY, INGESTION
+    }
+
+    private static final Comparator<Task> DISPATCH_ORDER = Comparator
+            .comparing((Task task) -> task.priority)
+            .thenComparingLong(task -> task.sequence);
+
+    private final List<EmbeddingModel> models;
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>(64, DISPATCH_ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Priority, AtomicInteger> waiting = new EnumMap<>(Priority.class);
+    private final Map<Priority, Timer> queueWait = new EnumMap<>(Priority.class);
+    private final List<Thread> workers = new ArrayList<>();
+
+    public EmbeddingModelPool(List<? extends EmbeddingModel> models, MeterRegistry meterRegistry) {
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("Embedding model pool needs at least one model.");
+        }
+        this.models = List.copyOf(models);
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            AtomicInteger count = new AtomicInteger();
+            waiting.put(priority, count);
+            Gauge.builder("embedding.pool.queue.size", count, AtomicInteger::get)
+                    .tag("priority", tag)
+                    .register(meterRegistry);
+            queueWait.put(priority, Timer.builder("embedding.pool.queue.wait")
+                    .description("Time an embedding call waits for a free model instance")
+                    .tag("priority", tag)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+        }
+        for (int i = 0; i < this.models.size(); i++) {
+            EmbeddingModel model = this.models.get(i);
+            Thread worker = new Thread(() -> work(model), "embedding-model-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Embedding model pool started with {} instances", this.models.size());
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        return embed(TextSegment.from(text));
+    }
+
+    @Override
+    public Response<Embedding> embed(TextSegment textSegment) {
+        Response<List<Embedding>> response = embedAll(List.of(textSegment), Priority.QUERY);
+        return Response.from(response.content().get(0), response.tokenUsage(), response.finishReason());
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return embedAll(textSegments, Priority.INGESTION);
+    }
+
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments, Priority priority) {
+        Task task = new Task(textSegments, priority, sequence.getAndIncrement());
+        waiting.get(priority).incrementAndGet();
+        queue.add(task);
+        try {
+            return task.result.get();
+        } catch (InterruptedException e) {
+            // Skipped by the worker if it has not started yet
+            task.result.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for embeddings", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Embedding failed", e.getCause());
+        }
+    }
+
+    @Override
+    public int dimension() {
+        return models.get(0).dimension();
+    }
+
+    public int size() {
+        return models.size();
+    }
+
+    @Override
+    public void close() throws Exception {
+        workers.forEach(Thread::interrupt);
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        for (Task task; (task = queue.poll()) != null; ) {
+            task.result.completeExceptionally(new IllegalStateException("Embedding model pool is closed"));
+        }
+        for (EmbeddingModel model : models) {
+            if (model instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private void work(EmbeddingModel model) {
+        while (!Thread.currentThread().isInterrupted()) {
+            Task task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(model, task);
+        }
+    }
+
+    private void run(EmbeddingModel model, Task task) {
+        waiting.get(task.priority).decrementAndGet();
+        if (task.result.isDone()) {
+            return;
+        }
+        queueWait.get(task.priority).record(System.nanoTime() - task.enqueuedNanos, TimeUnit.NANOSECONDS);
+        try {
+            task.result.complete(task.priority == Priority.QUERY ? model.embedAll(task.segments) : embedPreemptibly(model, task.segments));
+        } catch (RuntimeException e) {
+            task.result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Embeds a batch one segment at a time, running any query that arrives in between. In-process models
+     * embed segment by segment anyway, so this costs no throughput.
+     */
+    private Response<List<Embedding>> embedPreemptibly(EmbeddingModel model, List<TextSegment> segments) {
+        List<Embedding> embeddings = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            embeddings.addAll(model.embedAll(segments.subList(i, i + 1)).content());
+            for (Task query; (query = pollQuery()) != null; ) {
+                run(model, query);
+            }
+        }
+        return Response.from(embeddings);
+    }
+
+    private Task pollQuery() {
+        Task head = queue.peek();
+        if (head == null || head.priority != Priority.QUERY) {
+            return null;
+        }
+        Task task = queue.poll();
+        if (task != null && task.priority != Priority.QUERY) {
+            // Another worker took the query first; the queue order puts this task back where it was
+            queue.add(task);
+            return null;
+        }
+        return task;
+    }
+
+    private static final class Task {
+
+        private final List<TextSegment> segments;
+        private final Priority priority;
+        private final long sequence;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Response<List<Embedding>>> result = new CompletableFuture<>();
+
+        private Task(List<TextSegment> segments, Priority priority, long sequence) {
+            this.segments = segments;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.mkcoding.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.mkcoding.cache.BoundedCache;
+import org.mkcoding.ingestion.ContentHash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Embeddings of segments already seen, shared by all documents and keyed by the SHA-256 of the segment text.
+ * A new version of a mostly unchanged document only pays inference for the segments that changed.
+ * <p>
+ * Besides the {@code cache.*} meters of the {@code segment.embeddings} cache, {@code embedding.cache.saved.time}
+ * estimates the inference time skipped (hits times the average time per embedded segment) and
+ * {@code embedding.cache.bytes} reports the memory held by cached vectors.
+ */
+@Component
+public class SegmentEmbeddingCache {
+
+    private final boolean enabled;
+    private final BoundedCache<String, Embedding> embeddings;
+
+    private final AtomicLong embeddedSegments = new AtomicLong();
+    private final AtomicLong embeddingNanos = new AtomicLong();
+    private final AtomicInteger dimension = new AtomicInteger();
+    private final Counter savedSeconds;
+
+    public SegmentEmbeddingCache(
+            @Value("${embedding.cache.enabled:true}") boolean enabled,
+            @Value("${embedding.cache.max.segments:100000}") int maxSegments,
+            MeterRegistry meterRegistry
+    ) {
+        this.enabled = enabled;
+        this.embeddings = new BoundedCache<>("segment.embeddings", maxSegments, 0, meterRegistry);
+
+        this.savedSeconds = Counter.builder("embedding.cache.saved.time")
+                .description("Estimated inference time skipped by reusing cached segment embeddings")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("embedding.cache.bytes", this, cache -> (double) cache.embeddings.size() * cache.dimension.get() * Float.BYTES)
+                .description("Memory held by cached segment vectors")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns one embedding per segment, in order, calling {@code embedder} only for segments whose text is not
+     * cached. Identical texts within the batch are embedded once.
+     */
+    public List<Embedding> embedAll(List<TextSegment> segments, Function<List<TextSegment>, List<Embedding>> embedder) {
+        if (!enabled) {
+            return embedder.apply(segments);
+        }
+
+        Embedding[] result = new Embedding[segments.size()];
+        Map<String, List<Integer>> missing = new LinkedHashMap<>();
+        List<TextSegment> toEmbed = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            String key = ContentHash.of(segments.get(i).text());
+            Embedding cached = embeddings.getIfPresent(key);
+            if (cached != null) {
+                result[i] = cached;
+                continue;
+            }
+            List<Integer> positions = missing.computeIfAbsent(key, k -> new ArrayList<>());
+            if (positions.isEmpty()) {
+                toEmbed.add(segments.get(i));
+            }
+            positions.add(i);
+        }
+
+        if (!toEmbed.isEmpty()) {
+            long start = System.nanoTime();
+            List<Embedding> embedded = embedder.apply(toEmbed);
+            embeddingNanos.addAndGet(System.nanoTime() - start);
+            embeddedSegments.addAndGet(toEmbed.size());
+            dimension.compareAndSet(0, embedded.get(0).dimension());
+
+            int next = 0;
+            for (Map.Entry<String, List<Integer>> entry : missing.entrySet()) {
+                Embedding embedding = embedded.get(next++);
+                embeddings.put(entry.getKey(), embedding);
+                for (int position : entry.getValue()) {
+                    result[position] = embedding;
+                }
+            }
+        }
+
+        // Cache hits and repeats within the batch
+        int reused = segments.size() - toEmbed.size();
+        if (reused > 0 && embeddedSegments.get() > 0) {
+            double secondsPerSegment = embeddingNanos.get() / (double) embeddedSegments.get() / 1_000_000_000.0;
+            savedSeconds.increment(reused * secondsPerSegment);
+        }
+        return List.of(result);
+    }
+}
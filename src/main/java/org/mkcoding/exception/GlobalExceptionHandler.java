@@ -5,8 +5,14 @@ import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
 import org.mkcoding.dto.ErrorResponse;
 import org.mkcoding.exception.exceptions.DocumentNotFoundException;
+import org.mkcoding.exception.exceptions.DocumentNotModifiableException;
 import org.mkcoding.exception.exceptions.FileProcessingException;
+import org.mkcoding.exception.exceptions.ModelBusyException;
 import org.mkcoding.exception.exceptions.UnsupportedMediaTypeException;
+import org.mkcoding.exception.exceptions.UploadJobNotFoundException;
+import org.mkcoding.exception.exceptions.UploadQueueFullException;
+import org.mkcoding.exception.exceptions.WorkloadRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -34,6 +40,67 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(DocumentNotModifiableException.class)
+    public ResponseEntity<ErrorResponse> handleDocumentNotModifiableException(DocumentNotModifiableException ex) {
+        log.warn("Document update rejected: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.CONFLICT.value())
+                .message(ex.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+        return new ResponseEntity<>(error, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(UploadJobNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleUploadJobNotFoundException(UploadJobNotFoundException ex) {
+        log.error("Upload job not found: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.NOT_FOUND.value())
+                .message(ex.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler(UploadQueueFullException.class)
+    public ResponseEntity<ErrorResponse> handleUploadQueueFullException(UploadQueueFullException ex) {
+        log.warn("Upload rejected: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .message(ex.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(error);
+    }
+
+    @ExceptionHandler(WorkloadRejectedException.class)
+    public ResponseEntity<ErrorResponse> handleWorkloadRejectedException(WorkloadRejectedException ex) {
+        log.warn("Request rejected: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.TOO_MANY_REQUESTS.value())
+                .message(ex.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(error);
+    }
+
+    @ExceptionHandler(ModelBusyException.class)
+    public ResponseEntity<ErrorResponse> handleModelBusyException(ModelBusyException ex) {
+        log.warn("Model call rejected: {}", ex.getMessage());
+        ErrorResponse error = ErrorResponse.builder()
+                .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                .message(ex.getMessage())
+                .timestamp(LocalDateTime.now())
+                .build();
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(error);
+    }
+
     @ExceptionHandler(ConstraintViolationException.class)
     public ResponseEntity<ErrorResponse> handleConstraintViolationException(ConstraintViolationException ex) {
         log.error("Constraint violation: {}", ex.getMessage());
@@ -0,0 +1,7 @@
+package org.mkcoding.exception.exceptions;
+
+public class DocumentNotModifiableException extends RuntimeException {
+    public DocumentNotModifiableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package org.mkcoding.exception.exceptions;
+
+public class UploadJobNotFoundException extends RuntimeException {
+    public UploadJobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package org.mkcoding.exception.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class UploadQueueFullException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public UploadQueueFullException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
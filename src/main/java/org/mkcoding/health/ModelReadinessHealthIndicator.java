@@ -0,0 +1,51 @@
+package org.mkcoding.health;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import org.mkcoding.concurrency.ModelConcurrencyLimiter;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports whether the models can serve requests:
+ * <ul>
+ *     <li>the embedding model must embed a probe text; the first success is remembered, a failure is retried</li>
+ *     <li>the chat model must have a free concurrency permit, otherwise new chats would queue or be rejected</li>
+ * </ul>
+ * The chat model itself is not called, since every probe would be a billed request.
+ */
+@Component
+public class ModelReadinessHealthIndicator implements HealthIndicator {
+
+    private static final String PROBE_TEXT = "readiness probe";
+
+    private final EmbeddingModel embeddingModel;
+    private final ModelConcurrencyLimiter chatModelLimiter;
+
+    private volatile Integer embeddingDimension;
+
+    public ModelReadinessHealthIndicator(EmbeddingModel embeddingModel, ModelConcurrencyLimiter chatModelLimiter) {
+        this.embeddingModel = embeddingModel;
+        this.chatModelLimiter = chatModelLimiter;
+    }
+
+    @Override
+    public Health health() {
+        if (embeddingDimension == null) {
+            try {
+                embeddingDimension = embeddingModel.embed(PROBE_TEXT).content().dimension();
+            } catch (RuntimeException e) {
+                return Health.down(e).withDetail("embeddingModel", "not ready").build();
+            }
+        }
+
+        int availablePermits = chatModelLimiter.availablePermits();
+        Health.Builder health = availablePermits > 0 ? Health.up() : Health.outOfService();
+        return health
+                .withDetail("embeddingModel", "ready")
+                .withDetail("embeddingDimension", embeddingDimension)
+                .withDetail("chatModel", availablePermits > 0 ? "ready" : "saturated")
+                .withDetail("chatModelAvailablePermits", availablePermits)
+                .build();
+    }
+}
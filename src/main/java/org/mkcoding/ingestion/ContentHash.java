@@ -0,0 +1,81 @@
+package org.mkcoding.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 content addresses for uploads and segments.
+ */
+public final class ContentHash {
+
+    private static final int ENCODE_CHUNK_SIZE = 256;
+
+    private ContentHash() {
+    }
+
+    public static String of(InputStream inputStream) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) >= 0) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String of(String text) {
+        return HexFormat.of().formatHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Same hash as {@link #of(String)} for the same text, encoded to UTF-8 in small chunks instead of one byte array.
+     */
+    public static String of(SegmentView segment) {
+        MessageDigest digest = sha256();
+        byte[] bytes = new byte[ENCODE_CHUNK_SIZE];
+        int count = 0;
+        int length = segment.length();
+        for (int i = 0; i < length; i++) {
+            // Room for the longest encoding, 4 bytes
+            if (count > ENCODE_CHUNK_SIZE - 4) {
+                digest.update(bytes, 0, count);
+                count = 0;
+            }
+            char c = segment.charAt(i);
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | c >> 6);
+                bytes[count++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(segment.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, segment.charAt(++i));
+                bytes[count++] = (byte) (0xF0 | codePoint >> 18);
+                bytes[count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                bytes[count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                bytes[count++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates become '?', as in String.getBytes
+                bytes[count++] = '?';
+            } else {
+                bytes[count++] = (byte) (0xE0 | c >> 12);
+                bytes[count++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[count++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        digest.update(bytes, 0, count);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.mkcoding.ingestion;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Upload formats the ingestion pipeline can extract text from, by content type.
+ */
+public enum DocumentFormat {
+
+    TEXT("text/plain"),
+    PDF("application/pdf"),
+    DOC("application/msword"),
+    DOCX("application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+
+    private final String contentType;
+
+    DocumentFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * Lower-case name used as the {@code format} tag of the extraction metrics.
+     */
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public static Optional<DocumentFormat> fromContentType(String contentType) {
+        for (DocumentFormat format : values()) {
+            if (format.contentType.equals(contentType)) {
+                return Optional.of(format);
+            }
+        }
+        return Optional.empty();
+    }
+}
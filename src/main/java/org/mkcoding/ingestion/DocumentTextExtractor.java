@@ -0,0 +1,611 @@
+package org.mkcoding.ingestion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.usermodel.Range;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns an upload into a {@link Reader} over its text, so every format streams into the splitter the same way.
+ * <ul>
+ *     <li>Text is decoded as UTF-8 while it is read.</li>
+ *     <li>PDF pages are extracted with PDFBox by up to {@code ingestion.parser.parallelism} threads, each with its
+ *     own copy of the parsed document, and handed to the reader in page order. Workers stay a few pages ahead
+ *     of the reader, so memory is bounded by those pages rather than by the text of the whole document.</li>
+ *     <li>DOC and DOCX are parsed with POI and read paragraph by paragraph. Word files have no fixed pages, so they
+ *     are extracted on the reading thread.</li>
+ * </ul>
+ * Per format, {@code ingestion.extract.bytes} and {@code ingestion.extract.characters} count input and output,
+ * and {@code ingestion.extract.latency} records the time spent extracting, summed across threads, so
+ * bytes per second of it is the per-thread throughput. The time an upload waits for text is the
+ * {@code parse} stage of {@code rag.stage.latency}.
+ */
+@Component
+@Slf4j
+public class DocumentTextExtractor {
+
+    // Every PDF worker parses the document structure again, which only pays off with enough pages to share
+    private static final int MIN_PAGES_PER_WORKER = 8;
+    private static final int PAGES_AHEAD_PER_WORKER = 4;
+    // Workers never started, e.g. on shutdown, must not block closing the reader forever
+    private static final long WORKER_STOP_TIMEOUT_SECONDS = 30;
+
+    private final int parallelism;
+    private final ExecutorService workers;
+    private final Map<DocumentFormat, FormatMeters> meters = new EnumMap<>(DocumentFormat.class);
+
+    public DocumentTextExtractor(
+            @Value("${ingestion.parser.parallelism:0}") int parallelism,
+            MeterRegistry meterRegistry
+    ) {
+        // 0 means one extraction thread per available core
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCounter = new AtomicInteger(1);
+        this.workers = Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "document-parser-" + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (DocumentFormat format : DocumentFormat.values()) {
+            meters.put(format, new FormatMeters(format, meterRegistry));
+        }
+    }
+
+    /**
+     * Opens a reader over the text of the input. The reader must be closed; closing it early stops any
+     * extraction still running.
+     *
+     * @throws IOException if the input is not a readable document of the given format
+     */
+    public Reader open(InputStream inputStream, DocumentFormat format) throws IOException {
+        Extraction extraction = new Extraction(meters.get(format));
+        return switch (format) {
+            case TEXT -> openText(inputStream, extraction);
+            case PDF -> openPdf(inputStream, extraction);
+            case DOC -> openDoc(inputStream, extraction);
+            case DOCX -> openDocx(inputStream, extraction);
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private Reader openText(InputStream inputStream, Extraction extraction) {
+        CountingInputStream counting = new CountingInputStream(inputStream);
+        return new FilterReader(new InputStreamReader(counting, StandardCharsets.UTF_8)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                int read = super.read(buffer, offset, length);
+                extraction.busyNanos.add(System.nanoTime() - start);
+                if (read > 0) {
+                    extraction.characters.add(read);
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                extraction.bytes = counting.getCount();
+                extraction.record();
+                super.close();
+            }
+        };
+    }
+
+    private Reader openPdf(InputStream inputStream, Extraction extraction) throws IOException {
+        long start = System.nanoTime();
+        // PDF needs random access, and every worker opens its own copy, so spool the upload to a file
+        Path file = Files.createTempFile("extract-", ".pdf");
+        PDDocument document;
+        try {
+            extraction.bytes = Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+            document = Loader.loadPDF(file.toFile());
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        extraction.busyNanos.add(System.nanoTime() - start);
+
+        int pageCount = document.getNumberOfPages();
+        extraction.meters.pages.increment(pageCount);
+        int workerCount = Math.max(1, Math.min(parallelism, pageCount / MIN_PAGES_PER_WORKER));
+        PdfPages pages = new PdfPages(file, pageCount, workerCount, extraction, workers);
+        try {
+            workers.execute(pages.worker(document));
+        } catch (RejectedExecutionException e) {
+            document.close();
+            deleteQuietly(file);
+            throw new IOException("Document parser is shut down", e);
+        }
+        for (int i = 1; i < workerCount; i++) {
+            try {
+                workers.execute(pages.worker(null));
+            } catch (RejectedExecutionException e) {
+                // The workers already running take the remaining pages
+                pages.workerExited();
+            }
+        }
+        return new BlockReader(pages);
+    }
+
+    private Reader openDocx(InputStream inputStream, Extraction extraction) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(inputStream);
+        XWPFDocument document;
+        try {
+            document = new XWPFDocument(counting);
+        } catch (RuntimeException e) {
+            // POI reports files that are not OOXML with unchecked exceptions
+            throw new IOException("Not a readable DOCX document", e);
+        }
+        extraction.bytes = counting.getCount();
+        extraction.busyNanos.add(System.nanoTime() - start);
+
+        Iterator<IBodyElement> elements = document.getBodyElements().iterator();
+        return new BlockReader(new SequentialBlocks(extraction, document) {
+            @Override
+            String produce() {
+                while (elements.hasNext()) {
+                    IBodyElement element = elements.next();
+                    String text;
+                    if (element instanceof XWPFParagraph paragraph) {
+                        text = paragraph.getText();
+                    } else if (element instanceof XWPFTable table) {
+                        text = table.getText();
+                    } else {
+                        continue;
+                    }
+                    if (!text.isBlank()) {
+                        return text + "\n\n";
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private Reader openDoc(InputStream inputStream, Extraction extraction) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(inputStream);
+        HWPFDocument document;
+        try {
+            document = new HWPFDocument(counting);
+        } catch (RuntimeException e) {
+            // POI reports files that are not OLE2 Word documents with unchecked exceptions
+            throw new IOException("Not a readable DOC document", e);
+        }
+        extraction.bytes = counting.getCount();
+        extraction.busyNanos.add(System.nanoTime() - start);
+
+        Range range = document.getRange();
+        int paragraphCount = range.numParagraphs();
+        return new BlockReader(new SequentialBlocks(extraction, document) {
+            private int next;
+
+            @Override
+            String produce() {
+                while (next < paragraphCount) {
+                    String text = wordText(Range.stripFields(range.getParagraph(next++).text()));
+                    if (!text.isBlank()) {
+                        return text + "\n\n";
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Replaces the control characters Word uses for paragraph, cell and line breaks.
+     */
+    private static String wordText(String text) {
+        StringBuilder cleaned = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\u000b' || c == '\r') {
+                cleaned.append('\n');
+            } else if (c == '\u0007' || c == '\t') {
+                cleaned.append(' ');
+            } else if (!Character.isISOControl(c) || c == '\n') {
+                cleaned.append(c);
+            }
+        }
+        return cleaned.toString().strip();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary file {}", file, e);
+        }
+    }
+
+    private static final class FormatMeters {
+
+        private final Timer latency;
+        private final Counter bytes;
+        private final Counter characters;
+        private final Counter pages;
+
+        private FormatMeters(DocumentFormat format, MeterRegistry meterRegistry) {
+            this.latency = Timer.builder("ingestion.extract.latency")
+                    .description("Time spent extracting the text of one document, summed across threads")
+                    .tag("format", format.tag())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            this.bytes = Counter.builder("ingestion.extract.bytes")
+                    .description("Upload bytes text was extracted from")
+                    .tag("format", format.tag())
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            this.characters = Counter.builder("ingestion.extract.characters")
+                    .description("Characters of text extracted")
+                    .tag("format", format.tag())
+                    .register(meterRegistry);
+            this.pages = Counter.builder("ingestion.extract.pages")
+                    .description("Pages text was extracted from; only PDF has pages")
+                    .tag("format", format.tag())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Totals of one document, recorded once when extraction is over.
+     */
+    private static final class Extraction {
+
+        private final FormatMeters meters;
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder characters = new LongAdder();
+        private final AtomicBoolean recorded = new AtomicBoolean();
+        private volatile long bytes;
+
+        private Extraction(FormatMeters meters) {
+            this.meters = meters;
+        }
+
+        private void record() {
+            if (recorded.compareAndSet(false, true)) {
+                meters.latency.record(busyNanos.sum(), TimeUnit.NANOSECONDS);
+                meters.bytes.increment(bytes);
+                meters.characters.increment(characters.sum());
+            }
+        }
+    }
+
+    private interface BlockSource extends Closeable {
+
+        /**
+         * @return the next block of text, or {@code null} at the end
+         */
+        String next() throws IOException;
+    }
+
+    /**
+     * Reads blocks of text one after the other, copying straight from each block into the caller's buffer.
+     */
+    private static final class BlockReader extends Reader {
+
+        private final BlockSource source;
+        private String block = "";
+        private int position;
+        private boolean eof;
+
+        private BlockReader(BlockSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            while (position == block.length()) {
+                String next = eof ? null : source.next();
+                if (next == null) {
+                    eof = true;
+                    return -1;
+                }
+                block = next;
+                position = 0;
+            }
+            int count = Math.min(length, block.length() - position);
+            block.getChars(position, position + count, buffer, offset);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            block = "";
+            source.close();
+        }
+    }
+
+    /**
+     * Blocks produced on the reading thread, timed as extraction.
+     */
+    private abstract static class SequentialBlocks implements BlockSource {
+
+        private final Extraction extraction;
+        private final Closeable document;
+
+        private SequentialBlocks(Extraction extraction, Closeable document) {
+            this.extraction = extraction;
+            this.document = document;
+        }
+
+        abstract String produce() throws IOException;
+
+        @Override
+        public String next() throws IOException {
+            long start = System.nanoTime();
+            String text = produce();
+            extraction.busyNanos.add(System.nanoTime() - start);
+            if (text != null) {
+                extraction.characters.add(text.length());
+            }
+            return text;
+        }
+
+        @Override
+        public void close() throws IOException {
+            extraction.record();
+            document.close();
+        }
+    }
+
+    /**
+     * PDF pages extracted by several workers and consumed in order. A worker takes the next page only after
+     * acquiring a permit, which the reader returns once it has consumed a page.
+     */
+    /**
+     * Pages extracted by several workers sharing the parser pool. A worker that gets too far ahead of the reader
+     * does not wait on its pool thread: it parks with its parsed document and is submitted again once the reader
+     * has taken a page, so a slow reader holds no pool threads and other uploads' pages run meanwhile.
+     */
+    private static final class PdfPages implements BlockSource {
+
+        private final Path file;
+        private final int pageCount;
+        private final Extraction extraction;
+        private final ExecutorService executor;
+        private final AtomicReferenceArray<CompletableFuture<String>> pages;
+        private final AtomicInteger nextPage = new AtomicInteger();
+        private final AtomicInteger activeWorkers;
+        private final CountDownLatch workersExited;
+        private final Semaphore window;
+        private final Queue<Worker> parked = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+        private int consumed;
+
+        private PdfPages(Path file, int pageCount, int workerCount, Extraction extraction, ExecutorService executor) {
+            this.file = file;
+            this.pageCount = pageCount;
+            this.extraction = extraction;
+            this.executor = executor;
+            this.pages = new AtomicReferenceArray<>(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                pages.set(i, new CompletableFuture<>());
+            }
+            this.activeWorkers = new AtomicInteger(workerCount);
+            this.workersExited = new CountDownLatch(workerCount);
+            this.window = new Semaphore(workerCount * PAGES_AHEAD_PER_WORKER);
+        }
+
+        /**
+         * A worker to submit to the parser pool, starting from an already parsed document or, if {@code null},
+         * parsing its own copy of the file.
+         */
+        private Runnable worker(PDDocument document) {
+            return new Worker(document);
+        }
+
+        @Override
+        public String next() throws IOException {
+            if (consumed == pageCount) {
+                return null;
+            }
+            try {
+                String text = pages.get(consumed).get();
+                pages.set(consumed, null);
+                consumed++;
+                window.release();
+                resumeParked();
+                return text;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for page " + (consumed + 1));
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to extract page " + (consumed + 1), e.getCause());
+            }
+        }
+
+        /**
+         * Stops the workers and waits for them to finish their current page, so the file is deleted and the
+         * document recorded once the reader is closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                // Parked workers are not running, so close their documents here
+                resumeParked();
+            }
+            try {
+                if (!workersExited.await(WORKER_STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    log.warn("PDF workers for {} did not stop within {} seconds", file, WORKER_STOP_TIMEOUT_SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while stopping PDF workers");
+            }
+        }
+
+        /**
+         * Submits a parked worker again once the window has room, or ends every parked worker once there is
+         * nothing left for them to extract. Called after each change that can wake a worker: a page taken, a
+         * worker parked, the last page handed out and the reader closed.
+         */
+        private void resumeParked() {
+            boolean finished = closed || nextPage.get() >= pageCount;
+            if (!finished && window.availablePermits() == 0) {
+                return;
+            }
+            Worker worker;
+            while ((worker = parked.poll()) != null) {
+                if (finished) {
+                    worker.exit();
+                    continue;
+                }
+                try {
+                    executor.execute(worker);
+                } catch (RejectedExecutionException e) {
+                    worker.exit();
+                }
+                // One worker per free page; it takes further pages itself while there is room
+                return;
+            }
+        }
+
+        private void workerExited() {
+            if (activeWorkers.decrementAndGet() == 0) {
+                if (!closed) {
+                    // No worker left for pages nobody took, e.g. when every worker failed to open the file
+                    for (int page = nextPage.get(); page < pageCount; page++) {
+                        pages.get(page).completeExceptionally(new IOException("No PDF worker left"));
+                    }
+                }
+                extraction.record();
+                deleteQuietly(file);
+            }
+            workersExited.countDown();
+        }
+
+        private final class Worker implements Runnable {
+
+            private PDDocument document;
+            private PDFTextStripper stripper;
+
+            private Worker(PDDocument document) {
+                this.document = document;
+            }
+
+            @Override
+            public void run() {
+                if (document == null && !open()) {
+                    return;
+                }
+                while (true) {
+                    if (closed) {
+                        exit();
+                        return;
+                    }
+                    if (!window.tryAcquire()) {
+                        parked.add(this);
+                        resumeParked();
+                        return;
+                    }
+                    int page = nextPage.getAndIncrement();
+                    if (page >= pageCount) {
+                        window.release();
+                        exit();
+                        resumeParked();
+                        return;
+                    }
+                    extract(page);
+                }
+            }
+
+            private boolean open() {
+                long start = System.nanoTime();
+                try {
+                    document = Loader.loadPDF(file.toFile());
+                } catch (IOException e) {
+                    // The other workers take the remaining pages
+                    log.warn("PDF worker could not open {}", file, e);
+                    workerExited();
+                    return false;
+                }
+                extraction.busyNanos.add(System.nanoTime() - start);
+                return true;
+            }
+
+            private void extract(int page) {
+                long start = System.nanoTime();
+                try {
+                    if (stripper == null) {
+                        stripper = new PDFTextStripper();
+                        stripper.setLineSeparator("\n");
+                        // Page breaks become paragraph breaks, the splitter's preferred cut
+                        stripper.setPageEnd("\n\n");
+                    }
+                    stripper.setStartPage(page + 1);
+                    stripper.setEndPage(page + 1);
+                    String text = stripper.getText(document);
+                    extraction.characters.add(text.length());
+                    pages.get(page).complete(text);
+                } catch (IOException | RuntimeException e) {
+                    pages.get(page).completeExceptionally(e);
+                } finally {
+                    extraction.busyNanos.add(System.nanoTime() - start);
+                }
+            }
+
+            private void exit() {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close PDF {}", file, e);
+                } finally {
+                    workerExited();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.mkcoding.ingestion;
+
+/**
+ * Receives progress callbacks from the ingestion pipeline after every stored batch.
+ */
+@FunctionalInterface
+public interface IngestionProgressListener {
+
+    IngestionProgressListener NONE = segmentsStored -> {
+    };
+
+    /**
+     * @param segmentsStored total number of segments stored so far
+     */
+    void onSegmentsStored(int segmentsStored);
+}
@@ -0,0 +1,23 @@
+package org.mkcoding.ingestion;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+
+/**
+ * Sees every segment of an ingestion as it is split and decides what is embedded, so an update of an existing
+ * document only embeds the segments that changed.
+ */
+public interface SegmentTracker {
+
+    /**
+     * @param segment view of the segment, only valid during the call
+     * @return the segment to embed and store, possibly with different metadata, or {@code null} to skip it
+     */
+    TextSegment accept(SegmentView segment);
+
+    /**
+     * Called after each stored batch with the ids the store assigned, in the order of {@code segments}.
+     */
+    void stored(List<String> ids, List<TextSegment> segments);
+}
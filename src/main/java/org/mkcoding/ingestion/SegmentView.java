@@ -0,0 +1,76 @@
+package org.mkcoding.ingestion;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.nio.CharBuffer;
+import java.util.Objects;
+
+/**
+ * A segment as the {@link StreamingTextSplitter} cuts it: an offset range of the splitter's read buffer rather than
+ * a copy. The splitter reuses one view and one buffer for the whole input, so a view is only valid inside the
+ * callback that receives it; {@link #toTextSegment()} copies it into a segment that outlives the callback.
+ */
+public final class SegmentView implements CharSequence {
+
+    private final char[] buffer;
+    private int offset;
+    private int length;
+    private int index;
+
+    SegmentView(char[] buffer) {
+        this.buffer = buffer;
+    }
+
+    void set(int offset, int length, int index) {
+        this.offset = offset;
+        this.length = length;
+        this.index = index;
+    }
+
+    /**
+     * Position of the segment in the document, counting from 0.
+     */
+    public int index() {
+        return index;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int position) {
+        return buffer[offset + Objects.checkIndex(position, length)];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        Objects.checkFromToIndex(start, end, length);
+        return new String(buffer, offset + start, end - start);
+    }
+
+    /**
+     * Read-only buffer over the same characters, e.g. to encode them without a {@link String} in between.
+     */
+    public CharBuffer asCharBuffer() {
+        return CharBuffer.wrap(buffer, offset, length).asReadOnlyBuffer();
+    }
+
+    public TextSegment toTextSegment() {
+        return toTextSegment(index);
+    }
+
+    /**
+     * Copies the text into a segment numbered {@code index} instead of the position it was cut at.
+     */
+    public TextSegment toTextSegment(int index) {
+        return TextSegment.from(toString(), Metadata.from("index", String.valueOf(index)));
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length);
+    }
+}
@@ -0,0 +1,224 @@
+package org.mkcoding.ingestion;
+
+import dev.langchain4j.data.document.BlankDocumentException;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.embedding.EmbeddingExecutor;
+import org.mkcoding.embedding.SegmentEmbeddingCache;
+import org.mkcoding.metrics.RagMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ingests a document without materializing it: text is extracted incrementally by the {@link DocumentTextExtractor},
+ * split as it arrives, and embedded in fixed-size batches that are pushed into the store before the next batch is read.
+ * Peak heap is bounded by the batch size, not by the size of the upload.
+ * Segments whose text was embedded before reuse the embedding from the {@link SegmentEmbeddingCache}.
+ */
+@Component
+@Slf4j
+public class StreamingIngestionPipeline {
+
+    private final EmbeddingExecutor embeddingExecutor;
+    private final SegmentEmbeddingCache embeddingCache;
+    private final DocumentTextExtractor textExtractor;
+    private final StreamingTextSplitter splitter;
+    private final int batchSize;
+
+    private final Timer parseLatency;
+    private final Timer splitLatency;
+    private final Timer embedLatency;
+    private final Timer storeLatency;
+    private final DistributionSummary ingestedSegments;
+
+    public StreamingIngestionPipeline(
+            EmbeddingExecutor embeddingExecutor,
+            SegmentEmbeddingCache embeddingCache,
+            DocumentTextExtractor textExtractor,
+            @Value("${ingestion.splitter.mode:character}") String splitterMode,
+            @Value("${ingestion.segment.max.size:300}") int maxSegmentSize,
+            @Value("${ingestion.segment.overlap:0}") int segmentOverlap,
+            Tokenizer tokenizer,
+            @Value("${ingestion.batch.size:64}") int batchSize,
+            MeterRegistry meterRegistry
+    ) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Ingestion batch size must be positive.");
+        }
+        this.embeddingExecutor = embeddingExecutor;
+        this.embeddingCache = embeddingCache;
+        this.textExtractor = textExtractor;
+        this.splitter = new StreamingTextSplitter(StreamingTextSplitter.mode(splitterMode), maxSegmentSize, segmentOverlap, tokenizer);
+        this.batchSize = batchSize;
+
+        this.parseLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.INGEST, "parse");
+        this.splitLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.INGEST, "split");
+        this.embedLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.INGEST, "embed");
+        this.storeLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.INGEST, "store");
+        this.ingestedSegments = RagMetrics.ingestedSegments(meterRegistry);
+    }
+
+    /**
+     * Streams the input into the given store.
+     *
+     * @return the number of segments stored
+     * @throws BlankDocumentException if the input contains no text
+     */
+    public int ingest(InputStream inputStream, EmbeddingStore<TextSegment> embeddingStore) throws IOException {
+        return ingest(inputStream, embeddingStore, IngestionProgressListener.NONE);
+    }
+
+    /**
+     * Streams the input into the given store, reporting progress after every stored batch.
+     *
+     * @return the number of segments stored
+     * @throws BlankDocumentException if the input contains no text
+     */
+    public int ingest(InputStream inputStream, EmbeddingStore<TextSegment> embeddingStore, IngestionProgressListener listener) throws IOException {
+        return ingest(inputStream, embeddingStore, listener, segment -> {
+        });
+    }
+
+    /**
+     * Streams the input into the given store, also handing every segment to {@code segmentSink} as it is split,
+     * e.g. to build a lexical index in the same pass.
+     *
+     * @return the number of segments stored
+     * @throws BlankDocumentException if the input contains no text
+     */
+    public int ingest(InputStream inputStream, EmbeddingStore<TextSegment> embeddingStore, IngestionProgressListener listener,
+                      Consumer<TextSegment> segmentSink) throws IOException {
+        return ingest(inputStream, embeddingStore, listener, new SegmentTracker() {
+            @Override
+            public TextSegment accept(SegmentView view) {
+                TextSegment segment = view.toTextSegment();
+                segmentSink.accept(segment);
+                return segment;
+            }
+
+            @Override
+            public void stored(List<String> ids, List<TextSegment> segments) {
+            }
+        });
+    }
+
+    /**
+     * Streams the text input into the given store, embedding only the segments the tracker accepts.
+     *
+     * @return the number of segments split from the input, stored or not
+     * @throws BlankDocumentException if the input contains no text
+     */
+    public int ingest(InputStream inputStream, EmbeddingStore<TextSegment> embeddingStore, IngestionProgressListener listener,
+                      SegmentTracker tracker) throws IOException {
+        return ingest(inputStream, DocumentFormat.TEXT, embeddingStore, listener, tracker);
+    }
+
+    /**
+     * Extracts the text of an input in the given format and streams it into the store, embedding only the segments
+     * the tracker accepts.
+     *
+     * @return the number of segments split from the input, stored or not
+     * @throws BlankDocumentException if the input contains no text
+     * @throws IOException if the input cannot be read or is not a document of the given format
+     */
+    public int ingest(InputStream inputStream, DocumentFormat format, EmbeddingStore<TextSegment> embeddingStore,
+                      IngestionProgressListener listener, SegmentTracker tracker) throws IOException {
+        long start = System.nanoTime();
+        StageTimes times = new StageTimes();
+        List<TextSegment> batch = new ArrayList<>(batchSize);
+        int[] stored = {0};
+
+        int segmentCount;
+        try (Reader text = textExtractor.open(inputStream, format)) {
+            // Opening may already parse the document, e.g. the page tree of a PDF
+            times.parseNanos += System.nanoTime() - start;
+            // Time extraction below the buffer, so it is measured once per chunk rather than once per character
+            Reader reader = new BufferedReader(new TimedReader(text, times));
+            segmentCount = splitter.splitViews(reader, segment -> {
+                TextSegment accepted = tracker.accept(segment);
+                if (accepted == null) {
+                    return;
+                }
+                batch.add(accepted);
+                if (batch.size() >= batchSize) {
+                    stored[0] += flush(batch, embeddingStore, tracker, times);
+                    listener.onSegmentsStored(stored[0]);
+                }
+            });
+        }
+        if (!batch.isEmpty()) {
+            stored[0] += flush(batch, embeddingStore, tracker, times);
+            listener.onSegmentsStored(stored[0]);
+        }
+
+        if (segmentCount == 0) {
+            throw new BlankDocumentException();
+        }
+
+        // The stages interleave, so splitting is whatever time the other stages did not account for
+        long total = System.nanoTime() - start;
+        parseLatency.record(times.parseNanos, TimeUnit.NANOSECONDS);
+        embedLatency.record(times.embedNanos, TimeUnit.NANOSECONDS);
+        storeLatency.record(times.storeNanos, TimeUnit.NANOSECONDS);
+        splitLatency.record(Math.max(0, total - times.parseNanos - times.embedNanos - times.storeNanos), TimeUnit.NANOSECONDS);
+        ingestedSegments.record(segmentCount);
+
+        log.debug("Ingested {} segments in batches of {}", segmentCount, batchSize);
+        return segmentCount;
+    }
+
+    private int flush(List<TextSegment> batch, EmbeddingStore<TextSegment> embeddingStore, SegmentTracker tracker, StageTimes times) {
+        long embedStart = System.nanoTime();
+        List<Embedding> embeddings = embeddingCache.embedAll(batch, embeddingExecutor::embedAll);
+        long storeStart = System.nanoTime();
+        List<String> ids = embeddingStore.addAll(embeddings, batch);
+        times.embedNanos += storeStart - embedStart;
+        times.storeNanos += System.nanoTime() - storeStart;
+        tracker.stored(ids, batch);
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    private static final class StageTimes {
+        private long parseNanos;
+        private long embedNanos;
+        private long storeNanos;
+    }
+
+    private static final class TimedReader extends FilterReader {
+
+        private final StageTimes times;
+
+        private TimedReader(Reader in, StageTimes times) {
+            super(in);
+            this.times = times;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                times.parseNanos += System.nanoTime() - start;
+            }
+        }
+    }
+}
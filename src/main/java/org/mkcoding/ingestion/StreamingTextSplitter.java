@@ -0,0 +1,271 @@
+package org.mkcoding.ingestion;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Splits text read from a {@link Reader} into segments without ever holding more than one read chunk plus one
+ * segment in memory. Segments are handed out as {@link SegmentView}s over the read buffer, so no text is copied
+ * until a consumer needs a segment of its own.
+ * <p>
+ * Segment size and overlap are counted in the unit of the {@link Mode}:
+ * <ul>
+ *     <li>{@code CHARACTER} - characters. Cut points follow the same preference order as
+ *     {@code DocumentSplitters.recursive}: paragraph break, line break, end of sentence, whitespace and,
+ *     as a last resort, a hard cut.</li>
+ *     <li>{@code SENTENCE} - characters, but segments end only at the end of a sentence or paragraph,
+ *     unless a single sentence is longer than a segment.</li>
+ *     <li>{@code TOKEN} - tokens of the given {@link Tokenizer}, with the cut points of {@code CHARACTER}.
+ *     Candidate segments are sized from the characters per token seen so far and then counted, which needs
+ *     a copy of each candidate.</li>
+ * </ul>
+ * With an overlap, each segment starts at the first word, or sentence in {@code SENTENCE} mode, within about the
+ * last {@code overlap} units of the previous one.
+ */
+public class StreamingTextSplitter {
+
+    public enum Mode {
+        CHARACTER, SENTENCE, TOKEN
+    }
+
+    private static final int READ_CHUNK_SIZE = 8192;
+    private static final double INITIAL_CHARS_PER_TOKEN = 4.0;
+    // Longest token assumed when sizing the read buffer in token mode
+    private static final int MAX_CHARS_PER_TOKEN = 16;
+
+    private final Mode mode;
+    private final int maxSegmentSize;
+    private final int overlap;
+    private final Tokenizer tokenizer;
+    // Longest segment in characters; the buffer holds this much unprocessed text before anything is cut
+    private final int window;
+
+    public StreamingTextSplitter(int maxSegmentSize) {
+        this(Mode.CHARACTER, maxSegmentSize, 0, null);
+    }
+
+    public StreamingTextSplitter(Mode mode, int maxSegmentSize, int overlap, Tokenizer tokenizer) {
+        if (maxSegmentSize <= 0) {
+            throw new IllegalArgumentException("Max segment size must be positive.");
+        }
+        if (overlap < 0 || overlap >= maxSegmentSize) {
+            throw new IllegalArgumentException("Segment overlap must be between 0 and the max segment size.");
+        }
+        if (mode == Mode.TOKEN && tokenizer == null) {
+            throw new IllegalArgumentException("Splitting by token needs a tokenizer.");
+        }
+        this.mode = mode;
+        this.maxSegmentSize = maxSegmentSize;
+        this.overlap = overlap;
+        this.tokenizer = tokenizer;
+        this.window = mode == Mode.TOKEN ? maxSegmentSize * MAX_CHARS_PER_TOKEN : maxSegmentSize;
+    }
+
+    /**
+     * Parses an {@code ingestion.splitter.mode} value, e.g. {@code sentence}.
+     */
+    public static Mode mode(String name) {
+        try {
+            return Mode.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown ingestion.splitter.mode: " + name);
+        }
+    }
+
+    /**
+     * Reads the whole input and hands every non-blank segment to the consumer as its own {@link TextSegment}.
+     *
+     * @return the number of segments emitted
+     */
+    public int split(Reader reader, Consumer<TextSegment> segmentConsumer) throws IOException {
+        return splitViews(reader, view -> segmentConsumer.accept(view.toTextSegment()));
+    }
+
+    /**
+     * Reads the whole input and hands every non-blank segment to the consumer as soon as it is cut. The view is
+     * only valid until the consumer returns.
+     *
+     * @return the number of segments emitted
+     */
+    public int splitViews(Reader reader, Consumer<SegmentView> segmentConsumer) throws IOException {
+        Split split = new Split(new char[window + READ_CHUNK_SIZE]);
+        char[] buffer = split.buffer;
+        int start = 0;
+        int end = 0;
+        // End of the last segment; the next one must end after it, even when it starts before it
+        int floor = 0;
+        int index = 0;
+        boolean eof = false;
+
+        while (!eof || start < end) {
+            if (!eof) {
+                // Compact the window so the next chunk fits behind the unprocessed tail
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    floor -= start;
+                    start = 0;
+                }
+                int read = reader.read(buffer, end, buffer.length - end);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            }
+
+            while (end - start > window || (eof && start < end)) {
+                int cut = cut(split, start, end, floor, eof);
+                if (emit(split.view, buffer, start, cut, index, segmentConsumer)) {
+                    index++;
+                }
+                floor = cut;
+                start = nextStart(split, start, cut, end, eof);
+            }
+        }
+        return index;
+    }
+
+    private int cut(Split split, int start, int end, int floor, boolean eof) {
+        if (mode == Mode.TOKEN) {
+            return tokenCut(split, start, end, floor, eof);
+        }
+        if (eof && end - start <= maxSegmentSize) {
+            return end;
+        }
+        return findCut(split.buffer, end, start + maxSegmentSize, floor, mode == Mode.SENTENCE);
+    }
+
+    private int tokenCut(Split split, int start, int end, int floor, boolean eof) {
+        int limit = Math.min(end, start + (int) (maxSegmentSize * split.charsPerToken));
+        while (true) {
+            int cut = eof && limit == end ? end : findCut(split.buffer, end, limit, floor, false);
+            int tokens = tokenizer.estimateTokenCountInText(new String(split.buffer, start, cut - start));
+            if (tokens <= maxSegmentSize || cut - floor <= 1) {
+                if (tokens > 0) {
+                    split.charsPerToken = Math.min(MAX_CHARS_PER_TOKEN, Math.max(1.0, (cut - start) / (double) tokens));
+                }
+                return cut;
+            }
+            // Shrink in proportion to the overshoot, with some slack since the cut lands on the boundary before
+            limit = Math.max(floor + 1, start + (int) (0.9 * (cut - start) * maxSegmentSize / tokens));
+        }
+    }
+
+    /**
+     * Finds the best cut in {@code (floor, limit]}.
+     */
+    private static int findCut(char[] buffer, int end, int limit, int floor, boolean sentencesOnly) {
+        if (!sentencesOnly) {
+            for (int p = limit; p > floor + 1; p--) {
+                if (buffer[p - 1] == '\n' && buffer[p - 2] == '\n') {
+                    return p;
+                }
+            }
+            for (int p = limit; p > floor; p--) {
+                if (buffer[p - 1] == '\n') {
+                    return p;
+                }
+            }
+        }
+        for (int p = limit; p > floor; p--) {
+            if (isSentenceEnd(buffer, p, end) || (sentencesOnly && p > floor + 1 && buffer[p - 1] == '\n' && buffer[p - 2] == '\n')) {
+                return p;
+            }
+        }
+        for (int p = limit; p > floor; p--) {
+            if (Character.isWhitespace(buffer[p - 1]) || (p < end && Character.isWhitespace(buffer[p]))) {
+                return p;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Where the segment after {@code cut} starts: at the cut, or earlier by the overlap.
+     */
+    private int nextStart(Split split, int start, int cut, int end, boolean eof) {
+        if (overlap == 0) {
+            return cut;
+        }
+        if (eof && isBlank(split.buffer, cut, end)) {
+            // Nothing new would follow the overlap
+            return end;
+        }
+        int overlapChars = mode == Mode.TOKEN ? (int) (overlap * split.charsPerToken) : overlap;
+        for (int p = Math.max(start + 1, cut - overlapChars); p < cut; p++) {
+            if (mode == Mode.SENTENCE ? isSentenceStart(split.buffer, start, p) : isWordStart(split.buffer, p)) {
+                return p;
+            }
+        }
+        return cut;
+    }
+
+    private static boolean isSentenceEnd(char[] buffer, int p, int end) {
+        char c = buffer[p - 1];
+        return (c == '.' || c == '!' || c == '?') && (p == end || Character.isWhitespace(buffer[p]));
+    }
+
+    private static boolean isWordStart(char[] buffer, int p) {
+        return !Character.isWhitespace(buffer[p]) && Character.isWhitespace(buffer[p - 1]);
+    }
+
+    private static boolean isSentenceStart(char[] buffer, int start, int p) {
+        if (!isWordStart(buffer, p)) {
+            return false;
+        }
+        int newlines = 0;
+        int q = p - 1;
+        while (q >= start && Character.isWhitespace(buffer[q])) {
+            if (buffer[q] == '\n') {
+                newlines++;
+            }
+            q--;
+        }
+        return newlines >= 2 || (q >= start && (buffer[q] == '.' || buffer[q] == '!' || buffer[q] == '?'));
+    }
+
+    private static boolean isBlank(char[] buffer, int from, int to) {
+        for (int p = from; p < to; p++) {
+            if (!Character.isWhitespace(buffer[p])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean emit(SegmentView view, char[] buffer, int from, int to, int index, Consumer<SegmentView> segmentConsumer) {
+        while (from < to && Character.isWhitespace(buffer[from])) {
+            from++;
+        }
+        while (to > from && Character.isWhitespace(buffer[to - 1])) {
+            to--;
+        }
+        if (from == to) {
+            return false;
+        }
+        view.set(from, to - from, index);
+        segmentConsumer.accept(view);
+        return true;
+    }
+
+    /**
+     * State of one {@link #splitViews} call, so one splitter can serve concurrent uploads.
+     */
+    private static final class Split {
+
+        private final char[] buffer;
+        private final SegmentView view;
+        private double charsPerToken = INITIAL_CHARS_PER_TOKEN;
+
+        private Split(char[] buffer) {
+            this.buffer = buffer;
+            this.view = new SegmentView(buffer);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.mkcoding.ingestion;
+
+import lombok.Getter;
+
+import java.util.UUID;
+
+/**
+ * Mutable state of an asynchronous upload. Updated by the worker thread, read by status polls.
+ */
+@Getter
+public class UploadJob {
+
+    private final String id;
+    private final long totalBytes;
+    private final long submittedAtNanos;
+    private volatile UploadJobStatus status = UploadJobStatus.QUEUED;
+    private volatile int segmentsEmbedded;
+    private volatile long bytesRead;
+    private volatile Long documentId;
+    private volatile String error;
+    private volatile long finishedAtNanos;
+
+    public UploadJob(long totalBytes) {
+        this.id = UUID.randomUUID().toString();
+        this.totalBytes = totalBytes;
+        this.submittedAtNanos = System.nanoTime();
+    }
+
+    public void start() {
+        status = UploadJobStatus.RUNNING;
+    }
+
+    public void progress(int segmentsEmbedded, long bytesRead) {
+        this.segmentsEmbedded = segmentsEmbedded;
+        this.bytesRead = bytesRead;
+    }
+
+    /**
+     * Progress of an upload whose bytes read do not tell how far along it is, which leaves the total unknown.
+     */
+    public void progress(int segmentsEmbedded) {
+        this.segmentsEmbedded = segmentsEmbedded;
+    }
+
+    public void complete(Long documentId) {
+        this.documentId = documentId;
+        this.bytesRead = totalBytes;
+        this.finishedAtNanos = System.nanoTime();
+        this.status = UploadJobStatus.COMPLETED;
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        this.finishedAtNanos = System.nanoTime();
+        this.status = UploadJobStatus.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == UploadJobStatus.COMPLETED || status == UploadJobStatus.FAILED;
+    }
+
+    /**
+     * Exact once the job has completed; while running, extrapolated from the share of bytes read so far, or
+     * {@code null} when only segments are reported.
+     */
+    public Long getTotalSegments() {
+        if (status == UploadJobStatus.COMPLETED) {
+            return (long) segmentsEmbedded;
+        }
+        if (bytesRead <= 0 || segmentsEmbedded == 0) {
+            return null;
+        }
+        return Math.max(segmentsEmbedded, Math.round((double) segmentsEmbedded * totalBytes / bytesRead));
+    }
+}
@@ -0,0 +1,8 @@
+package org.mkcoding.ingestion;
+
+public enum UploadJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
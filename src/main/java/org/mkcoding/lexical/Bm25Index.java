@@ -0,0 +1,236 @@
+package org.mkcoding.lexical;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.mkcoding.store.NeighborQueue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable BM25 inverted index over the segments of one document.
+ * <p>
+ * Each term maps to a postings list of (segment, term frequency) pairs, stored as varint-encoded segment
+ * gaps and frequencies in a single byte array. Segment texts are kept UTF-8 encoded in a direct buffer and
+ * decoded only for the returned hits, so a search touches the postings of the query terms and nothing else.
+ */
+public class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private final Map<String, Postings> postings;
+    private final int[] segmentLengths;
+    private final float averageLength;
+    private final ByteBuffer texts;
+    private final int[] textOffsets;
+    private final int[] segmentIndexes;
+
+    private Bm25Index(Map<String, Postings> postings, int[] segmentLengths, ByteBuffer texts, int[] textOffsets, int[] segmentIndexes) {
+        this.postings = postings;
+        this.segmentLengths = segmentLengths;
+        this.averageLength = (float) Arrays.stream(segmentLengths).average().orElse(0);
+        this.texts = texts;
+        this.textOffsets = textOffsets;
+        this.segmentIndexes = segmentIndexes;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return segmentLengths.length;
+    }
+
+    public int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * Bytes used by the compressed postings lists.
+     */
+    public long postingsBytes() {
+        return postings.values().stream().mapToLong(list -> list.bytes.length).sum();
+    }
+
+    /**
+     * Returns up to {@code maxResults} segments with a positive BM25 score, best first.
+     */
+    public List<Hit> search(String query, int maxResults) {
+        int segments = segmentLengths.length;
+        if (segments == 0 || maxResults <= 0) {
+            return List.of();
+        }
+        // Repeated query terms count once
+        LinkedHashMap<String, Postings> queryPostings = new LinkedHashMap<>();
+        LexicalTokenizer.tokenize(query, term -> {
+            Postings list = postings.get(term);
+            if (list != null) {
+                queryPostings.putIfAbsent(term, list);
+            }
+        });
+        if (queryPostings.isEmpty()) {
+            return List.of();
+        }
+
+        float[] scores = new float[segments];
+        for (Postings list : queryPostings.values()) {
+            float idf = (float) Math.log(1 + (segments - list.documentFrequency + 0.5) / (list.documentFrequency + 0.5));
+            int offset = 0;
+            int segment = 0;
+            byte[] bytes = list.bytes;
+            for (int i = 0; i < list.documentFrequency; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[offset++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                int frequency = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[offset++];
+                    frequency |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                segment += gap;
+                float norm = K1 * (1 - B + B * segmentLengths[segment] / averageLength);
+                scores[segment] += idf * frequency * (K1 + 1) / (frequency + norm);
+            }
+        }
+
+        // Keep the best scores with a bounded max-heap on a distance that falls as the score rises
+        NeighborQueue best = new NeighborQueue(maxResults, true);
+        for (int segment = 0; segment < segments; segment++) {
+            if (scores[segment] > 0) {
+                best.insertWithOverflow(segment, 1f / (1f + scores[segment]), maxResults);
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            int segment = best.poll();
+            hits.add(new Hit(segment, scores[segment]));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    /**
+     * Decodes the text of a segment, with the same {@code index} metadata it was stored with.
+     */
+    public TextSegment segment(int ordinal) {
+        int from = textOffsets[ordinal];
+        byte[] utf8 = new byte[textOffsets[ordinal + 1] - from];
+        texts.get(from, utf8);
+        return TextSegment.from(new String(utf8, StandardCharsets.UTF_8), new Metadata().put("index", String.valueOf(segmentIndexes[ordinal])));
+    }
+
+    /**
+     * The {@code index} metadata of a segment. It equals the ordinal for a freshly uploaded document, but not
+     * after an update, where unchanged segments keep their index and new ones are numbered after the old ones.
+     */
+    public int segmentIndex(int ordinal) {
+        return segmentIndexes[ordinal];
+    }
+
+    public record Hit(int ordinal, float score) {
+    }
+
+    private record Postings(int documentFrequency, byte[] bytes) {
+    }
+
+    /**
+     * Collects segments in ingestion order. Not thread-safe; one builder is filled by one upload.
+     */
+    public static class Builder {
+
+        private final Map<String, PostingsWriter> writers = new HashMap<>();
+        private int[] segmentLengths = new int[64];
+        private int[] textOffsets = new int[65];
+        private int[] segmentIndexes = new int[64];
+        private ByteBuffer texts = ByteBuffer.allocateDirect(64 * 1024);
+        private int size;
+
+        public void add(TextSegment segment) {
+            int ordinal = size;
+            Map<String, Integer> frequencies = new HashMap<>();
+            int[] length = {0};
+            LexicalTokenizer.tokenize(segment.text(), term -> {
+                frequencies.merge(term, 1, Integer::sum);
+                length[0]++;
+            });
+            frequencies.forEach((term, frequency) ->
+                    writers.computeIfAbsent(term, key -> new PostingsWriter()).add(ordinal, frequency));
+
+            if (ordinal == segmentLengths.length) {
+                segmentLengths = Arrays.copyOf(segmentLengths, ordinal * 2);
+                textOffsets = Arrays.copyOf(textOffsets, ordinal * 2 + 1);
+                segmentIndexes = Arrays.copyOf(segmentIndexes, ordinal * 2);
+            }
+            segmentLengths[ordinal] = length[0];
+            String index = segment.metadata().getString("index");
+            segmentIndexes[ordinal] = index != null ? Integer.parseInt(index) : ordinal;
+            appendText(segment.text().getBytes(StandardCharsets.UTF_8));
+            textOffsets[ordinal + 1] = texts.position();
+            size++;
+        }
+
+        public Bm25Index build() {
+            Map<String, Postings> postings = new HashMap<>(writers.size() * 2);
+            writers.forEach((term, writer) -> postings.put(term, writer.toPostings()));
+            ByteBuffer packed = ByteBuffer.allocateDirect(texts.position());
+            packed.put(texts.flip()).flip();
+            return new Bm25Index(postings, Arrays.copyOf(segmentLengths, size), packed, Arrays.copyOf(textOffsets, size + 1),
+                    Arrays.copyOf(segmentIndexes, size));
+        }
+
+        private void appendText(byte[] utf8) {
+            if (texts.remaining() < utf8.length) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(texts.capacity() * 2, texts.position() + utf8.length));
+                grown.put(texts.flip());
+                texts = grown;
+            }
+            texts.put(utf8);
+        }
+    }
+
+    private static final class PostingsWriter {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int count;
+        private int lastOrdinal;
+
+        void add(int ordinal, int frequency) {
+            writeVarint(ordinal - lastOrdinal);
+            writeVarint(frequency);
+            lastOrdinal = ordinal;
+            count++;
+        }
+
+        Postings toPostings() {
+            return new Postings(count, Arrays.copyOf(bytes, length));
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
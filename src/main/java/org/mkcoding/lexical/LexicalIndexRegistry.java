@@ -0,0 +1,92 @@
+package org.mkcoding.lexical;
+
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Holds the BM25 index of every document uploaded while {@code retriever.mode=hybrid}. Indexes live in memory
+ * only; a document without one, e.g. restored from disk after a restart, is searched by vectors alone.
+ */
+@Component
+@Slf4j
+public class LexicalIndexRegistry {
+
+    private final boolean enabled;
+    private final ConcurrentHashMap<Long, Bm25Index> indexes = new ConcurrentHashMap<>();
+
+    public LexicalIndexRegistry(@Value("${retriever.mode:dense}") String retrieverMode) {
+        if (!"dense".equals(retrieverMode) && !"hybrid".equals(retrieverMode)) {
+            throw new IllegalArgumentException("Unknown retriever.mode: " + retrieverMode);
+        }
+        this.enabled = "hybrid".equals(retrieverMode);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts indexing an upload. Segments passed to the returned sink are indexed once {@link #register} is called.
+     */
+    public Indexing startIndexing() {
+        return enabled ? new Indexing(Bm25Index.builder()) : new Indexing(null);
+    }
+
+    /**
+     * Starts re-indexing a document whose current segments all stay, e.g. before appending to it:
+     * the segments of its existing index are indexed first.
+     */
+    public Indexing startIndexing(Long documentId) {
+        Indexing indexing = startIndexing();
+        find(documentId).ifPresent(existing -> {
+            for (int ordinal = 0; ordinal < existing.size(); ordinal++) {
+                indexing.accept(existing.segment(ordinal));
+            }
+        });
+        return indexing;
+    }
+
+    public void register(Long documentId, Indexing indexing) {
+        if (indexing.builder != null) {
+            Bm25Index index = indexing.builder.build();
+            indexes.put(documentId, index);
+            log.debug("Indexed {} segments and {} terms of document {}", index.size(), index.termCount(), documentId);
+        }
+    }
+
+    public Optional<Bm25Index> find(Long documentId) {
+        return Optional.ofNullable(indexes.get(documentId));
+    }
+
+    public void remove(Long documentId) {
+        indexes.remove(documentId);
+    }
+
+    public static final class Indexing implements Consumer<TextSegment> {
+        private final Bm25Index.Builder builder;
+
+        private Indexing(Bm25Index.Builder builder) {
+            this.builder = builder;
+        }
+
+        /**
+         * Whether segments are indexed at all, so callers can skip materializing segments for a disabled index.
+         */
+        public boolean isEnabled() {
+            return builder != null;
+        }
+
+        @Override
+        public void accept(TextSegment segment) {
+            if (builder != null) {
+                builder.add(segment);
+            }
+        }
+    }
+}
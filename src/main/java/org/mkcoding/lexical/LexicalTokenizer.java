@@ -0,0 +1,68 @@
+package org.mkcoding.lexical;
+
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Lower-cases text and splits it into terms for the BM25 index. Identifiers such as {@code ERR-1042},
+ * {@code v2.3.1} or {@code max_tokens} are kept whole and also indexed by their parts, so both an exact
+ * code and its pieces match.
+ */
+public final class LexicalTokenizer {
+
+    private LexicalTokenizer() {
+    }
+
+    public static void tokenize(CharSequence text, Consumer<String> terms) {
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            boolean termChar = Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.';
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                emit(text.subSequence(start, i).toString(), terms);
+                start = -1;
+            }
+        }
+    }
+
+    private static void emit(String token, Consumer<String> terms) {
+        // Joiners only count inside a token, so "end." or "-flag" lose them
+        String term = strip(token).toLowerCase(Locale.ROOT);
+        if (term.isEmpty()) {
+            return;
+        }
+        terms.accept(term);
+        int partStart = 0;
+        boolean compound = false;
+        for (int i = 0; i <= term.length(); i++) {
+            if (i == term.length() || isJoiner(term.charAt(i))) {
+                if (i < term.length()) {
+                    compound = true;
+                }
+                if (compound && i > partStart) {
+                    terms.accept(term.substring(partStart, i));
+                }
+                partStart = i + 1;
+            }
+        }
+    }
+
+    private static String strip(String token) {
+        int from = 0;
+        int to = token.length();
+        while (from < to && isJoiner(token.charAt(from))) {
+            from++;
+        }
+        while (to > from && isJoiner(token.charAt(to - 1))) {
+            to--;
+        }
+        return token.substring(from, to);
+    }
+
+    private static boolean isJoiner(char c) {
+        return c == '-' || c == '_' || c == '.';
+    }
+}
@@ -0,0 +1,19 @@
+package org.mkcoding.llm;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.List;
+
+/**
+ * Receives a streamed chat answer: the retrieved context first, then the tokens as the model produces them.
+ */
+public interface ChatStreamHandler {
+
+    void onContext(List<Content> contents);
+
+    void onToken(String token);
+
+    void onComplete(String answer);
+
+    void onError(Throwable error);
+}
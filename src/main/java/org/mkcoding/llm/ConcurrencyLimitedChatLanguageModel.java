@@ -0,0 +1,33 @@
+package org.mkcoding.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import org.mkcoding.concurrency.ModelConcurrencyLimiter;
+
+import java.util.List;
+
+/**
+ * Holds a permit of the model's {@link ModelConcurrencyLimiter} for the duration of every blocking call.
+ */
+public class ConcurrencyLimitedChatLanguageModel implements ChatLanguageModel {
+
+    private final ChatLanguageModel delegate;
+    private final ModelConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitedChatLanguageModel(ChatLanguageModel delegate, ModelConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        limiter.acquire();
+        try {
+            return delegate.generate(messages);
+        } finally {
+            limiter.release();
+        }
+    }
+}
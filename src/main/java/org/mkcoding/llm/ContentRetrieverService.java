@@ -1,16 +1,37 @@
 package org.mkcoding.llm;
 
+import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.rag.content.Content;
-import dev.langchain4j.rag.content.retriever.ContentRetriever;
-import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.mkcoding.cache.BoundedCache;
+import org.mkcoding.lexical.Bm25Index;
+import org.mkcoding.lexical.LexicalIndexRegistry;
+import org.mkcoding.metrics.RagMetrics;
+import org.mkcoding.model.Document;
+import org.mkcoding.store.DocumentScopedEmbeddingStore;
+import org.mkcoding.store.HnswEmbeddingStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class ContentRetrieverService {
@@ -18,25 +39,192 @@ public class ContentRetrieverService {
     private final EmbeddingModel embeddingModel;
     private final Integer maxResults;
     private final Double minScore;
+    private final BoundedCache<String, Embedding> queryEmbeddings;
+    private final ForkJoinPool searchPool;
+    private final LexicalIndexRegistry lexicalIndexes;
+    private final int hybridCandidates;
+    private final int rrfK;
+    private final DistributionSummary retrievedSegments;
+    private final DistributionSummary retrievedScores;
 
     public ContentRetrieverService(
             EmbeddingModel embeddingModel,
             @Value("${retriever.max.results}") Integer maxResults,
-            @Value("${retriever.min.score}") Double minScore
+            @Value("${retriever.min.score}") Double minScore,
+            @Value("${retriever.query.cache.size:1000}") int queryCacheSize,
+            @Value("${retriever.query.cache.ttl.minutes:60}") long queryCacheTtlMinutes,
+            @Value("${retriever.parallelism:0}") int parallelism,
+            LexicalIndexRegistry lexicalIndexes,
+            @Value("${retriever.hybrid.candidates:20}") int hybridCandidates,
+            @Value("${retriever.hybrid.rrf.k:60}") int rrfK,
+            MeterRegistry meterRegistry
     ) {
         this.embeddingModel = embeddingModel;
         this.maxResults = maxResults;
         this.minScore = minScore;
+        this.queryEmbeddings = new BoundedCache<>("query.embeddings", queryCacheSize,
+                TimeUnit.MINUTES.toNanos(queryCacheTtlMinutes), meterRegistry);
+        // 0 means one search thread per available core
+        this.searchPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.lexicalIndexes = lexicalIndexes;
+        this.hybridCandidates = hybridCandidates;
+        this.rrfK = rrfK;
+        this.retrievedSegments = RagMetrics.retrievedSegments(meterRegistry);
+        this.retrievedScores = RagMetrics.retrievedScores(meterRegistry);
     }
 
     public List<Content> retrieveRelevantContents(String queryText, EmbeddingStore<TextSegment> embeddingStore) {
-        ContentRetriever contentRetriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(embeddingStore)
-                .embeddingModel(embeddingModel)
+        // Same search EmbeddingStoreContentRetriever performs, without building a retriever per call
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedQuery(queryText))
                 .maxResults(maxResults)
                 .minScore(minScore)
                 .build();
 
-        return contentRetriever.retrieve(new Query(queryText));
+        List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(request).matches();
+        recordRetrieval(matches.size(), matches);
+        return matches.stream()
+                .map(match -> Content.from(match.embedded()))
+                .toList();
     }
-}
\ No newline at end of file
+
+    /**
+     * Retrieves the document's most relevant segments. With {@code retriever.mode=hybrid} and a BM25 index for the
+     * document, the top {@code retriever.hybrid.candidates} vector and BM25 results are fused with reciprocal rank
+     * fusion, so exact identifiers the embedding misses still surface. Otherwise this is the plain vector search.
+     */
+    public List<Content> retrieveRelevantContents(String queryText, EmbeddingStore<TextSegment> embeddingStore, Long documentId) {
+        Optional<Bm25Index> lexicalIndex = lexicalIndexes.find(documentId);
+        if (lexicalIndex.isEmpty()) {
+            return retrieveRelevantContents(queryText, embeddingStore);
+        }
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedQuery(queryText))
+                .maxResults(Math.max(hybridCandidates, maxResults))
+                .minScore(minScore)
+                .build();
+        List<EmbeddingMatch<TextSegment>> denseMatches = embeddingStore.search(request).matches();
+        List<TextSegment> dense = denseMatches.stream()
+                .map(EmbeddingMatch::embedded)
+                .toList();
+        Bm25Index index = lexicalIndex.get();
+        List<Bm25Index.Hit> lexical = index.search(queryText, Math.max(hybridCandidates, maxResults));
+
+        // Segments are identified by the index they were stored with, which BM25 keeps next to each ordinal
+        Map<String, Double> fusedScores = new HashMap<>();
+        Map<String, TextSegment> segments = new HashMap<>();
+        Map<String, Integer> lexicalOrdinals = new HashMap<>();
+        for (int rank = 0; rank < dense.size(); rank++) {
+            TextSegment segment = dense.get(rank);
+            String key = segmentKey(segment);
+            fusedScores.merge(key, 1.0 / (rrfK + rank + 1), Double::sum);
+            segments.putIfAbsent(key, segment);
+        }
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            int ordinal = lexical.get(rank).ordinal();
+            String key = String.valueOf(index.segmentIndex(ordinal));
+            fusedScores.merge(key, 1.0 / (rrfK + rank + 1), Double::sum);
+            lexicalOrdinals.put(key, ordinal);
+        }
+
+        List<Content> fused = fusedScores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(maxResults)
+                .map(entry -> Content.from(segments.computeIfAbsent(entry.getKey(), key -> index.segment(lexicalOrdinals.get(key)))))
+                .toList();
+        // Fused ranks have no similarity, so the score distribution follows the dense candidates
+        recordRetrieval(fused.size(), denseMatches);
+        return fused;
+    }
+
+    /**
+     * Searches several documents with one question embedding and returns the global top K across all of them.
+     * <p>
+     * Documents backed by the shared HNSW index are searched with a single filtered search. Any other stores
+     * are searched in parallel, so latency follows the slowest store rather than the sum of them.
+     */
+    public List<RetrievedSegment> retrieveAcrossDocuments(String queryText, List<Document> documents) {
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedQuery(queryText))
+                .maxResults(maxResults)
+                .minScore(minScore)
+                .build();
+
+        HnswEmbeddingStore sharedIndex = sharedIndexOf(documents);
+        if (sharedIndex != null) {
+            Set<Long> documentIds = new HashSet<>();
+            documents.forEach(document -> documentIds.add(document.getId()));
+            List<RetrievedSegment> retrieved = sharedIndex.search(request, documentIds).matches().stream()
+                    .map(match -> new RetrievedSegment(documentIdOf(match), match.score(), match.embedded()))
+                    .toList();
+            recordRetrieval(retrieved);
+            return retrieved;
+        }
+
+        List<CompletableFuture<List<RetrievedSegment>>> searches = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            searches.add(CompletableFuture.supplyAsync(() -> document.getDocumentEmbeddingStore().search(request).matches().stream()
+                    .map(match -> new RetrievedSegment(document.getId(), match.score(), match.embedded()))
+                    .toList(), searchPool));
+        }
+        List<RetrievedSegment> retrieved = searches.stream()
+                .flatMap(search -> search.join().stream())
+                .sorted(Comparator.comparingDouble(RetrievedSegment::score).reversed())
+                .limit(maxResults)
+                .toList();
+        recordRetrieval(retrieved);
+        return retrieved;
+    }
+
+    /**
+     * Embeds the question, reusing the embedding of an earlier question with the same normalized text.
+     */
+    public Embedding embedQuery(String queryText) {
+        return queryEmbeddings.get(normalizeQuery(queryText), key -> embeddingModel.embed(queryText).content());
+    }
+
+    /**
+     * Questions that differ only in case or whitespace normalize to the same text.
+     */
+    public static String normalizeQuery(String queryText) {
+        return queryText.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchPool.shutdown();
+    }
+
+    private void recordRetrieval(int returned, List<EmbeddingMatch<TextSegment>> matches) {
+        retrievedSegments.record(returned);
+        matches.forEach(match -> retrievedScores.record(match.score()));
+    }
+
+    private void recordRetrieval(List<RetrievedSegment> retrieved) {
+        retrievedSegments.record(retrieved.size());
+        retrieved.forEach(segment -> retrievedScores.record(segment.score()));
+    }
+
+    private static HnswEmbeddingStore sharedIndexOf(List<Document> documents) {
+        HnswEmbeddingStore sharedIndex = null;
+        for (Document document : documents) {
+            if (!(document.getDocumentEmbeddingStore() instanceof DocumentScopedEmbeddingStore scoped)
+                    || (sharedIndex != null && sharedIndex != scoped.getIndex())) {
+                return null;
+            }
+            sharedIndex = scoped.getIndex();
+        }
+        return sharedIndex;
+    }
+
+    private static String segmentKey(TextSegment segment) {
+        String index = segment.metadata().getString("index");
+        // Segments stored without an index cannot match a BM25 hit and are fused on their own
+        return index != null ? index : "text:" + segment.text();
+    }
+
+    private static Long documentIdOf(EmbeddingMatch<TextSegment> match) {
+        return match.embedded().metadata().getLong(HnswEmbeddingStore.DOCUMENT_ID_KEY);
+    }
+}
@@ -0,0 +1,59 @@
+package org.mkcoding.llm;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline stand-in for the OpenAI streaming model, selected with {@code chat.streaming.model=fake}.
+ * It streams a fixed answer word by word from another thread, pausing {@code tokenDelayMillis} between tokens.
+ */
+public class FakeStreamingChatLanguageModel implements StreamingChatLanguageModel {
+
+    private final long tokenDelayMillis;
+
+    public FakeStreamingChatLanguageModel(long tokenDelayMillis) {
+        this.tokenDelayMillis = tokenDelayMillis;
+    }
+
+    @Override
+    public void generate(List<ChatMessage> messages, StreamingResponseHandler<AiMessage> handler) {
+        int promptLength = messages.stream().mapToInt(FakeStreamingChatLanguageModel::textLength).sum();
+        String answer = "This answer was generated locally from a prompt of " + promptLength + " characters.";
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                String[] words = answer.split(" ");
+                for (int i = 0; i < words.length; i++) {
+                    TimeUnit.MILLISECONDS.sleep(tokenDelayMillis);
+                    handler.onNext(i == 0 ? words[i] : " " + words[i]);
+                }
+                handler.onComplete(Response.from(AiMessage.from(answer)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                handler.onError(e);
+            }
+        });
+    }
+
+    private static int textLength(ChatMessage message) {
+        if (message instanceof UserMessage userMessage) {
+            return userMessage.hasSingleText() ? userMessage.singleText().length() : 0;
+        }
+        if (message instanceof SystemMessage systemMessage) {
+            return systemMessage.text().length();
+        }
+        if (message instanceof AiMessage aiMessage && aiMessage.text() != null) {
+            return aiMessage.text().length();
+        }
+        return 0;
+    }
+}
@@ -1,21 +1,213 @@
 package org.mkcoding.llm;
 
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
 import dev.langchain4j.rag.content.Content;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.mkcoding.store.HnswEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
+/**
+ * Assembles the chat prompt from retrieved segments, which arrive best first, within a token budget:
+ * <ol>
+ *     <li>segments whose words overlap an already kept segment by at least {@code prompt.dedup.similarity} are dropped</li>
+ *     <li>the remaining segments are packed best first while their tokens fit {@code prompt.context.token.budget}</li>
+ *     <li>kept segments that were adjacent in the same document are merged back into one passage, in document
+ *     order. Only segments {@link #positioned} with their document and their position in it are merged.</li>
+ * </ol>
+ * With {@code ingestion.segment.overlap} set, the text a segment shares with its predecessor appears only once in
+ * the merged passage. Tokens are counted locally with the chat model's tokenizer.
+ */
 @Component
 public class PromptBuilder {
 
+    public static final String POSITION_KEY = "position";
+
+    private static final String INSTRUCTIONS = "You are an assistant that answers questions based on the provided document.\n\n";
+
+    private final Tokenizer tokenizer;
+    private final int contextTokenBudget;
+    private final double duplicateSimilarity;
+    private final boolean segmentsOverlap;
+
+    private final DistributionSummary promptTokens;
+    private final Counter droppedDuplicates;
+    private final Counter droppedOverBudget;
+
+    public PromptBuilder(
+            Tokenizer tokenizer,
+            @Value("${prompt.context.token.budget:1000}") int contextTokenBudget,
+            @Value("${prompt.dedup.similarity:0.9}") double duplicateSimilarity,
+            @Value("${ingestion.segment.overlap:0}") int segmentOverlap,
+            MeterRegistry meterRegistry
+    ) {
+        this.tokenizer = tokenizer;
+        this.contextTokenBudget = contextTokenBudget;
+        this.duplicateSimilarity = duplicateSimilarity;
+        this.segmentsOverlap = segmentOverlap > 0;
+
+        this.promptTokens = DistributionSummary.builder("prompt.tokens")
+                .description("Tokens per assembled chat prompt")
+                .baseUnit("tokens")
+                .publishPercentiles(0.5, 0.95)
+                .register(meterRegistry);
+        this.droppedDuplicates = Counter.builder("prompt.segments.dropped").tag("reason", "duplicate").register(meterRegistry);
+        this.droppedOverBudget = Counter.builder("prompt.segments.dropped").tag("reason", "budget").register(meterRegistry);
+    }
+
+    /**
+     * Tags a retrieved segment with its document and its position in the document's current content, counted
+     * from 0. A {@code null} position, e.g. for a segment the document no longer has, leaves it unmerged.
+     */
+    public static Content positioned(TextSegment segment, Long documentId, Integer position) {
+        Metadata metadata = segment.metadata().copy().put(HnswEmbeddingStore.DOCUMENT_ID_KEY, documentId);
+        if (position != null) {
+            metadata.put(POSITION_KEY, position);
+        }
+        return Content.from(TextSegment.from(segment.text(), metadata));
+    }
+
     public String buildPrompt(List<Content> segments, String question) {
+        List<Candidate> packed = pack(segments);
+
         StringBuilder prompt = new StringBuilder();
-        prompt.append("You are an assistant that answers questions based on the provided document.\n\n");
+        prompt.append(INSTRUCTIONS);
         prompt.append("Context:\n");
-        for (Content segment : segments) {
-            prompt.append(segment.textSegment().text()).append("\n");
+        for (String passage : mergeAdjacent(packed)) {
+            prompt.append(passage).append("\n");
         }
         prompt.append("\nQuestion:\n").append(question).append("\n\nAnswer:");
-        return prompt.toString();
+
+        String assembled = prompt.toString();
+        promptTokens.record(tokenizer.estimateTokenCountInText(assembled));
+        return assembled;
+    }
+
+    private List<Candidate> pack(List<Content> segments) {
+        List<Candidate> kept = new ArrayList<>();
+        int remainingTokens = contextTokenBudget;
+        for (int rank = 0; rank < segments.size(); rank++) {
+            TextSegment segment = segments.get(rank).textSegment();
+            Set<String> words = words(segment.text());
+            if (kept.stream().anyMatch(candidate -> jaccard(words, candidate.words) >= duplicateSimilarity)) {
+                droppedDuplicates.increment();
+                continue;
+            }
+            int tokens = tokenizer.estimateTokenCountInText(segment.text());
+            if (tokens > remainingTokens) {
+                // A lower-ranked but shorter segment may still fit
+                droppedOverBudget.increment();
+                continue;
+            }
+            remainingTokens -= tokens;
+            kept.add(new Candidate(segment, words, rank,
+                    segment.metadata().getLong(HnswEmbeddingStore.DOCUMENT_ID_KEY), segment.metadata().getInteger(POSITION_KEY)));
+        }
+        return kept;
+    }
+
+    private List<String> mergeAdjacent(List<Candidate> candidates) {
+        // Segments with a position go in document order so neighbours can be joined; others follow by rank
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparing((Candidate candidate) -> !candidate.isPositioned())
+                .thenComparing(candidate -> candidate.isPositioned() ? candidate.documentId : 0L)
+                .thenComparing(candidate -> candidate.isPositioned() ? candidate.position : candidate.rank));
+
+        List<String> passages = new ArrayList<>();
+        StringBuilder passage = null;
+        Candidate previous = null;
+        for (Candidate candidate : ordered) {
+            if (previous != null && candidate.follows(previous)) {
+                append(passage, candidate.segment.text());
+            } else {
+                if (passage != null) {
+                    passages.add(passage.toString());
+                }
+                passage = new StringBuilder(candidate.segment.text());
+            }
+            previous = candidate;
+        }
+        if (passage != null) {
+            passages.add(passage.toString());
+        }
+        return passages;
+    }
+
+    private void append(StringBuilder passage, String text) {
+        int shared = segmentsOverlap ? sharedLength(passage, text) : 0;
+        if (shared == 0) {
+            passage.append(' ').append(text);
+        } else {
+            passage.append(text, shared, text.length());
+        }
+    }
+
+    /**
+     * Length of the longest start of {@code text} that ends the passage and starts a word there, which is how the
+     * splitter begins an overlapping segment.
+     */
+    private static int sharedLength(CharSequence passage, String text) {
+        for (int length = Math.min(passage.length(), text.length()); length > 0; length--) {
+            int start = passage.length() - length;
+            if ((start == 0 || Character.isWhitespace(passage.charAt(start - 1))) && regionEquals(passage, start, text, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean regionEquals(CharSequence passage, int start, String text, int length) {
+        for (int i = 0; i < length; i++) {
+            if (passage.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("\\W+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1;
+        }
+        int intersection = 0;
+        for (String word : a) {
+            if (b.contains(word)) {
+                intersection++;
+            }
+        }
+        return intersection / (double) (a.size() + b.size() - intersection);
+    }
+
+    private record Candidate(TextSegment segment, Set<String> words, int rank, Long documentId, Integer position) {
+
+        boolean isPositioned() {
+            return documentId != null && position != null;
+        }
+
+        boolean follows(Candidate previous) {
+            return isPositioned() && previous.isPositioned()
+                    && documentId.equals(previous.documentId) && position == previous.position + 1;
+        }
     }
 }
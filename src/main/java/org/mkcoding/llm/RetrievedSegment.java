@@ -0,0 +1,9 @@
+package org.mkcoding.llm;
+
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * A segment found by a search across several documents, with the document it belongs to.
+ */
+public record RetrievedSegment(Long documentId, double score, TextSegment segment) {
+}
@@ -0,0 +1,56 @@
+package org.mkcoding.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters shared by the stages of the RAG pipeline, so upload and chat latency can be broken down per stage.
+ * <ul>
+ *     <li>{@code rag.stage.latency{operation=ingest, stage=parse|split|embed|store}}, one sample per document</li>
+ *     <li>{@code rag.stage.latency{operation=chat, stage=embed|retrieve|prompt|generate}}, one sample per question</li>
+ *     <li>{@code rag.ingest.segments}, segments stored per document</li>
+ *     <li>{@code rag.retrieve.segments} and {@code rag.retrieve.score}, segments and vector similarity per retrieval</li>
+ * </ul>
+ * Timers publish percentile histograms, so they can be aggregated across instances from the Prometheus endpoint.
+ */
+public final class RagMetrics {
+
+    public static final String INGEST = "ingest";
+    public static final String CHAT = "chat";
+
+    private RagMetrics() {
+    }
+
+    public static Timer stageTimer(MeterRegistry meterRegistry, String operation, String stage) {
+        return Timer.builder("rag.stage.latency")
+                .description("Latency of one RAG pipeline stage")
+                .tag("operation", operation)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public static DistributionSummary ingestedSegments(MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("rag.ingest.segments")
+                .description("Segments stored per ingested document")
+                .baseUnit("segments")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public static DistributionSummary retrievedSegments(MeterRegistry meterRegistry) {
+        return DistributionSummary.builder("rag.retrieve.segments")
+                .description("Segments returned per retrieval")
+                .baseUnit("segments")
+                .register(meterRegistry);
+    }
+
+    public static DistributionSummary retrievedScores(MeterRegistry meterRegistry) {
+        // Relevance scores lie in [0, 1], below the range of the default histogram buckets
+        return DistributionSummary.builder("rag.retrieve.score")
+                .description("Vector similarity of retrieved segments")
+                .serviceLevelObjectives(0.5, 0.6, 0.7, 0.75, 0.8, 0.85, 0.9, 0.95)
+                .register(meterRegistry);
+    }
+}
@@ -6,22 +6,31 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 @Getter
 @Setter
 @NoArgsConstructor(force = true)
 public class Document {
 
-    private static final AtomicLong counter = new AtomicLong(1); // Starts at 1
     private final Long id;
     private final EmbeddingStore<TextSegment> documentEmbeddingStore;
+    // Tracks the stored segments so the document can be updated in place; null for documents restored from disk
+    private SegmentManifest manifest;
 
-    public Document(EmbeddingStore<TextSegment> documentEmbeddingStore) {
-        //UUID.randomUUID().toString(); -> better for bigger apps (unique ids)
-        this.id = counter.getAndIncrement();
+    // Ids are handed out by the repository (DocumentRepository#nextId) so the store can be scoped before the document exists
+    public Document(Long id, EmbeddingStore<TextSegment> documentEmbeddingStore) {
+        this.id = id;
         this.documentEmbeddingStore = documentEmbeddingStore;
     }
+
+    /**
+     * Position of a stored segment in the current content, from its {@code index} metadata, or {@code null} when
+     * it is unknown. Without a manifest the indexes may predate a replace, so they are not taken as positions.
+     */
+    public Integer positionOf(TextSegment segment) {
+        SegmentManifest current = manifest;
+        String index = segment.metadata().getString("index");
+        return current == null || index == null ? null : current.positionOf(Integer.parseInt(index));
+    }
 }
 
 
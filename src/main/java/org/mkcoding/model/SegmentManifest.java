@@ -0,0 +1,59 @@
+package org.mkcoding.model;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The segments currently stored for a document, in document order: the id each one has in the embedding store,
+ * the SHA-256 of its text and the {@code index} metadata it was stored with. Updates compare new text against
+ * these hashes to embed only the segments that changed.
+ * <p>
+ * A segment keeps its index for as long as it is stored, so after a replace the kept segments' indexes no longer
+ * follow document order; {@link #positionOf} gives a segment's place in the current content.
+ * <p>
+ * Updates of one document synchronize on the {@link Document}; {@link #positionOf} may be called concurrently.
+ */
+public class SegmentManifest {
+
+    private List<Entry> entries;
+    private int nextIndex;
+    private volatile Map<Integer, Integer> positions;
+
+    public SegmentManifest(List<Entry> entries, int nextIndex) {
+        update(entries, nextIndex);
+    }
+
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    /**
+     * The {@code index} the next new segment is stored with. Indexes are never reused, so an index identifies one
+     * stored segment, e.g. for fusing dense and lexical results, but says nothing about its position.
+     */
+    public int nextIndex() {
+        return nextIndex;
+    }
+
+    /**
+     * Position of the segment stored with {@code index} in the current content, counted from 0, or {@code null}
+     * if the document no longer has it.
+     */
+    public Integer positionOf(int index) {
+        return positions.get(index);
+    }
+
+    public void update(List<Entry> entries, int nextIndex) {
+        this.entries = List.copyOf(entries);
+        this.nextIndex = nextIndex;
+        Map<Integer, Integer> positions = new HashMap<>();
+        for (int position = 0; position < this.entries.size(); position++) {
+            positions.put(this.entries.get(position).index(), position);
+        }
+        this.positions = positions;
+    }
+
+    public record Entry(String storeId, String textHash, int index) {
+    }
+}
@@ -2,6 +2,7 @@ package org.mkcoding.repository;
 
 import org.mkcoding.model.Document;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface DocumentRepository {
@@ -10,4 +11,10 @@ public interface DocumentRepository {
     void save(Document document);
 
     Optional<Document> findById(Long id);
+
+    List<Document> findAll();
+
+    void deleteById(Long id);
+
+    Long nextId();
 }
\ No newline at end of file
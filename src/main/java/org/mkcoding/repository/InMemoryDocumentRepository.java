@@ -1,14 +1,19 @@
 package org.mkcoding.repository;
 
 import org.mkcoding.model.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Repository
+@ConditionalOnProperty(name = "document.repository.type", havingValue = "memory", matchIfMissing = true)
 public class InMemoryDocumentRepository implements DocumentRepository  {
     private final ConcurrentHashMap<Long, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong(1); // Starts at 1
 
     public void save(Document document) {
         documents.put(document.getId(), document);
@@ -17,4 +22,17 @@ public class InMemoryDocumentRepository implements DocumentRepository  {
     public Optional<Document> findById(Long id) {
         return Optional.ofNullable(documents.get(id));
     }
+
+    public List<Document> findAll() {
+        return List.copyOf(documents.values());
+    }
+
+    public void deleteById(Long id) {
+        documents.remove(id);
+    }
+
+    public Long nextId() {
+        //UUID.randomUUID().toString(); -> better for bigger apps (unique ids)
+        return counter.getAndIncrement();
+    }
 }
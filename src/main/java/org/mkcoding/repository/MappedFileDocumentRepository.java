@@ -0,0 +1,183 @@
+package org.mkcoding.repository;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.model.Document;
+import org.mkcoding.store.MappedEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Durable repository: every document lives in its own {@link MappedEmbeddingStore} directory under
+ * {@code document.repository.dir}. Committed document ids are appended to {@code documents.log}, deletions
+ * as negated ids, and the last allocated id is kept in {@code ids.seq}, so ids stay monotonic across restarts.
+ * <p>
+ * Startup only maps the files of committed documents; directories of uploads that never committed are removed.
+ */
+@Repository
+@ConditionalOnProperty(name = "document.repository.type", havingValue = "mapped")
+@Slf4j
+public class MappedFileDocumentRepository implements DocumentRepository {
+
+    private static final String DOCUMENTS_LOG = "documents.log";
+    private static final String ID_SEQUENCE = "ids.seq";
+
+    private final Path root;
+    private final FileChannel documentsLog;
+    private final FileChannel idSequence;
+    private final ConcurrentHashMap<Long, Document> documents = new ConcurrentHashMap<>();
+    private long lastId;
+
+    public MappedFileDocumentRepository(@Value("${document.repository.dir:data/documents}") String directory) {
+        this.root = Paths.get(directory);
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(root);
+            this.documentsLog = FileChannel.open(root.resolve(DOCUMENTS_LOG),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.idSequence = FileChannel.open(root.resolve(ID_SEQUENCE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            Set<Long> committed = readCommittedIds();
+            lastId = readLastId();
+            for (Long id : committed) {
+                documents.put(id, new Document(id, new MappedEmbeddingStore(documentDirectory(id))));
+                lastId = Math.max(lastId, id);
+            }
+            removeUncommitted(committed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open document repository in " + root, e);
+        }
+        log.info("Mapped {} documents from {} in {} ms", documents.size(), root, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void save(Document document) {
+        if (!(document.getDocumentEmbeddingStore() instanceof MappedEmbeddingStore store)) {
+            throw new IllegalStateException("document.repository.type=mapped requires vector.store.type=mapped");
+        }
+        store.flush();
+        appendToLog(document.getId());
+        documents.put(document.getId(), document);
+    }
+
+    /**
+     * Commits the removal; deleting the document's directory is left to the caller once the store is released.
+     * A directory left behind by a crash is uncommitted and removed at the next startup.
+     */
+    @Override
+    public void deleteById(Long id) {
+        appendToLog(-id);
+        documents.remove(id);
+    }
+
+    @Override
+    public Optional<Document> findById(Long id) {
+        return Optional.ofNullable(documents.get(id));
+    }
+
+    @Override
+    public List<Document> findAll() {
+        return List.copyOf(documents.values());
+    }
+
+    @Override
+    public synchronized Long nextId() {
+        lastId++;
+        try {
+            idSequence.write(ByteBuffer.allocate(Long.BYTES).putLong(0, lastId), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to persist id sequence", e);
+        }
+        return lastId;
+    }
+
+    public Path documentDirectory(Long id) {
+        return root.resolve(String.valueOf(id));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        for (Document document : documents.values()) {
+            EmbeddingStore<TextSegment> store = document.getDocumentEmbeddingStore();
+            if (store instanceof MappedEmbeddingStore mappedStore) {
+                mappedStore.close();
+            }
+        }
+        documentsLog.close();
+        idSequence.close();
+    }
+
+    private void appendToLog(long entry) {
+        synchronized (documentsLog) {
+            try {
+                documentsLog.write(ByteBuffer.allocate(Long.BYTES).putLong(0, entry), documentsLog.size());
+                documentsLog.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to commit document " + Math.abs(entry), e);
+            }
+        }
+    }
+
+    private Set<Long> readCommittedIds() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (documentsLog.size() / Long.BYTES * Long.BYTES));
+        documentsLog.read(buffer, 0);
+        buffer.flip();
+        Set<Long> ids = new HashSet<>();
+        while (buffer.remaining() >= Long.BYTES) {
+            long entry = buffer.getLong();
+            if (entry < 0) {
+                ids.remove(-entry);
+            } else {
+                ids.add(entry);
+            }
+        }
+        return ids;
+    }
+
+    private long readLastId() throws IOException {
+        if (idSequence.size() < Long.BYTES) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        idSequence.read(buffer, 0);
+        return buffer.getLong(0);
+    }
+
+    private void removeUncommitted(Set<Long> committed) throws IOException {
+        try (Stream<Path> entries = Files.list(root)) {
+            for (Path entry : entries.filter(Files::isDirectory).toList()) {
+                String name = entry.getFileName().toString();
+                if (!name.chars().allMatch(Character::isDigit) || committed.contains(Long.parseLong(name))) {
+                    continue;
+                }
+                lastId = Math.max(lastId, Long.parseLong(name));
+                log.warn("Removing uncommitted document directory {}", entry);
+                try (Stream<Path> files = Files.walk(entry)) {
+                    for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.mkcoding.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.model.Document;
+import org.mkcoding.store.TieredEmbeddingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Repository that keeps document stores in memory up to {@code document.repository.memory.budget.mb} and evicts
+ * the rest to disk under {@code document.repository.dir}. Whenever a document is saved or loaded back and the
+ * resident stores exceed the budget, other documents are evicted:
+ * <ul>
+ *     <li>{@code lru} - the least recently used first</li>
+ *     <li>{@code size} - the largest first, so one big cold document goes before many small hot ones</li>
+ * </ul>
+ * Evicted documents are loaded back on first access. Like {@link InMemoryDocumentRepository}, documents do not
+ * survive a restart; the disk tier is only an extension of memory.
+ */
+@Repository
+@ConditionalOnProperty(name = "document.repository.type", havingValue = "tiered")
+@Slf4j
+public class TieredDocumentRepository implements DocumentRepository {
+
+    private final ConcurrentHashMap<Long, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong(1);
+    // Resident stores in access order, least recently used first; guarded by itself
+    private final LinkedHashMap<Long, TieredEmbeddingStore> resident = new LinkedHashMap<>(16, 0.75f, true);
+    private final long budgetBytes;
+    private final boolean sizeAware;
+
+    private final Counter evictions;
+    private final Counter evictedBytes;
+    private final Timer reloadLatency;
+
+    public TieredDocumentRepository(
+            @Value("${document.repository.dir:data/documents}") String directory,
+            @Value("${document.repository.memory.budget.mb:512}") long budgetMb,
+            @Value("${document.repository.eviction.policy:lru}") String evictionPolicy,
+            MeterRegistry meterRegistry
+    ) {
+        if (!"lru".equals(evictionPolicy) && !"size".equals(evictionPolicy)) {
+            throw new IllegalArgumentException("Unknown document.repository.eviction.policy: " + evictionPolicy);
+        }
+        this.budgetBytes = budgetMb * 1024 * 1024;
+        this.sizeAware = "size".equals(evictionPolicy);
+        // Evicted copies of an earlier run belong to documents that no longer exist
+        deleteDirectory(Paths.get(directory).resolve(TieredEmbeddingStore.COLD_DIRECTORY));
+
+        Gauge.builder("document.repository.resident.documents", resident, map -> {
+                    synchronized (map) {
+                        return map.size();
+                    }
+                })
+                .description("Documents whose embedding store is in memory")
+                .register(meterRegistry);
+        Gauge.builder("document.repository.resident.bytes", this, TieredDocumentRepository::residentBytes)
+                .description("Estimated memory held by resident embedding stores")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("document.repository.documents", documents, Map::size)
+                .description("Documents in memory or on disk")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("document.repository.evictions")
+                .description("Embedding stores evicted to disk")
+                .register(meterRegistry);
+        this.evictedBytes = Counter.builder("document.repository.evicted.bytes")
+                .description("Estimated memory freed by evictions")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.reloadLatency = Timer.builder("document.repository.reload.latency")
+                .description("Time to load an evicted embedding store back into memory")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void save(Document document) {
+        if (!(document.getDocumentEmbeddingStore() instanceof TieredEmbeddingStore store)) {
+            throw new IllegalStateException("document.repository.type=tiered requires vector.store.type=tiered");
+        }
+        Long id = document.getId();
+        // Loads triggered by a search are accounted for as well, not only those triggered here
+        store.setLoadListener(loadNanos -> {
+            reloadLatency.record(loadNanos, TimeUnit.NANOSECONDS);
+            touch(id, store);
+        });
+        documents.put(id, document);
+        touch(id, store);
+    }
+
+    @Override
+    public Optional<Document> findById(Long id) {
+        Document document = documents.get(id);
+        if (document == null) {
+            return Optional.empty();
+        }
+        TieredEmbeddingStore store = (TieredEmbeddingStore) document.getDocumentEmbeddingStore();
+        // A load touches the document through the load listener
+        if (!store.ensureResident()) {
+            touch(id, store);
+        }
+        return Optional.of(document);
+    }
+
+    @Override
+    public List<Document> findAll() {
+        return List.copyOf(documents.values());
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        documents.remove(id);
+        synchronized (resident) {
+            resident.remove(id);
+        }
+    }
+
+    @Override
+    public Long nextId() {
+        return counter.getAndIncrement();
+    }
+
+    public long residentBytes() {
+        synchronized (resident) {
+            return resident.values().stream().mapToLong(TieredEmbeddingStore::memoryBytes).sum();
+        }
+    }
+
+    private void touch(Long id, TieredEmbeddingStore store) {
+        List<TieredEmbeddingStore> victims = new ArrayList<>();
+        synchronized (resident) {
+            resident.put(id, store);
+            long total = resident.values().stream().mapToLong(TieredEmbeddingStore::memoryBytes).sum();
+            // The touched document always stays, even if it alone exceeds the budget
+            while (total > budgetBytes && resident.size() > 1) {
+                Map.Entry<Long, TieredEmbeddingStore> victim = selectVictim(id);
+                resident.remove(victim.getKey());
+                total -= victim.getValue().memoryBytes();
+                victims.add(victim.getValue());
+            }
+        }
+        // Written to disk outside the lock, so lookups of other documents are not held up
+        for (TieredEmbeddingStore victim : victims) {
+            long freed = victim.evict();
+            evictedBytes.increment(freed);
+            evictions.increment();
+            log.debug("Evicted embedding store of {} bytes to disk", freed);
+        }
+    }
+
+    private Map.Entry<Long, TieredEmbeddingStore> selectVictim(Long keep) {
+        Stream<Map.Entry<Long, TieredEmbeddingStore>> candidates = resident.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(keep));
+        return sizeAware
+                ? candidates.max(Comparator.comparingLong(entry -> entry.getValue().memoryBytes())).orElseThrow()
+                : candidates.findFirst().orElseThrow();
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (Files.notExists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear " + directory, e);
+        }
+    }
+}
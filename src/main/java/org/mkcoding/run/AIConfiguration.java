@@ -1,17 +1,33 @@
 package org.mkcoding.run;
 
+import dev.langchain4j.model.Tokenizer;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.bgesmallenv15q.BgeSmallEnV15QuantizedEmbeddingModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.concurrency.ModelConcurrencyLimiter;
+import org.mkcoding.embedding.BgeSmallEmbeddingModel;
+import org.mkcoding.embedding.EmbeddingModelPool;
+import org.mkcoding.llm.ConcurrencyLimitedChatLanguageModel;
+import org.mkcoding.llm.ConcurrencyLimitedStreamingChatLanguageModel;
+import org.mkcoding.llm.FakeStreamingChatLanguageModel;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
+@Slf4j
 public class AIConfiguration {
 
+    private static final int DEFAULT_EMBEDDING_POOL_SIZE = 4;
+
     @Value("${openai.model.name:GPT_4_O_MINI}")
     private String openAiModelName;
 
@@ -24,29 +40,113 @@ public class AIConfiguration {
     @Value("${openai.api.key:}")
     private String apiKeyFromProperties;
 
+    @Value("${chat.streaming.model:openai}")
+    private String streamingModel;
+
+    @Value("${chat.streaming.fake.token.delay.millis:20}")
+    private Long fakeTokenDelayMillis;
+
+    @Value("${chat.model.max.concurrent:32}")
+    private Integer maxConcurrentCalls;
+
+    @Value("${chat.model.acquire.timeout.millis:30000}")
+    private Long acquireTimeoutMillis;
+
+    @Value("${embedding.model.pool.size:0}")
+    private Integer embeddingPoolSize;
+
+    @Value("${embedding.model.intra.op.threads:0}")
+    private Integer embeddingIntraOpThreads;
+
+    @Value("${embedding.executor.threads:0}")
+    private Integer embeddingExecutorThreads;
+
+    /**
+     * A pool of model instances with their own ONNX sessions, splitting the cores between them unless
+     * {@code embedding.model.intra.op.threads} says otherwise. Idle sessions only spin while there is just one.
+     * <p>
+     * The {@link org.mkcoding.embedding.EmbeddingExecutor} embeds an upload's micro-batches in parallel, but the
+     * pool runs at most one call per instance. Every instance costs its own session memory, so by default the pool
+     * stays small and each instance uses several cores instead.
+     */
+    @Bean
+    public EmbeddingModelPool embeddingModel(MeterRegistry meterRegistry) {
+        if (embeddingPoolSize < 0) {
+            throw new IllegalArgumentException("embedding.model.pool.size must not be negative");
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        // 0 means one instance per core, up to DEFAULT_EMBEDDING_POOL_SIZE
+        int poolSize = embeddingPoolSize > 0 ? embeddingPoolSize : Math.min(cores, DEFAULT_EMBEDDING_POOL_SIZE);
+        int intraOpThreads = embeddingIntraOpThreads > 0
+                ? embeddingIntraOpThreads
+                : Math.max(1, cores / poolSize);
+        int executorWorkers = embeddingExecutorThreads > 0 ? embeddingExecutorThreads : cores;
+        log.info("Embedding model pool of {} instances with {} intra-op threads each serves {} embedding executor workers",
+                poolSize, intraOpThreads, executorWorkers);
+        byte[] model = BgeSmallEmbeddingModel.loadModel();
+        List<BgeSmallEmbeddingModel> models = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            models.add(new BgeSmallEmbeddingModel(model, intraOpThreads, poolSize == 1));
+        }
+        return new EmbeddingModelPool(models, meterRegistry);
+    }
+
+    /**
+     * Counts prompt tokens locally, with the encoding of the configured chat model.
+     */
     @Bean
-    public EmbeddingModel embeddingModel() {
-        return new BgeSmallEnV15QuantizedEmbeddingModel();
+    public Tokenizer tokenizer() {
+        return new OpenAiTokenizer(OpenAiChatModelName.valueOf(openAiModelName));
     }
 
+    /**
+     * Shared by the blocking and the streaming chat model, since both call the same upstream model.
+     */
     @Bean
-    public ChatLanguageModel chatLanguageModel() {
-        // Try to get the API key from the environment variable first
-        String apiKey = System.getenv("OPENAI_API_KEY");
-        if (apiKey == null || apiKey.isEmpty()) {
-            apiKey = apiKeyFromProperties;
-        }
-        if (apiKey == null || apiKey.isEmpty()) {
-            throw new IllegalArgumentException("OpenAI API key must be set either as an environment variable 'OPENAI_API_KEY' or in 'application.properties' as 'openai.api.key'");
+    public ModelConcurrencyLimiter chatModelLimiter(MeterRegistry meterRegistry) {
+        return new ModelConcurrencyLimiter(openAiModelName, maxConcurrentCalls, acquireTimeoutMillis, meterRegistry);
+    }
+
+    @Bean
+    public ChatLanguageModel chatLanguageModel(ModelConcurrencyLimiter chatModelLimiter) {
+        OpenAiChatModelName modelName = OpenAiChatModelName.valueOf(openAiModelName);
+
+        ChatLanguageModel model = OpenAiChatModel.builder()
+                .apiKey(resolveApiKey())
+                .modelName(modelName)
+                .temperature(temperature)
+                .maxTokens(maxTokens)
+                .build();
+        return new ConcurrencyLimitedChatLanguageModel(model, chatModelLimiter);
+    }
+
+    @Bean
+    public StreamingChatLanguageModel streamingChatLanguageModel(ModelConcurrencyLimiter chatModelLimiter) {
+        // The fake model streams a canned answer so /chat/stream works without network access
+        if ("fake".equals(streamingModel)) {
+            return new ConcurrencyLimitedStreamingChatLanguageModel(new FakeStreamingChatLanguageModel(fakeTokenDelayMillis), chatModelLimiter);
         }
 
         OpenAiChatModelName modelName = OpenAiChatModelName.valueOf(openAiModelName);
 
-        return OpenAiChatModel.builder()
-                .apiKey(apiKey)
+        StreamingChatLanguageModel model = OpenAiStreamingChatModel.builder()
+                .apiKey(resolveApiKey())
                 .modelName(modelName)
                 .temperature(temperature)
                 .maxTokens(maxTokens)
                 .build();
+        return new ConcurrencyLimitedStreamingChatLanguageModel(model, chatModelLimiter);
+    }
+
+    private String resolveApiKey() {
+        // Try to get the API key from the environment variable first
+        String apiKey = System.getenv("OPENAI_API_KEY");
+        if (apiKey == null || apiKey.isEmpty()) {
+            apiKey = apiKeyFromProperties;
+        }
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new IllegalArgumentException("OpenAI API key must be set either as an environment variable 'OPENAI_API_KEY' or in 'application.properties' as 'openai.api.key'");
+        }
+        return apiKey;
     }
 }
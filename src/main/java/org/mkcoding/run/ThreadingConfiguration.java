@@ -0,0 +1,53 @@
+package org.mkcoding.run;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.concurrency.VirtualThreads;
+import org.mkcoding.concurrency.WorkloadScheduler;
+import org.mkcoding.concurrency.WorkloadScheduler.Lane;
+import org.mkcoding.concurrency.WorkloadScheduler.LaneLimits;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * Checks the request thread mode. With {@code spring.threads.virtual.enabled=true}, Spring Boot runs every Tomcat
+ * request, and with it the blocking model call, on its own virtual thread. That needs a Java 21+ runtime even
+ * though the build targets Java 17; on older JVMs Spring Boot would silently keep the platform thread pool, so
+ * startup fails instead.
+ * <p>
+ * Also schedules request work into the interactive and ingestion lanes of the {@link WorkloadScheduler}.
+ */
+@Configuration
+@Slf4j
+public class ThreadingConfiguration {
+
+    public ThreadingConfiguration(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled) {
+        if (virtualThreadsEnabled && !VirtualThreads.isSupported()) {
+            throw new IllegalStateException("spring.threads.virtual.enabled=true needs Java 21 or newer, running on Java "
+                    + Runtime.version().feature());
+        }
+        log.info("Handling requests on {} threads", virtualThreadsEnabled ? "virtual" : "platform");
+    }
+
+    @Bean
+    public WorkloadScheduler workloadScheduler(
+            @Value("${workload.slots:32}") int slots,
+            @Value("${workload.interactive.weight:4}") int interactiveWeight,
+            @Value("${workload.interactive.max.concurrent:32}") int interactiveMaxConcurrent,
+            @Value("${workload.interactive.queue.capacity:64}") int interactiveQueueCapacity,
+            @Value("${workload.ingestion.weight:1}") int ingestionWeight,
+            @Value("${workload.ingestion.max.concurrent:4}") int ingestionMaxConcurrent,
+            @Value("${workload.ingestion.queue.capacity:8}") int ingestionQueueCapacity,
+            @Value("${workload.queue.timeout.millis:10000}") long queueTimeoutMillis,
+            @Value("${workload.retry.after.seconds:2}") long retryAfterSeconds,
+            MeterRegistry meterRegistry
+    ) {
+        return new WorkloadScheduler(slots, Map.of(
+                Lane.INTERACTIVE, new LaneLimits(interactiveWeight, interactiveMaxConcurrent, interactiveQueueCapacity),
+                Lane.INGESTION, new LaneLimits(ingestionWeight, ingestionMaxConcurrent, ingestionQueueCapacity)
+        ), queueTimeoutMillis, retryAfterSeconds, meterRegistry);
+    }
+}
@@ -0,0 +1,84 @@
+package org.mkcoding.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.StreamingResponseHandler;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.llm.ChatStreamHandler;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streaming variant of {@link DocumentService#chatWithDocument}. Validation, the answer cache and retrieval
+ * run on the calling thread, so their errors surface as regular HTTP errors. Tokens are then forwarded to
+ * the handler from the streaming model's thread.
+ */
+@Service
+@Slf4j
+public class ChatStreamService {
+
+    private final DocumentService documentService;
+    private final StreamingChatLanguageModel streamingChatLanguageModel;
+
+    private final Timer timeToFirstToken;
+    private final Timer streamLatency;
+
+    public ChatStreamService(DocumentService documentService, StreamingChatLanguageModel streamingChatLanguageModel, MeterRegistry meterRegistry) {
+        this.documentService = documentService;
+        this.streamingChatLanguageModel = streamingChatLanguageModel;
+
+        this.timeToFirstToken = Timer.builder("chat.stream.first.token.latency")
+                .description("Time from the chat request to the first streamed token")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.streamLatency = Timer.builder("chat.stream.latency")
+                .description("Time from the chat request to the end of the stream")
+                .register(meterRegistry);
+    }
+
+    public void streamChatWithDocument(Long documentId, String question, ChatStreamHandler handler) {
+        long start = System.nanoTime();
+        PreparedChat chat = documentService.prepareChat(documentId, question);
+        handler.onContext(chat.contents());
+
+        if (chat.isAnsweredFromCache()) {
+            timeToFirstToken.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            handler.onToken(chat.cachedAnswer());
+            handler.onComplete(chat.cachedAnswer());
+            streamLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return;
+        }
+
+        long generationStart = System.nanoTime();
+        AtomicBoolean firstToken = new AtomicBoolean(true);
+        streamingChatLanguageModel.generate(chat.prompt(), new StreamingResponseHandler<AiMessage>() {
+            @Override
+            public void onNext(String token) {
+                if (firstToken.compareAndSet(true, false)) {
+                    timeToFirstToken.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                handler.onToken(token);
+            }
+
+            @Override
+            public void onComplete(Response<AiMessage> response) {
+                String answer = response.content().text();
+                documentService.cacheAnswer(chat, answer, System.nanoTime() - generationStart);
+                streamLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                log.info("Completed streamed chat for documentId: {}", documentId);
+                handler.onComplete(answer);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                log.error("Streamed chat failed for documentId: {}", documentId, error);
+                handler.onError(error);
+            }
+        });
+    }
+}
@@ -1,30 +1,48 @@
 package org.mkcoding.service;
 
-import dev.langchain4j.data.document.DocumentParser;
-import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.parser.TextDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.cache.SemanticAnswerCache;
+import org.mkcoding.concurrency.SingleFlight;
 import org.mkcoding.exception.exceptions.DocumentNotFoundException;
+import org.mkcoding.exception.exceptions.DocumentNotModifiableException;
 import org.mkcoding.exception.exceptions.FileProcessingException;
 import org.mkcoding.exception.exceptions.UnsupportedMediaTypeException;
+import org.mkcoding.ingestion.ContentHash;
+import org.mkcoding.ingestion.DocumentFormat;
+import org.mkcoding.ingestion.IngestionProgressListener;
+import org.mkcoding.ingestion.StreamingIngestionPipeline;
+import org.mkcoding.lexical.LexicalIndexRegistry;
 import org.mkcoding.llm.ContentRetrieverService;
 import org.mkcoding.llm.PromptBuilder;
+import org.mkcoding.llm.RetrievedSegment;
+import org.mkcoding.metrics.RagMetrics;
 import org.mkcoding.model.Document;
+import org.mkcoding.model.SegmentManifest;
 import org.mkcoding.repository.DocumentRepository;
+import org.mkcoding.store.EmbeddingStoreFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -34,41 +52,275 @@ public class DocumentService {
     private final ChatLanguageModel chatLanguageModel;
     private final ContentRetrieverService contentRetriever;
     private final PromptBuilder promptBuilder;
+    private final StreamingIngestionPipeline ingestionPipeline;
+    private final EmbeddingStoreFactory embeddingStoreFactory;
+    private final SemanticAnswerCache answerCache;
+    private final LexicalIndexRegistry lexicalIndexes;
+    private final SingleFlight<ChatKey, String> chatRequests;
+    private final SingleFlight<String, Long> uploads;
+    // SHA-256 of uploaded content -> the document ingested from it
+    private final Map<String, IngestedContent> documentsByContent = new ConcurrentHashMap<>();
 
-    public DocumentService(DocumentRepository documentRepository, EmbeddingModel embeddingModel, ChatLanguageModel chatLanguageModel, ContentRetrieverService contentRetriever, PromptBuilder promptBuilder) {
+    private final Timer embedLatency;
+    private final Timer retrieveLatency;
+    private final Timer promptLatency;
+    private final Timer generateLatency;
+    private final Counter duplicateUploads;
+    private final Counter duplicateUploadSavedSeconds;
+    private final Counter duplicateUploadSavedBytes;
+
+    public DocumentService(DocumentRepository documentRepository, EmbeddingModel embeddingModel, ChatLanguageModel chatLanguageModel, ContentRetrieverService contentRetriever, PromptBuilder promptBuilder, StreamingIngestionPipeline ingestionPipeline, EmbeddingStoreFactory embeddingStoreFactory, SemanticAnswerCache answerCache, LexicalIndexRegistry lexicalIndexes, MeterRegistry meterRegistry) {
         this.documentRepository = documentRepository;
         this.embeddingModel = embeddingModel;
         this.chatLanguageModel = chatLanguageModel;
         this.contentRetriever = contentRetriever;
         this.promptBuilder = promptBuilder;
+        this.ingestionPipeline = ingestionPipeline;
+        this.embeddingStoreFactory = embeddingStoreFactory;
+        this.answerCache = answerCache;
+        this.lexicalIndexes = lexicalIndexes;
+        this.chatRequests = new SingleFlight<>("chat", meterRegistry);
+
+        this.embedLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.CHAT, "embed");
+        this.retrieveLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.CHAT, "retrieve");
+        this.promptLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.CHAT, "prompt");
+        this.generateLatency = RagMetrics.stageTimer(meterRegistry, RagMetrics.CHAT, "generate");
+
+        this.uploads = new SingleFlight<>("upload", meterRegistry);
+        this.duplicateUploads = Counter.builder("upload.dedup.hits")
+                .description("Uploads answered with the document already ingested from identical content")
+                .register(meterRegistry);
+        this.duplicateUploadSavedSeconds = Counter.builder("upload.dedup.saved.time")
+                .description("Ingestion time of the original upload, skipped for each duplicate")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.duplicateUploadSavedBytes = Counter.builder("upload.dedup.saved.bytes")
+                .description("Vector memory a duplicate upload would have allocated")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     public Long uploadDocument(MultipartFile file) {
+        // Reject unsupported file types before reading anything
+        DocumentFormat format = validateContentType(file.getContentType());
+
         try {
-            // Select the appropriate parser based on the file type
-            DocumentParser documentParser = selectDocumentParser(file);
+            // Hashing is one cheap pass compared to parsing and embedding a file that was uploaded before
+            String contentHash;
+            try (InputStream inputStream = file.getInputStream()) {
+                contentHash = ContentHash.of(inputStream);
+            }
+            try (InputStream inputStream = file.getInputStream()) {
+                return ingestDocument(contentHash, format, inputStream, IngestionProgressListener.NONE);
+            }
+        } catch (IOException e) {
+            throw new FileProcessingException("Failed to read file content");
+        }
+    }
 
-            // Split the document into segments
-            DocumentSplitter splitter = DocumentSplitters.recursive(300, 0);
-            List<TextSegment> segments = splitter.split(documentParser.parse(file.getInputStream()));
+    /**
+     * Embeds and stores an already validated upload, unless content with the same SHA-256 hash was ingested
+     * before: then the existing document id is returned without reading the stream. Concurrent uploads of the
+     * same content are ingested once. Used directly by the asynchronous upload jobs.
+     */
+    public Long ingestDocument(String contentHash, DocumentFormat format, InputStream inputStream,
+                               IngestionProgressListener listener) throws IOException {
+        try {
+            return uploads.execute(contentHash, () -> findIngested(contentHash).orElseGet(() -> {
+                try {
+                    return ingestDocument(inputStream, format, listener, contentHash);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
 
-            // Embed the segments
-            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+    /**
+     * Embeds and stores plain text as a new document.
+     */
+    public Long ingestDocument(InputStream inputStream, IngestionProgressListener listener) throws IOException {
+        return ingestDocument(inputStream, DocumentFormat.TEXT, listener, null);
+    }
 
-            // Create a new embedding store for this document
-            EmbeddingStore<TextSegment> documentEmbeddingStore = new InMemoryEmbeddingStore<>();
-            documentEmbeddingStore.addAll(embeddings, segments);
+    private Long ingestDocument(InputStream inputStream, DocumentFormat format, IngestionProgressListener listener,
+                                String contentHash) throws IOException {
+        long start = System.nanoTime();
 
-            Document document = new Document(documentEmbeddingStore);
-            documentRepository.save(document);
+        // Create a new embedding store for this document
+        Long documentId = documentRepository.nextId();
+        EmbeddingStore<TextSegment> documentEmbeddingStore = embeddingStoreFactory.create(documentId);
 
-            return document.getId();
-        } catch (IOException e) {
-            throw new FileProcessingException("Failed to read file content");
+        // Stream the file through the splitter and embed it batch by batch, indexing terms in the same pass
+        LexicalIndexRegistry.Indexing lexicalIndexing = lexicalIndexes.startIndexing();
+        ManifestTracker tracker = ManifestTracker.creating(lexicalIndexing);
+        int segments;
+        try {
+            segments = ingestionPipeline.ingest(inputStream, format, documentEmbeddingStore, listener, tracker);
+        } catch (IOException | RuntimeException e) {
+            // Nothing refers to the document yet, so drop whatever was stored before the failure
+            try {
+                embeddingStoreFactory.release(documentId, documentEmbeddingStore);
+            } catch (RuntimeException releaseFailure) {
+                e.addSuppressed(releaseFailure);
+            }
+            throw e;
+        }
+
+        Document document = new Document(documentId, documentEmbeddingStore);
+        document.setManifest(tracker.toManifest());
+        documentRepository.save(document);
+        lexicalIndexes.register(documentId, lexicalIndexing);
+        answerCache.invalidate(documentId);
+        if (contentHash != null) {
+            documentsByContent.put(contentHash, new IngestedContent(documentId, segments, System.nanoTime() - start));
+        }
+
+        return document.getId();
+    }
+
+    /**
+     * Appends the upload to the end of a document. Only the new segments are embedded.
+     */
+    public DocumentUpdate appendToDocument(Long documentId, MultipartFile file) {
+        return updateDocument(documentId, file, false);
+    }
+
+    /**
+     * Replaces the content of a document with the upload. Segments whose text is already stored are kept as they
+     * are, only changed segments are embedded, and stored segments missing from the new version are removed.
+     */
+    public DocumentUpdate replaceDocument(Long documentId, MultipartFile file) {
+        return updateDocument(documentId, file, true);
+    }
+
+    private DocumentUpdate updateDocument(Long documentId, MultipartFile file, boolean replace) {
+        DocumentFormat format = validateContentType(file.getContentType());
+        Document document = findDocument(documentId);
+        EmbeddingStore<TextSegment> store = document.getDocumentEmbeddingStore();
+
+        DocumentUpdate update;
+        synchronized (document) {
+            SegmentManifest manifest = document.getManifest();
+            if (manifest == null) {
+                throw new DocumentNotModifiableException("Document with ID: " + documentId
+                        + " has no segment manifest, e.g. after a restart; delete it and upload it again");
+            }
+            // A replacement is indexed from scratch, an append on top of the current segments
+            LexicalIndexRegistry.Indexing lexicalIndexing = replace
+                    ? lexicalIndexes.startIndexing()
+                    : lexicalIndexes.startIndexing(documentId);
+            ManifestTracker tracker = replace
+                    ? ManifestTracker.replacing(manifest, lexicalIndexing)
+                    : ManifestTracker.appending(manifest, lexicalIndexing);
+            try (InputStream inputStream = file.getInputStream()) {
+                ingestionPipeline.ingest(inputStream, format, store, IngestionProgressListener.NONE, tracker);
+            } catch (IOException | RuntimeException e) {
+                // Leave the document as it was
+                removeFromStore(store, tracker.addedIds());
+                if (e instanceof IOException) {
+                    throw new FileProcessingException("Failed to read file content");
+                }
+                throw (RuntimeException) e;
+            }
+
+            List<String> removed = tracker.unclaimedIds();
+            removeFromStore(store, removed);
+            tracker.applyTo(manifest);
+            lexicalIndexes.register(documentId, lexicalIndexing);
+            update = new DocumentUpdate(documentId, tracker.kept(), tracker.added(), removed.size());
+        }
+        answerCache.invalidate(documentId);
+        forgetContent(documentId);
+
+        log.info("Updated document {}: {} segments kept, {} added, {} removed",
+                documentId, update.segmentsKept(), update.segmentsAdded(), update.segmentsRemoved());
+        return update;
+    }
+
+    /**
+     * Deletes a document. Its segments stop matching immediately; their space is reclaimed when the store is
+     * dropped or, for the shared index, by the next compaction.
+     */
+    public void deleteDocument(Long documentId) {
+        Document document = findDocument(documentId);
+        synchronized (document) {
+            documentRepository.deleteById(documentId);
+            lexicalIndexes.remove(documentId);
+            answerCache.invalidate(documentId);
+            forgetContent(documentId);
+            embeddingStoreFactory.release(documentId, document.getDocumentEmbeddingStore());
+        }
+        log.info("Deleted document {}", documentId);
+    }
+
+    private Document findDocument(Long documentId) {
+        if (documentId == null || documentId <= 0) {
+            throw new IllegalArgumentException("Document ID must be a positive non-null value.");
+        }
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new DocumentNotFoundException("Document not found with ID: " + documentId));
+        validateDocumentContent(document, documentId);
+        return document;
+    }
+
+    private void forgetContent(Long documentId) {
+        // The upload hash no longer describes the document's content
+        documentsByContent.values().removeIf(ingested -> ingested.documentId().equals(documentId));
+    }
+
+    private static void removeFromStore(EmbeddingStore<TextSegment> store, List<String> ids) {
+        if (!ids.isEmpty()) {
+            store.removeAll(ids);
+        }
+    }
+
+    private Optional<Long> findIngested(String contentHash) {
+        IngestedContent ingested = documentsByContent.get(contentHash);
+        if (ingested == null || documentRepository.findById(ingested.documentId()).isEmpty()) {
+            return Optional.empty();
         }
+        duplicateUploads.increment();
+        duplicateUploadSavedSeconds.increment(ingested.ingestionNanos() / 1_000_000_000.0);
+        duplicateUploadSavedBytes.increment((double) ingested.segments() * embeddingModel.dimension() * Float.BYTES);
+        log.info("Upload matches the content of document {}, skipping ingestion", ingested.documentId());
+        return Optional.of(ingested.documentId());
     }
 
     public String chatWithDocument(Long documentId, String question) {
+        validateInputs(documentId, question);
+
+        // Concurrent identical questions share one retrieval and one model call, but not across document changes
+        ChatKey key = new ChatKey(documentId, answerCache.version(documentId), ContentRetrieverService.normalizeQuery(question));
+        return chatRequests.execute(key, () -> generateAnswer(documentId, question));
+    }
+
+    private String generateAnswer(Long documentId, String question) {
+        PreparedChat chat = prepareChat(documentId, question);
+        if (chat.isAnsweredFromCache()) {
+            log.info("Answered chatWithDocument for documentId: {} from the answer cache", documentId);
+            return chat.cachedAnswer();
+        }
+
+        // Generate the answer
+        long generationStart = System.nanoTime();
+        String answer = chatLanguageModel.generate(chat.prompt());
+        long generationNanos = System.nanoTime() - generationStart;
+        generateLatency.record(generationNanos, TimeUnit.NANOSECONDS);
+        cacheAnswer(chat, answer, generationNanos);
+
+        log.info("Completed chatWithDocument for documentId: {}", documentId);
+
+        return answer;
+    }
+
+    /**
+     * Validates the request and does everything before generation: the answer cache lookup and, on a miss,
+     * retrieval and prompt building. Shared by the blocking and the streaming chat.
+     */
+    public PreparedChat prepareChat(Long documentId, String question) {
 
         // Validate inputs
         validateInputs(documentId, question);
@@ -84,20 +336,99 @@ public class DocumentService {
 
         EmbeddingStore<TextSegment> documentEmbeddingStore = document.getDocumentEmbeddingStore();
 
+        // Taken before retrieval, so an answer built from content that changes meanwhile is not cached
+        long documentVersion = answerCache.version(documentId);
+
+        // Answer from the cache when a near-identical question was already answered for this document
+        Embedding questionEmbedding = embedLatency.record(() -> contentRetriever.embedQuery(question));
+        Optional<String> cachedAnswer = answerCache.lookup(documentId, questionEmbedding);
+        if (cachedAnswer.isPresent()) {
+            return new PreparedChat(documentId, documentVersion, questionEmbedding, List.of(), null, cachedAnswer.get());
+        }
+
         // Retrieve relevant segments based on the question
-        List<Content> relevantSegments = contentRetriever.retrieveRelevantContents(question, documentEmbeddingStore);
+        List<Content> relevantSegments = retrieveLatency.record(
+                () -> contentRetriever.retrieveRelevantContents(question, documentEmbeddingStore, documentId));
 
         // Build the prompt
-        String prompt = promptBuilder.buildPrompt(relevantSegments, question);
+        List<Content> positionedSegments = relevantSegments.stream()
+                .map(content -> PromptBuilder.positioned(content.textSegment(), documentId, document.positionOf(content.textSegment())))
+                .toList();
+        String prompt = promptLatency.record(() -> promptBuilder.buildPrompt(positionedSegments, question));
 
-        // Generate the answer
-        String answer = chatLanguageModel.generate(prompt);
+        return new PreparedChat(documentId, documentVersion, questionEmbedding, relevantSegments, prompt, null);
+    }
 
-        log.info("Completed chatWithDocument for documentId: {}", documentId);
+    /**
+     * Searches the given documents, or every document when {@code documentIds} is {@code null},
+     * and returns the best segments across all of them.
+     */
+    public List<RetrievedSegment> searchDocuments(List<Long> documentIds, String question) {
+        if (question == null || question.isBlank()) {
+            throw new IllegalArgumentException("Question must not be null or blank.");
+        }
+        List<Document> documents = resolveDocuments(documentIds);
+
+        log.info("Searching {} documents, question: '{}'", documents.size(), question);
+
+        return contentRetriever.retrieveAcrossDocuments(question, documents);
+    }
+
+    /**
+     * Answers a question from the globally best segments of several documents with a single model call.
+     */
+    public String chatWithDocuments(List<Long> documentIds, String question) {
+        if (question == null || question.isBlank()) {
+            throw new IllegalArgumentException("Question must not be null or blank.");
+        }
+        Map<Long, Document> documents = new LinkedHashMap<>();
+        resolveDocuments(documentIds).forEach(document -> documents.put(document.getId(), document));
+
+        List<RetrievedSegment> relevantSegments = retrieveLatency.record(
+                () -> contentRetriever.retrieveAcrossDocuments(question, List.copyOf(documents.values())));
+
+        // Only neighbours within one document may be merged into a passage
+        List<Content> contents = relevantSegments.stream()
+                .map(retrieved -> PromptBuilder.positioned(retrieved.segment(), retrieved.documentId(),
+                        documents.get(retrieved.documentId()).positionOf(retrieved.segment())))
+                .toList();
+        String prompt = promptLatency.record(() -> promptBuilder.buildPrompt(contents, question));
+
+        String answer = generateLatency.record(() -> chatLanguageModel.generate(prompt));
+
+        log.info("Completed chatWithDocuments for {} segments", relevantSegments.size());
 
         return answer;
     }
 
+    private List<Document> resolveDocuments(List<Long> documentIds) {
+        if (documentIds == null) {
+            List<Document> documents = documentRepository.findAll();
+            if (documents.isEmpty()) {
+                throw new DocumentNotFoundException("No documents have been uploaded yet");
+            }
+            return documents;
+        }
+        List<Document> documents = new ArrayList<>(documentIds.size());
+        for (Long documentId : new LinkedHashSet<>(documentIds)) {
+            Document document = documentRepository.findById(documentId)
+                    .orElseThrow(() -> new DocumentNotFoundException("Document not found with ID: " + documentId));
+            validateDocumentContent(document, documentId);
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    public void cacheAnswer(PreparedChat chat, String answer, long generationNanos) {
+        answerCache.put(chat.documentId(), chat.documentVersion(), chat.questionEmbedding(), answer, generationNanos);
+    }
+
+    private record ChatKey(Long documentId, long documentVersion, String question) {
+    }
+
+    private record IngestedContent(Long documentId, int segments, long ingestionNanos) {
+    }
+
     private void validateInputs(Long documentId, String question) {
         if (documentId == null || documentId <= 0) {
             throw new IllegalArgumentException("Document ID must be a positive non-null value.");
@@ -113,15 +444,11 @@ public class DocumentService {
         }
     }
 
-    private DocumentParser selectDocumentParser(MultipartFile file) throws UnsupportedMediaTypeException {
-        String contentType = file.getContentType();
-
-        // LangChain4j supports parsing multiple document types:
-        // text, pdf, doc, xls, ppt.
-        if ("application/pdf".equals(contentType) || "text/plain".equals(contentType) || "application/msword".equals(contentType) || "application/vnd.openxmlformats-officedocument.wordprocessingml.document".equals(contentType)) {
-            return new TextDocumentParser();
-        } else {
-            throw new UnsupportedMediaTypeException("Unsupported file type: " + contentType);
-        }
+    /**
+     * @return the format the upload's text is extracted with
+     */
+    public DocumentFormat validateContentType(String contentType) throws UnsupportedMediaTypeException {
+        return DocumentFormat.fromContentType(contentType)
+                .orElseThrow(() -> new UnsupportedMediaTypeException("Unsupported file type: " + contentType));
     }
 }
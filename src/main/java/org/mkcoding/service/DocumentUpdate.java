@@ -0,0 +1,8 @@
+package org.mkcoding.service;
+
+/**
+ * Outcome of appending to or replacing a document: how many of its segments were kept as stored,
+ * embedded anew, and removed.
+ */
+public record DocumentUpdate(Long documentId, int segmentsKept, int segmentsAdded, int segmentsRemoved) {
+}
@@ -0,0 +1,124 @@
+package org.mkcoding.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+import org.mkcoding.ingestion.ContentHash;
+import org.mkcoding.ingestion.SegmentTracker;
+import org.mkcoding.ingestion.SegmentView;
+import org.mkcoding.lexical.LexicalIndexRegistry;
+import org.mkcoding.model.SegmentManifest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Diffs an ingestion against a document's manifest. A segment whose text is already stored keeps its stored entry
+ * and index instead of being embedded again; any other segment is numbered from the manifest's next index.
+ * Every segment of the new version, kept or not, is passed on to the lexical index.
+ * <p>
+ * Segments are hashed straight from the splitter's view; a kept segment is only copied if the lexical index needs it.
+ */
+final class ManifestTracker implements SegmentTracker {
+
+    // Stored entries by text hash, in document order, that the new version has not claimed yet
+    private final Map<String, ArrayDeque<SegmentManifest.Entry>> reusable = new HashMap<>();
+    private final List<SegmentManifest.Entry> entries;
+    // Positions in entries still waiting for the id the store assigns
+    private final List<Integer> pending = new ArrayList<>();
+    private final LexicalIndexRegistry.Indexing lexicalIndexing;
+    private int nextIndex;
+    private int storedCount;
+    private int kept;
+
+    private ManifestTracker(List<SegmentManifest.Entry> entries, int nextIndex, LexicalIndexRegistry.Indexing lexicalIndexing) {
+        this.entries = new ArrayList<>(entries);
+        this.nextIndex = nextIndex;
+        this.lexicalIndexing = lexicalIndexing;
+    }
+
+    static ManifestTracker creating(LexicalIndexRegistry.Indexing lexicalIndexing) {
+        return new ManifestTracker(List.of(), 0, lexicalIndexing);
+    }
+
+    static ManifestTracker appending(SegmentManifest manifest, LexicalIndexRegistry.Indexing lexicalIndexing) {
+        ManifestTracker tracker = new ManifestTracker(manifest.entries(), manifest.nextIndex(), lexicalIndexing);
+        tracker.kept = manifest.entries().size();
+        return tracker;
+    }
+
+    static ManifestTracker replacing(SegmentManifest manifest, LexicalIndexRegistry.Indexing lexicalIndexing) {
+        ManifestTracker tracker = new ManifestTracker(List.of(), manifest.nextIndex(), lexicalIndexing);
+        for (SegmentManifest.Entry entry : manifest.entries()) {
+            tracker.reusable.computeIfAbsent(entry.textHash(), hash -> new ArrayDeque<>()).add(entry);
+        }
+        return tracker;
+    }
+
+    @Override
+    public TextSegment accept(SegmentView segment) {
+        String textHash = ContentHash.of(segment);
+        ArrayDeque<SegmentManifest.Entry> stored = reusable.get(textHash);
+        if (stored != null && !stored.isEmpty()) {
+            SegmentManifest.Entry entry = stored.poll();
+            entries.add(entry);
+            kept++;
+            if (lexicalIndexing.isEnabled()) {
+                lexicalIndexing.accept(segment.toTextSegment(entry.index()));
+            }
+            return null;
+        }
+        int index = nextIndex++;
+        TextSegment numbered = segment.toTextSegment(index);
+        pending.add(entries.size());
+        entries.add(new SegmentManifest.Entry(null, textHash, index));
+        lexicalIndexing.accept(numbered);
+        return numbered;
+    }
+
+    @Override
+    public void stored(List<String> ids, List<TextSegment> segments) {
+        for (String id : ids) {
+            int position = pending.get(storedCount++);
+            SegmentManifest.Entry entry = entries.get(position);
+            entries.set(position, new SegmentManifest.Entry(id, entry.textHash(), entry.index()));
+        }
+    }
+
+    int kept() {
+        return kept;
+    }
+
+    int added() {
+        return pending.size();
+    }
+
+    /**
+     * Store ids of the old entries the new version did not claim, to be removed once it is stored.
+     */
+    List<String> unclaimedIds() {
+        List<String> ids = new ArrayList<>();
+        reusable.values().forEach(stored -> stored.forEach(entry -> ids.add(entry.storeId())));
+        return ids;
+    }
+
+    /**
+     * Store ids of the segments added so far, to be removed if the ingestion fails halfway.
+     */
+    List<String> addedIds() {
+        List<String> ids = new ArrayList<>(storedCount);
+        for (int i = 0; i < storedCount; i++) {
+            ids.add(entries.get(pending.get(i)).storeId());
+        }
+        return ids;
+    }
+
+    SegmentManifest toManifest() {
+        return new SegmentManifest(entries, nextIndex);
+    }
+
+    void applyTo(SegmentManifest manifest) {
+        manifest.update(entries, nextIndex);
+    }
+}
@@ -0,0 +1,18 @@
+package org.mkcoding.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.rag.content.Content;
+
+import java.util.List;
+
+/**
+ * A validated chat request ready for generation: either the retrieved context and the prompt built from it,
+ * or an answer already found in the semantic answer cache. {@code documentVersion} is the answer cache version
+ * of the document the context was read from.
+ */
+public record PreparedChat(Long documentId, long documentVersion, Embedding questionEmbedding, List<Content> contents, String prompt, String cachedAnswer) {
+
+    public boolean isAnsweredFromCache() {
+        return cachedAnswer != null;
+    }
+}
@@ -0,0 +1,121 @@
+package org.mkcoding.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.model.Document;
+import org.mkcoding.repository.DocumentRepository;
+import org.mkcoding.store.CompactableEmbeddingStore;
+import org.mkcoding.store.EmbeddingStoreFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reclaims the space of removed segments in the background. Every {@code vector.store.compaction.interval.seconds}
+ * each store whose tombstones make up at least {@code vector.store.compaction.min.deleted.ratio} of its entries is
+ * compacted, so memory follows the live segments instead of growing with every update.
+ */
+@Service
+@Slf4j
+public class StoreCompactionService {
+
+    private final DocumentRepository documentRepository;
+    private final EmbeddingStoreFactory embeddingStoreFactory;
+    private final double minDeletedRatio;
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter compactions;
+    private final Counter reclaimedEntries;
+
+    public StoreCompactionService(
+            DocumentRepository documentRepository,
+            EmbeddingStoreFactory embeddingStoreFactory,
+            @Value("${vector.store.compaction.interval.seconds:30}") long intervalSeconds,
+            @Value("${vector.store.compaction.min.deleted.ratio:0.2}") double minDeletedRatio,
+            MeterRegistry meterRegistry
+    ) {
+        this.documentRepository = documentRepository;
+        this.embeddingStoreFactory = embeddingStoreFactory;
+        this.minDeletedRatio = minDeletedRatio;
+
+        this.compactions = Counter.builder("vector.store.compactions")
+                .description("Embedding stores rewritten without their removed entries")
+                .register(meterRegistry);
+        this.reclaimedEntries = Counter.builder("vector.store.compaction.reclaimed")
+                .description("Removed entries whose space was reclaimed by compaction")
+                .register(meterRegistry);
+        Gauge.builder("vector.store.tombstones", this, service -> service.stores().stream()
+                        .mapToInt(CompactableEmbeddingStore::tombstoneCount)
+                        .sum())
+                .description("Removed entries still occupying space until the next compaction")
+                .register(meterRegistry);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 0 disables background compaction
+        if (intervalSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::compactSafely, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Compacts every store over the tombstone threshold.
+     *
+     * @return the number of stores compacted
+     */
+    public int compactNow() {
+        int compacted = 0;
+        for (CompactableEmbeddingStore store : stores()) {
+            int tombstones = store.tombstoneCount();
+            if (tombstones == 0 || tombstones < minDeletedRatio * store.slotCount()) {
+                continue;
+            }
+            store.compact();
+            compactions.increment();
+            reclaimedEntries.increment(tombstones);
+            compacted++;
+        }
+        return compacted;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void compactSafely() {
+        try {
+            int compacted = compactNow();
+            if (compacted > 0) {
+                log.info("Compacted {} embedding stores", compacted);
+            }
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next run retries
+            log.error("Embedding store compaction failed", e);
+        }
+    }
+
+    private List<CompactableEmbeddingStore> stores() {
+        List<CompactableEmbeddingStore> stores = new ArrayList<>();
+        if (embeddingStoreFactory.getSharedIndex() != null) {
+            stores.add(embeddingStoreFactory.getSharedIndex());
+        }
+        for (Document document : documentRepository.findAll()) {
+            if (document.getDocumentEmbeddingStore() instanceof CompactableEmbeddingStore store) {
+                stores.add(store);
+            }
+        }
+        return stores;
+    }
+}
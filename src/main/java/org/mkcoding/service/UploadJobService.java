@@ -0,0 +1,188 @@
+package org.mkcoding.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.mkcoding.concurrency.WorkloadScheduler;
+import org.mkcoding.concurrency.WorkloadScheduler.Lane;
+import org.mkcoding.exception.exceptions.FileProcessingException;
+import org.mkcoding.exception.exceptions.UploadJobNotFoundException;
+import org.mkcoding.exception.exceptions.UploadQueueFullException;
+import org.mkcoding.ingestion.ContentHash;
+import org.mkcoding.ingestion.CountingInputStream;
+import org.mkcoding.ingestion.DocumentFormat;
+import org.mkcoding.ingestion.IngestionProgressListener;
+import org.mkcoding.ingestion.UploadJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs uploads in the background so the servlet thread can return a job id immediately.
+ * The work queue is bounded: when it is full, new jobs are rejected instead of piling up.
+ */
+@Service
+@Slf4j
+public class UploadJobService {
+
+    private final DocumentService documentService;
+    private final WorkloadScheduler workloadScheduler;
+    private final ThreadPoolExecutor workers;
+    private final long retryAfterSeconds;
+    private final long retentionNanos;
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    private final Counter rejectedJobs;
+    private final Timer completedJobLatency;
+    private final Timer failedJobLatency;
+
+    public UploadJobService(
+            DocumentService documentService,
+            WorkloadScheduler workloadScheduler,
+            @Value("${upload.async.workers:2}") int workerCount,
+            @Value("${upload.async.queue.capacity:16}") int queueCapacity,
+            @Value("${upload.async.retry.after.seconds:5}") long retryAfterSeconds,
+            @Value("${upload.async.job.retention.minutes:60}") long retentionMinutes,
+            MeterRegistry meterRegistry
+    ) {
+        this.documentService = documentService;
+        this.workloadScheduler = workloadScheduler;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.retentionNanos = TimeUnit.MINUTES.toNanos(retentionMinutes);
+
+        AtomicInteger threadCounter = new AtomicInteger(1);
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "upload-worker-" + threadCounter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        Gauge.builder("upload.jobs.queue.depth", workers, executor -> executor.getQueue().size())
+                .description("Upload jobs waiting for a worker")
+                .register(meterRegistry);
+        this.rejectedJobs = Counter.builder("upload.jobs.rejected")
+                .description("Upload jobs rejected because the queue was full")
+                .register(meterRegistry);
+        this.completedJobLatency = Timer.builder("upload.jobs.latency")
+                .description("Time from submission until the job finished")
+                .tag("status", "completed")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        this.failedJobLatency = Timer.builder("upload.jobs.latency")
+                .description("Time from submission until the job finished")
+                .tag("status", "failed")
+                .register(meterRegistry);
+    }
+
+    public UploadJob submit(MultipartFile file) {
+        // Reject unsupported file types before queueing anything
+        DocumentFormat format = documentService.validateContentType(file.getContentType());
+
+        purgeExpiredJobs();
+
+        // The multipart temp file is gone once the request ends, so keep our own copy
+        Path upload;
+        try {
+            upload = Files.createTempFile("upload-", ".tmp");
+            file.transferTo(upload);
+        } catch (IOException e) {
+            throw new FileProcessingException("Failed to buffer uploaded file");
+        }
+
+        UploadJob job = new UploadJob(file.getSize());
+        jobs.put(job.getId(), job);
+        try {
+            workers.execute(() -> run(job, upload, format));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            deleteQuietly(upload);
+            rejectedJobs.increment();
+            throw new UploadQueueFullException("Upload queue is full, retry later", retryAfterSeconds);
+        }
+
+        log.info("Queued upload job {} ({} bytes)", job.getId(), file.getSize());
+        return job;
+    }
+
+    public UploadJob getJob(String jobId) {
+        UploadJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new UploadJobNotFoundException("Upload job not found with ID: " + jobId);
+        }
+        return job;
+    }
+
+    private void run(UploadJob job, Path upload, DocumentFormat format) {
+        // Already admitted by the bounded job queue, so wait for an ingestion slot however long it takes
+        try (WorkloadScheduler.Permit permit = workloadScheduler.await(Lane.INGESTION)) {
+            runAdmitted(job, upload, format);
+        }
+    }
+
+    private void runAdmitted(UploadJob job, Path upload, DocumentFormat format) {
+        job.start();
+        try {
+            Long documentId = ingest(job, upload, format);
+            job.complete(documentId);
+            completedJobLatency.record(Duration.ofNanos(job.getFinishedAtNanos() - job.getSubmittedAtNanos()));
+            log.info("Upload job {} completed as document {}", job.getId(), documentId);
+        } catch (Exception e) {
+            job.fail(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            failedJobLatency.record(Duration.ofNanos(job.getFinishedAtNanos() - job.getSubmittedAtNanos()));
+            log.error("Upload job {} failed: {}", job.getId(), e.getMessage(), e);
+        } finally {
+            deleteQuietly(upload);
+        }
+    }
+
+    private Long ingest(UploadJob job, Path upload, DocumentFormat format) throws IOException {
+        String contentHash;
+        try (InputStream inputStream = Files.newInputStream(upload)) {
+            contentHash = ContentHash.of(inputStream);
+        }
+        try (CountingInputStream inputStream = new CountingInputStream(Files.newInputStream(upload))) {
+            // PDF and Word files are read whole before their first segment, so only text reports bytes read
+            IngestionProgressListener listener = format == DocumentFormat.TEXT
+                    ? segmentsStored -> job.progress(segmentsStored, inputStream.getCount())
+                    : job::progress;
+            return documentService.ingestDocument(contentHash, format, inputStream, listener);
+        }
+    }
+
+    private void purgeExpiredJobs() {
+        long now = System.nanoTime();
+        jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedAtNanos() > retentionNanos);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary upload {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
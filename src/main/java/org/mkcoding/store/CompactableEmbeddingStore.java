@@ -0,0 +1,24 @@
+package org.mkcoding.store;
+
+/**
+ * Embedding store whose removals only tombstone entries: a removed entry stops matching immediately but keeps
+ * its space until {@link #compact()} rewrites the store without it. Compaction runs in the background,
+ * driven by {@link org.mkcoding.service.StoreCompactionService}.
+ */
+public interface CompactableEmbeddingStore {
+
+    /**
+     * Entries removed but still occupying space.
+     */
+    int tombstoneCount();
+
+    /**
+     * Entries occupying space, live or removed.
+     */
+    int slotCount();
+
+    /**
+     * Rewrites the store without its tombstoned entries.
+     */
+    void compact();
+}
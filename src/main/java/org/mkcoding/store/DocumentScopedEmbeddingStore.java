@@ -0,0 +1,83 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * View of the shared {@link HnswEmbeddingStore} restricted to one document. Added segments are tagged
+ * with the document id, and searches and removals only touch segments carrying the same tag.
+ */
+@Getter
+public class DocumentScopedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final HnswEmbeddingStore index;
+    private final Long documentId;
+
+    public DocumentScopedEmbeddingStore(HnswEmbeddingStore index, Long documentId) {
+        this.index = index;
+        this.documentId = documentId;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        index.addToDocument(id, embedding, documentId);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return index.add(embedding, tag(segment));
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            ids.add(add(embedding));
+        }
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        List<TextSegment> tagged = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            tagged.add(tag(segment));
+        }
+        return index.addAll(embeddings, tagged);
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        index.removeAll(ids, documentId);
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return index.search(request, documentId);
+    }
+
+    private TextSegment tag(TextSegment segment) {
+        return TextSegment.from(segment.text(), segment.metadata().copy().put(HnswEmbeddingStore.DOCUMENT_ID_KEY, documentId));
+    }
+}
@@ -0,0 +1,103 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Creates the embedding store backing a new document, according to {@code vector.store.type}:
+ * <ul>
+ *     <li>{@code memory} - an isolated brute-force {@link InMemoryEmbeddingStore} per document</li>
+ *     <li>{@code hnsw} - a document-scoped view of one HNSW index shared by all documents</li>
+ *     <li>{@code offheap} - a per-document store with packed float32 vectors in direct buffers</li>
+ *     <li>{@code mapped} - a per-document set of memory-mapped files under {@code document.repository.dir},
+ *     used together with {@code document.repository.type=mapped}</li>
+ *     <li>{@code quantized} - a per-document store of int8 or product-quantized codes, re-ranked with exact
+ *     vectors kept in a temporary file</li>
+ *     <li>{@code tiered} - a per-document off-heap store that can be evicted to disk under
+ *     {@code document.repository.dir}, used together with {@code document.repository.type=tiered}</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class EmbeddingStoreFactory {
+
+    private final String storeType;
+    private final int offHeapVectorsPerChunk;
+    private final Path mappedStoreRoot;
+    private final int rerankFactor;
+    private final int pqSubspaces;
+    private final int pqTrainingSize;
+
+    @Getter
+    private final HnswEmbeddingStore sharedIndex;
+
+    public EmbeddingStoreFactory(
+            @Value("${vector.store.type:memory}") String storeType,
+            @Value("${vector.store.hnsw.m:16}") int m,
+            @Value("${vector.store.hnsw.ef.construction:200}") int efConstruction,
+            @Value("${vector.store.hnsw.ef.search:64}") int efSearch,
+            @Value("${vector.store.hnsw.exact.search.threshold:1000}") int exactSearchThreshold,
+            @Value("${vector.store.offheap.chunk.vectors:4096}") int offHeapVectorsPerChunk,
+            @Value("${document.repository.dir:data/documents}") String mappedStoreRoot,
+            @Value("${vector.store.quantized.rerank.factor:4}") int rerankFactor,
+            @Value("${vector.store.quantized.pq.subspaces:0}") int pqSubspaces,
+            @Value("${vector.store.quantized.pq.training.size:1024}") int pqTrainingSize
+    ) {
+        this.storeType = storeType;
+        this.offHeapVectorsPerChunk = offHeapVectorsPerChunk;
+        this.mappedStoreRoot = Paths.get(mappedStoreRoot);
+        this.rerankFactor = rerankFactor;
+        this.pqSubspaces = pqSubspaces;
+        this.pqTrainingSize = pqTrainingSize;
+        this.sharedIndex = "hnsw".equals(storeType)
+                ? new HnswEmbeddingStore(m, efConstruction, efSearch, exactSearchThreshold)
+                : null;
+        if (!List.of("memory", "hnsw", "offheap", "mapped", "quantized", "tiered").contains(storeType)) {
+            throw new IllegalArgumentException("Unknown vector.store.type: " + storeType);
+        }
+        log.info("Using '{}' embedding stores with the {} vector kernel", storeType, VectorMath.kernel().name());
+    }
+
+    public EmbeddingStore<TextSegment> create(Long documentId) {
+        return switch (storeType) {
+            case "hnsw" -> new DocumentScopedEmbeddingStore(sharedIndex, documentId);
+            case "offheap" -> new OffHeapEmbeddingStore(offHeapVectorsPerChunk);
+            case "mapped" -> new MappedEmbeddingStore(mappedStoreRoot.resolve(String.valueOf(documentId)));
+            case "quantized" -> new QuantizedEmbeddingStore(rerankFactor, pqSubspaces, pqTrainingSize);
+            case "tiered" -> new TieredEmbeddingStore(
+                    mappedStoreRoot.resolve(TieredEmbeddingStore.COLD_DIRECTORY).resolve(String.valueOf(documentId)), offHeapVectorsPerChunk);
+            default -> new InMemoryEmbeddingStore<>();
+        };
+    }
+
+    /**
+     * Frees the store of a deleted document. Entries in the shared index are tombstoned and reclaimed by the
+     * next compaction; per-document stores are dropped whole.
+     */
+    public void release(Long documentId, EmbeddingStore<TextSegment> store) {
+        try {
+            if (store instanceof DocumentScopedEmbeddingStore scoped) {
+                scoped.getIndex().removeDocument(documentId);
+            } else if (store instanceof MappedEmbeddingStore mapped) {
+                mapped.delete();
+            } else if (store instanceof TieredEmbeddingStore tiered) {
+                tiered.delete();
+            } else if (store instanceof QuantizedEmbeddingStore quantized) {
+                quantized.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete the files of document " + documentId, e);
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Hierarchical Navigable Small World graph over unit-length vectors, shared by all documents.
+ * <p>
+ * Segments carry their owning document in the {@value #DOCUMENT_ID_KEY} metadata entry. Searches scoped to
+ * a document scan that document's vectors exactly while it is small and switch to a filtered graph search
+ * once it grows past {@code exactSearchThreshold}, so query cost stays sub-linear in the corpus size.
+ * <p>
+ * A filtered walk visits at most {@code 4 * ef * 2m / selectivity} nodes, a few times what an unfiltered walk
+ * costs, scaled by how many nodes it has to cross for every accepted one. When the documents hold so few of the nodes that scanning them is cheaper than
+ * that, or the walk runs out of visits before it finds enough matches, their nodes are scanned exactly instead.
+ * <p>
+ * Inserts take the write lock, searches share the read lock.
+ * <p>
+ * Removed nodes are tombstoned: they stay in the graph as stepping stones but never enter results.
+ * {@link #compact()} rebuilds the graph from the live nodes without holding the write lock for the rebuild.
+ */
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, CompactableEmbeddingStore {
+
+    public static final String DOCUMENT_ID_KEY = "document_id";
+
+    private static final long FILTERED_VISIT_FACTOR = 4;
+
+    private final int m;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final int exactSearchThreshold;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Borrowed per search rather than kept per thread: with virtual threads every request is a new thread
+    private final Queue<VisitedSet> visitedSets = new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private List<Node> nodes = new ArrayList<>();
+    private Map<Long, IntList> nodesByDocument = new HashMap<>();
+    private Map<String, Integer> nodesById = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedCount;
+
+    public HnswEmbeddingStore(int m, int efConstruction, int efSearch, int exactSearchThreshold) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW requires m >= 2 and positive ef values.");
+        }
+        this.m = m;
+        this.maxConnectionsLevel0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.exactSearchThreshold = exactSearchThreshold;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding, null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        add(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding, segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            ids.add(add(embedding));
+        }
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("The list of embeddings and segments must have the same size");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(add(embeddings.get(i), segments.get(i)));
+        }
+        return ids;
+    }
+
+    /**
+     * Adds a node without a segment, owned by a document.
+     */
+    public void addToDocument(String id, Embedding embedding, Long documentId) {
+        insert(id, VectorMath.normalize(embedding.vector()), null, documentId);
+    }
+
+    /**
+     * Live nodes, not counting tombstones.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size() - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int slotCount() {
+        lock.readLock().lock();
+        try {
+            return nodes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        removeAll(ids, null);
+    }
+
+    /**
+     * Tombstones the nodes with the given ids, restricted to those of one document unless {@code documentId}
+     * is {@code null}.
+     */
+    public void removeAll(Collection<String> ids, Long documentId) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer index = nodesById.get(id);
+                if (index != null && (documentId == null || documentId.equals(nodes.get(index).documentId))) {
+                    nodesById.remove(id);
+                    markDeleted(index);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tombstones every node of the document.
+     */
+    public void removeDocument(Long documentId) {
+        lock.writeLock().lock();
+        try {
+            IntList documentNodes = nodesByDocument.remove(documentId);
+            if (documentNodes != null) {
+                for (int i = 0; i < documentNodes.size; i++) {
+                    markDeleted(documentNodes.values[i]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the graph from a snapshot of the live nodes while searches and inserts carry on, then replays
+     * the inserts and removals that happened meanwhile and swaps the new graph in under the write lock.
+     */
+    @Override
+    public synchronized void compact() {
+        List<Node> snapshot;
+        lock.readLock().lock();
+        try {
+            if (deletedCount == 0) {
+                return;
+            }
+            snapshot = new ArrayList<>(nodes);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        HnswEmbeddingStore rebuilt = new HnswEmbeddingStore(m, efConstruction, efSearch, exactSearchThreshold);
+        int[] rebuiltIndexes = new int[snapshot.size()];
+        for (int index = 0; index < snapshot.size(); index++) {
+            Node node = snapshot.get(index);
+            rebuiltIndexes[index] = node.deleted ? -1 : rebuilt.nodes.size();
+            if (!node.deleted) {
+                rebuilt.insert(node.id, node.vector, node.segment, node.documentId);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int index = 0; index < snapshot.size(); index++) {
+                if (rebuiltIndexes[index] >= 0 && snapshot.get(index).deleted) {
+                    rebuilt.markDeleted(rebuiltIndexes[index]);
+                }
+            }
+            for (int index = snapshot.size(); index < nodes.size(); index++) {
+                Node node = nodes.get(index);
+                if (!node.deleted) {
+                    rebuilt.insert(node.id, node.vector, node.segment, node.documentId);
+                }
+            }
+            rebuilt.nodesByDocument.keySet().retainAll(nodesByDocument.keySet());
+            nodes = rebuilt.nodes;
+            nodesByDocument = rebuilt.nodesByDocument;
+            nodesById = rebuilt.nodesById;
+            entryPoint = rebuilt.entryPoint;
+            maxLevel = rebuilt.maxLevel;
+            deletedCount = rebuilt.deletedCount;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return search(request, (Set<Long>) null);
+    }
+
+    /**
+     * Searches the index, optionally restricted to the segments of a single document.
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, Long documentId) {
+        return search(request, documentId == null ? null : Set.of(documentId));
+    }
+
+    /**
+     * Searches the index once, restricted to the segments of the given documents, and returns the global
+     * top K across them. A {@code null} set searches every document.
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, Set<Long> documentIds) {
+        float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        Filter filter = request.filter();
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            IntPredicate accepted = index -> {
+                Node node = nodes.get(index);
+                return !node.deleted
+                        && (documentIds == null || (node.documentId != null && documentIds.contains(node.documentId)))
+                        && (filter == null || (node.segment != null && filter.test(node.segment.metadata())));
+            };
+
+            int ef = Math.max(efSearch, maxResults);
+            NeighborQueue results;
+            if (documentIds != null) {
+                List<IntList> documentNodes = new ArrayList<>(documentIds.size());
+                int candidates = 0;
+                for (Long documentId : documentIds) {
+                    IntList nodesOfDocument = nodesByDocument.get(documentId);
+                    if (nodesOfDocument != null) {
+                        documentNodes.add(nodesOfDocument);
+                        candidates += nodesOfDocument.size;
+                    }
+                }
+                if (documentNodes.isEmpty()) {
+                    return new EmbeddingSearchResult<>(List.of());
+                }
+                long visitBudget = visitBudget(ef, candidates);
+                if (candidates <= exactSearchThreshold || candidates <= visitBudget) {
+                    results = exactSearch(query, documentNodes, maxResults, accepted);
+                } else {
+                    results = graphSearch(query, ef, visitBudget, accepted);
+                    if (results.size() < maxResults) {
+                        results = exactSearch(query, documentNodes, maxResults, accepted);
+                    }
+                }
+            } else {
+                results = graphSearch(query, ef, filter == null ? Long.MAX_VALUE : visitBudget(ef, nodes.size()), accepted);
+                if (filter != null && results.size() < maxResults) {
+                    results = exactSearch(query, maxResults, accepted);
+                }
+            }
+            return new EmbeddingSearchResult<>(toMatches(results, maxResults, request.minScore()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Nodes a filtered walk may visit when {@code candidates} of them pass the filter.
+     */
+    private long visitBudget(int ef, int candidates) {
+        return FILTERED_VISIT_FACTOR * ef * maxConnectionsLevel0 * nodes.size() / Math.max(candidates, 1);
+    }
+
+    private void add(String id, Embedding embedding, TextSegment segment) {
+        Long documentId = segment == null ? null : segment.metadata().getLong(DOCUMENT_ID_KEY);
+        insert(id, VectorMath.normalize(embedding.vector()), segment, documentId);
+    }
+
+    private void insert(String id, float[] vector, TextSegment segment, Long documentId) {
+        lock.writeLock().lock();
+        try {
+            int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+            int index = nodes.size();
+            nodes.add(new Node(id, vector, segment, documentId, level, m, maxConnectionsLevel0));
+            nodesById.put(id, index);
+            if (documentId != null) {
+                nodesByDocument.computeIfAbsent(documentId, key -> new IntList()).add(index);
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = index;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(vector, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                NeighborQueue candidates = searchLayer(vector, current, efConstruction, l, Long.MAX_VALUE, i -> true);
+                int[] nearest = drainNearestFirst(candidates);
+                int maxConnections = l == 0 ? maxConnectionsLevel0 : m;
+                for (int i = 0; i < Math.min(m, nearest.length); i++) {
+                    connect(index, nearest[i], l, maxConnections);
+                    connect(nearest[i], index, l, maxConnections);
+                }
+                current = nearest[0];
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = index;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void markDeleted(int index) {
+        Node node = nodes.get(index);
+        if (!node.deleted) {
+            node.deleted = true;
+            deletedCount++;
+        }
+    }
+
+    private NeighborQueue exactSearch(float[] query, List<IntList> candidateLists, int maxResults, IntPredicate accepted) {
+        NeighborQueue results = new NeighborQueue(maxResults, true);
+        for (IntList candidates : candidateLists) {
+            for (int i = 0; i < candidates.size; i++) {
+                int index = candidates.values[i];
+                if (accepted.test(index)) {
+                    results.insertWithOverflow(index, VectorMath.distance(VectorMath.dot(query, nodes.get(index).vector)), maxResults);
+                }
+            }
+        }
+        return results;
+    }
+
+    private NeighborQueue exactSearch(float[] query, int maxResults, IntPredicate accepted) {
+        NeighborQueue results = new NeighborQueue(maxResults, true);
+        for (int index = 0; index < nodes.size(); index++) {
+            if (accepted.test(index)) {
+                results.insertWithOverflow(index, distance(query, index), maxResults);
+            }
+        }
+        return results;
+    }
+
+    private NeighborQueue graphSearch(float[] query, int ef, long visitBudget, IntPredicate accepted) {
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(query, current, l);
+        }
+        return searchLayer(query, current, ef, 0, visitBudget, accepted);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.neighborCounts[level]; i++) {
+                int neighbor = node.neighbors[level][i];
+                float neighborDistance = distance(query, neighbor);
+                if (neighborDistance < currentDistance) {
+                    current = neighbor;
+                    currentDistance = neighborDistance;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer. Rejected nodes are still expanded so the walk can cross them,
+     * but only accepted nodes enter the result set. The walk stops after {@code visitBudget} nodes, since
+     * with a selective filter the result set may never fill up and end it.
+     */
+    private NeighborQueue searchLayer(float[] query, int start, int ef, int level, long visitBudget, IntPredicate accepted) {
+        VisitedSet visited = visitedSets.poll();
+        if (visited == null) {
+            visited = new VisitedSet();
+        }
+        try {
+            return searchLayer(query, start, ef, level, visitBudget, accepted, visited);
+        } finally {
+            // Dropped when the pool is full, e.g. after a burst of concurrent searches
+            visitedSets.offer(visited);
+        }
+    }
+
+    private NeighborQueue searchLayer(float[] query, int start, int ef, int level, long visitBudget, IntPredicate accepted,
+                                      VisitedSet visited) {
+        visited.reset(nodes.size());
+
+        NeighborQueue candidates = new NeighborQueue(ef, false);
+        NeighborQueue results = new NeighborQueue(ef, true);
+
+        float startDistance = distance(query, start);
+        visited.visit(start);
+        candidates.add(start, startDistance);
+        if (accepted.test(start)) {
+            results.add(start, startDistance);
+        }
+
+        long visits = 1;
+        while (!candidates.isEmpty() && visits < visitBudget) {
+            float candidateDistance = candidates.topDistance();
+            if (results.size() >= ef && candidateDistance > results.topDistance()) {
+                break;
+            }
+            Node node = nodes.get(candidates.poll());
+            if (level >= node.neighbors.length) {
+                continue;
+            }
+            for (int i = 0; i < node.neighborCounts[level]; i++) {
+                int neighbor = node.neighbors[level][i];
+                if (!visited.visit(neighbor)) {
+                    continue;
+                }
+                visits++;
+                float neighborDistance = distance(query, neighbor);
+                if (results.size() < ef || neighborDistance < results.topDistance()) {
+                    candidates.add(neighbor, neighborDistance);
+                    if (accepted.test(neighbor)) {
+                        results.insertWithOverflow(neighbor, neighborDistance, ef);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private void connect(int from, int to, int level, int maxConnections) {
+        Node node = nodes.get(from);
+        int count = node.neighborCounts[level];
+        int[] neighbors = node.neighbors[level];
+        if (count < neighbors.length) {
+            neighbors[count] = to;
+            node.neighborCounts[level]++;
+            return;
+        }
+        // Full: keep the closest maxConnections of the existing links plus the new one
+        NeighborQueue closest = new NeighborQueue(maxConnections + 1, true);
+        for (int i = 0; i < count; i++) {
+            closest.insertWithOverflow(neighbors[i], distance(node.vector, neighbors[i]), maxConnections);
+        }
+        closest.insertWithOverflow(to, distance(node.vector, to), maxConnections);
+        int kept = closest.size();
+        for (int i = kept - 1; i >= 0; i--) {
+            neighbors[i] = closest.poll();
+        }
+        node.neighborCounts[level] = kept;
+    }
+
+    private float distance(float[] query, int index) {
+        return VectorMath.distance(VectorMath.dot(query, nodes.get(index).vector));
+    }
+
+    private static int[] drainNearestFirst(NeighborQueue maxHeap) {
+        int[] nearest = new int[maxHeap.size()];
+        for (int i = nearest.length - 1; i >= 0; i--) {
+            nearest[i] = maxHeap.poll();
+        }
+        return nearest;
+    }
+
+    private List<EmbeddingMatch<TextSegment>> toMatches(NeighborQueue results, int maxResults, double minScore) {
+        while (results.size() > maxResults) {
+            results.poll();
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(results.size());
+        while (!results.isEmpty()) {
+            float distance = results.topDistance();
+            Node node = nodes.get(results.poll());
+            double score = RelevanceScore.fromCosineSimilarity(1 - distance);
+            if (score >= minScore) {
+                matches.add(new EmbeddingMatch<>(score, node.id, new Embedding(node.vector.clone()), node.segment));
+            }
+        }
+        // Polled farthest first
+        Collections.reverse(matches);
+        return matches;
+    }
+
+    private static final class Node {
+        final String id;
+        final float[] vector;
+        final TextSegment segment;
+        final Long documentId;
+        final int[][] neighbors;
+        final int[] neighborCounts;
+        // Written under the write lock
+        boolean deleted;
+
+        Node(String id, float[] vector, TextSegment segment, Long documentId, int level, int m, int maxConnectionsLevel0) {
+            this.id = id;
+            this.vector = vector;
+            this.segment = segment;
+            this.documentId = documentId;
+            this.neighbors = new int[level + 1][];
+            this.neighborCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                neighbors[l] = new int[l == 0 ? maxConnectionsLevel0 : m];
+            }
+        }
+    }
+
+    static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * Visited marks of one search at a time, reset in O(1) by bumping an epoch instead of clearing the array.
+     */
+    private static final class VisitedSet {
+        private int[] marks = new int[0];
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size) {
+                marks = Arrays.copyOf(marks, Math.max(size, marks.length * 2));
+            }
+            epoch++;
+            if (epoch == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean visit(int index) {
+            if (marks[index] == epoch) {
+                return false;
+            }
+            marks[index] = epoch;
+            return true;
+        }
+    }
+}
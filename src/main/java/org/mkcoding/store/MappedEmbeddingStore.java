@@ -0,0 +1,526 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * File-backed embedding store for one document, made of four append-only files in its directory:
+ * <ul>
+ *     <li>{@code vectors.f32} - a 4-byte dimension header followed by packed little-endian unit vectors</li>
+ *     <li>{@code segments.log} - id, text and metadata records</li>
+ *     <li>{@code segments.idx} - one 8-byte offset into the log per vector slot</li>
+ *     <li>{@code segments.del} - one 4-byte little-endian slot number per removed entry</li>
+ * </ul>
+ * Opening an existing directory only maps the files; nothing is deserialized until a search returns a match.
+ * A record is visible once its index entry is written, so a torn write at the tail is ignored on reopen.
+ * The log uses {@link DataOutputStream} (big-endian) framing; vectors and offsets are little-endian.
+ * <p>
+ * {@link #compact()} writes the live entries to a sibling {@code .compacting} directory and swaps it in with
+ * directory renames; a swap interrupted by a crash is finished the next time the store is opened.
+ */
+public class MappedEmbeddingStore implements EmbeddingStore<TextSegment>, CompactableEmbeddingStore, PortableEmbeddingStore, Closeable {
+
+    static final String VECTORS_FILE = "vectors.f32";
+    static final String SEGMENTS_FILE = "segments.log";
+    static final String INDEX_FILE = "segments.idx";
+    static final String DELETED_FILE = "segments.del";
+
+    private static final int HEADER_BYTES = Integer.BYTES;
+
+    private final Path directory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FileChannel vectorChannel;
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private FileChannel deletedChannel;
+
+    private int dimension = -1;
+    private int count;
+    private long segmentBytes;
+    private BitSet deleted = new BitSet();
+
+    private ByteBuffer mappedVectors;
+    private MappedByteBuffer mappedSegments;
+    private MappedByteBuffer mappedIndex;
+
+    public MappedEmbeddingStore(Path directory) {
+        this.directory = directory;
+        try {
+            recoverCompaction(directory);
+            openFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open embedding store in " + directory, e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Live entries, not counting tombstones.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int slotCount() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        Set<String> removed = new HashSet<>(ids);
+        lock.writeLock().lock();
+        try {
+            ByteBuffer slots = ByteBuffer.allocate(removed.size() * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int slot = 0; slot < count && slots.hasRemaining(); slot++) {
+                if (!deleted.get(slot) && removed.contains(readString((int) mappedIndex.getLong(slot * Long.BYTES)))) {
+                    slots.putInt(slot);
+                    deleted.set(slot);
+                }
+            }
+            writeFully(deletedChannel, slots.flip(), deletedChannel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to remove from embedding store in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (deleted.isEmpty()) {
+                return;
+            }
+            Path compacting = sibling(directory, ".compacting");
+            deleteDirectory(compacting);
+            try (MappedEmbeddingStore compacted = new MappedEmbeddingStore(compacting)) {
+                List<String> ids = new ArrayList<>();
+                List<Embedding> embeddings = new ArrayList<>();
+                List<TextSegment> segments = new ArrayList<>();
+                forEachEntry((id, embedding, segment) -> {
+                    ids.add(id);
+                    embeddings.add(embedding);
+                    segments.add(segment);
+                });
+                compacted.addAll(ids, embeddings, segments);
+                compacted.flush();
+            }
+
+            closeFiles();
+            Path old = sibling(directory, ".old");
+            Files.move(directory, old, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(compacting, directory, StandardCopyOption.ATOMIC_MOVE);
+            deleteDirectory(old);
+            openFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to compact embedding store in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return add(embedding, null);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        append(List.of(id), List.of(embedding), Collections.singletonList(null));
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        append(List.of(id), List.of(embedding), Collections.singletonList(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, Collections.nCopies(embeddings.size(), null));
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        if (embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("The list of embeddings and segments must have the same size");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        append(ids, embeddings, segments);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        if (ids.size() != embeddings.size() || embeddings.size() != segments.size()) {
+            throw new IllegalArgumentException("The lists of ids, embeddings and segments must have the same size");
+        }
+        if (!ids.isEmpty()) {
+            append(ids, embeddings, segments);
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < count; slot++) {
+                if (!deleted.get(slot)) {
+                    EmbeddingMatch<TextSegment> entry = toMatch(slot, 1.0);
+                    visitor.visit(entry.embeddingId(), entry.embedding(), entry.embedded());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        Filter filter = request.filter();
+
+        lock.readLock().lock();
+        try {
+            if (count == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            NeighborQueue results = new NeighborQueue(maxResults, true);
+            for (int slot = 0; slot < count; slot++) {
+                if (deleted.get(slot) || (filter != null && !accepts(filter, slot))) {
+                    continue;
+                }
+                float dot = VectorMath.dot(query, mappedVectors, slot * dimension * Float.BYTES);
+                results.insertWithOverflow(slot, VectorMath.distance(dot), maxResults);
+            }
+
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(results.size());
+            while (!results.isEmpty()) {
+                float distance = results.topDistance();
+                int slot = results.poll();
+                double score = RelevanceScore.fromCosineSimilarity(1 - distance);
+                if (score >= request.minScore()) {
+                    matches.add(toMatch(slot, score));
+                }
+            }
+            Collections.reverse(matches);
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forces all appended data to disk.
+     */
+    public void flush() {
+        try {
+            vectorChannel.force(false);
+            segmentChannel.force(false);
+            indexChannel.force(false);
+            deletedChannel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to flush embedding store in " + directory, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closeFiles();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the store and deletes its directory.
+     */
+    public void delete() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closeFiles();
+            deleteDirectory(directory);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void openFiles() throws IOException {
+        Files.createDirectories(directory);
+        vectorChannel = open(directory.resolve(VECTORS_FILE));
+        segmentChannel = open(directory.resolve(SEGMENTS_FILE));
+        indexChannel = open(directory.resolve(INDEX_FILE));
+        deletedChannel = open(directory.resolve(DELETED_FILE));
+
+        dimension = -1;
+        count = 0;
+        long vectorBytes = vectorChannel.size();
+        if (vectorBytes >= HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            vectorChannel.read(header, 0);
+            dimension = header.getInt(0);
+            long completeVectors = (vectorBytes - HEADER_BYTES) / ((long) dimension * Float.BYTES);
+            count = (int) Math.min(completeVectors, indexChannel.size() / Long.BYTES);
+        }
+        segmentBytes = segmentChannel.size();
+
+        deleted = new BitSet();
+        // A torn trailing slot number is ignored, the removal is simply lost
+        ByteBuffer slots = ByteBuffer.allocate((int) (deletedChannel.size() / Integer.BYTES * Integer.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        deletedChannel.read(slots, 0);
+        slots.flip();
+        while (slots.hasRemaining()) {
+            int slot = slots.getInt();
+            if (slot < count) {
+                deleted.set(slot);
+            }
+        }
+        remap();
+    }
+
+    private void closeFiles() throws IOException {
+        vectorChannel.close();
+        segmentChannel.close();
+        indexChannel.close();
+        deletedChannel.close();
+    }
+
+    /**
+     * Finishes or discards a compaction interrupted by a crash. The compacted copy is only moved into place once
+     * complete, so it is used exactly when the original directory has already been moved away.
+     */
+    private static void recoverCompaction(Path directory) throws IOException {
+        Path compacting = sibling(directory, ".compacting");
+        if (Files.notExists(directory) && Files.isDirectory(compacting)) {
+            Files.move(compacting, directory, StandardCopyOption.ATOMIC_MOVE);
+        }
+        deleteDirectory(compacting);
+        deleteDirectory(sibling(directory, ".old"));
+    }
+
+    private static Path sibling(Path directory, String suffix) {
+        return directory.resolveSibling(directory.getFileName() + suffix);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (Files.notExists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void append(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        lock.writeLock().lock();
+        try {
+            long vectorPosition = vectorChannel.size();
+            if (dimension < 0) {
+                dimension = embeddings.get(0).dimension();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, dimension);
+                vectorChannel.write(header, 0);
+                vectorPosition = HEADER_BYTES;
+            } else {
+                // Drop a torn tail left by an earlier crash
+                vectorPosition = HEADER_BYTES + (long) count * dimension * Float.BYTES;
+            }
+
+            ByteBuffer vectors = ByteBuffer.allocate(embeddings.size() * dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer offsets = ByteBuffer.allocate(embeddings.size() * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream recordOutput = new DataOutputStream(records);
+
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = VectorMath.normalize(embeddings.get(i).vector());
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("Embedding dimension " + vector.length + " does not match store dimension " + dimension);
+                }
+                for (float value : vector) {
+                    vectors.putFloat(value);
+                }
+                offsets.putLong(segmentBytes + records.size());
+                writeRecord(recordOutput, ids.get(i), segments.get(i));
+            }
+
+            // Log and vectors first, index last: a slot only becomes visible once it is complete
+            writeFully(segmentChannel, ByteBuffer.wrap(records.toByteArray()), segmentBytes);
+            writeFully(vectorChannel, vectors.flip(), vectorPosition);
+            writeFully(indexChannel, offsets.flip(), (long) count * Long.BYTES);
+
+            segmentBytes += records.size();
+            count += embeddings.size();
+            remap();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to embedding store in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remap() throws IOException {
+        if (count == 0) {
+            mappedVectors = null;
+            mappedSegments = null;
+            mappedIndex = null;
+            return;
+        }
+        long vectorBytes = HEADER_BYTES + (long) count * dimension * Float.BYTES;
+        if (vectorBytes > Integer.MAX_VALUE || segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Document in " + directory + " exceeds the 2GB mapping limit");
+        }
+        mappedVectors = vectorChannel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, vectorBytes - HEADER_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        mappedSegments = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentBytes);
+        mappedIndex = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, (long) count * Long.BYTES);
+        mappedIndex.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private boolean accepts(Filter filter, int slot) {
+        TextSegment segment = readSegment(slot);
+        return segment != null && filter.test(segment.metadata());
+    }
+
+    private EmbeddingMatch<TextSegment> toMatch(int slot, double score) {
+        float[] vector = new float[dimension];
+        mappedVectors.asFloatBuffer().get(slot * dimension, vector);
+        int position = (int) mappedIndex.getLong(slot * Long.BYTES);
+        String id = readString(position);
+        return new EmbeddingMatch<>(score, id, new Embedding(vector), readSegment(slot));
+    }
+
+    private TextSegment readSegment(int slot) {
+        int position = (int) mappedIndex.getLong(slot * Long.BYTES);
+        // Skip the id
+        position += Integer.BYTES + mappedSegments.getInt(position);
+        int textLength = mappedSegments.getInt(position);
+        if (textLength < 0) {
+            return null;
+        }
+        String text = readString(position);
+        position += Integer.BYTES + textLength;
+
+        int entries = mappedSegments.getInt(position);
+        position += Integer.BYTES;
+        Metadata metadata = new Metadata();
+        for (int i = 0; i < entries; i++) {
+            String key = readString(position);
+            position += Integer.BYTES + mappedSegments.getInt(position);
+            String value = readString(position);
+            position += Integer.BYTES + mappedSegments.getInt(position);
+            metadata.put(key, value);
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    private String readString(int position) {
+        byte[] bytes = new byte[mappedSegments.getInt(position)];
+        mappedSegments.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeRecord(DataOutputStream output, String id, TextSegment segment) throws IOException {
+        writeString(output, id);
+        if (segment == null) {
+            output.writeInt(-1);
+            return;
+        }
+        writeString(output, segment.text());
+        Map<String, Object> metadata = segment.metadata().toMap();
+        output.writeInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(output, entry.getKey());
+            writeString(output, String.valueOf(entry.getValue()));
+        }
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+}
@@ -0,0 +1,114 @@
+package org.mkcoding.store;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of (node, distance) pairs packed into primitive longs, so searches don't allocate
+ * an object per visited vector. Distances must be non-negative: their IEEE bits then sort like the values.
+ */
+public class NeighborQueue {
+
+    private final boolean maxHeap;
+    private long[] heap;
+    private int size;
+
+    public NeighborQueue(int initialCapacity, boolean maxHeap) {
+        this.heap = new long[Math.max(1, initialCapacity)];
+        this.maxHeap = maxHeap;
+    }
+
+    public void add(int node, float distance) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        heap[size] = encode(node, distance);
+        siftUp(size++);
+    }
+
+    /**
+     * Adds the pair to a max-heap bounded to {@code limit} entries, evicting the farthest one if needed.
+     *
+     * @return whether the pair was kept
+     */
+    public boolean insertWithOverflow(int node, float distance, int limit) {
+        if (size < limit) {
+            add(node, distance);
+            return true;
+        }
+        if (distance >= topDistance()) {
+            return false;
+        }
+        heap[0] = encode(node, distance);
+        siftDown(0);
+        return true;
+    }
+
+    public int topNode() {
+        return (int) heap[0];
+    }
+
+    public float topDistance() {
+        return Float.intBitsToFloat((int) (heap[0] >>> 32));
+    }
+
+    public int poll() {
+        int node = (int) heap[0];
+        heap[0] = heap[--size];
+        siftDown(0);
+        return node;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    private static long encode(int node, float distance) {
+        return ((long) Float.floatToIntBits(distance) << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private boolean before(long a, long b) {
+        return maxHeap ? a > b : a < b;
+    }
+
+    private void siftUp(int index) {
+        long value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(value, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private void siftDown(int index) {
+        if (size == 0) {
+            return;
+        }
+        long value = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && before(heap[right], heap[child])) {
+                child = right;
+            }
+            if (!before(heap[child], value)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
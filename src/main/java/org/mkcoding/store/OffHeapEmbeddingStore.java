@@ -0,0 +1,315 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedding store that keeps vectors as packed, unit-length float32 values in direct (off-heap) buffers.
+ * <p>
+ * Vectors are written into fixed-size chunks of {@code vectorsPerChunk} slots, so the GC never sees one
+ * object per vector. Ids and segments are kept in separate on-heap lists indexed by slot. Searches scan the
+ * flat buffers and select the top K with a primitive heap, without allocating per scanned vector.
+ * Removed slots are tombstoned and skipped until {@link #compact()} repacks the live vectors into new chunks.
+ * <p>
+ * Chunks count against {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size, and their memory
+ * is only returned once a GC collects the small buffer objects on the heap. Until then, replaced chunks, e.g. after
+ * a compaction or an eviction from the tiered store, still count, so allocating new ones can fail with
+ * {@code OutOfMemoryError: Direct buffer memory} although the heap has room.
+ */
+public class OffHeapEmbeddingStore implements EmbeddingStore<TextSegment>, CompactableEmbeddingStore, PortableEmbeddingStore {
+
+    private final int vectorsPerChunk;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private List<ByteBuffer> chunks = new ArrayList<>();
+    private List<String> ids = new ArrayList<>();
+    private List<TextSegment> segments = new ArrayList<>();
+    private BitSet deleted = new BitSet();
+    private int dimension = -1;
+    private int size;
+
+    public OffHeapEmbeddingStore(int vectorsPerChunk) {
+        if (vectorsPerChunk <= 0) {
+            throw new IllegalArgumentException("Vectors per chunk must be positive.");
+        }
+        this.vectorsPerChunk = vectorsPerChunk;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding, null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        add(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding, segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> generatedIds = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            generatedIds.add(add(embedding));
+        }
+        return generatedIds;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("The list of embeddings and segments must have the same size");
+        }
+        List<String> generatedIds = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            generatedIds.add(add(embeddings.get(i), embedded.get(i)));
+        }
+        return generatedIds;
+    }
+
+    @Override
+    public void addAll(List<String> idsToAdd, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (idsToAdd.size() != embeddings.size() || embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("The lists of ids, embeddings and segments must have the same size");
+        }
+        for (int i = 0; i < embeddings.size(); i++) {
+            add(idsToAdd.get(i), embeddings.get(i), embedded.get(i));
+        }
+    }
+
+    @Override
+    public void forEachEntry(EntryVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int index = 0; index < size; index++) {
+                if (!deleted.get(index)) {
+                    visitor.visit(ids.get(index), new Embedding(vectorAt(index)), segments.get(index));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Live entries, not counting tombstones.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int slotCount() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        removeLive(idsToRemove);
+    }
+
+    /**
+     * Tombstones the live entries with the given ids.
+     *
+     * @return the segments of the entries removed, {@code null} for entries added without one
+     */
+    public List<TextSegment> removeLive(Collection<String> idsToRemove) {
+        Set<String> removed = new HashSet<>(idsToRemove);
+        List<TextSegment> removedSegments = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (int index = 0; index < size; index++) {
+                if (!deleted.get(index) && removed.contains(ids.get(index))) {
+                    deleted.set(index);
+                    removedSegments.add(segments.get(index));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return removedSegments;
+    }
+
+    @Override
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (deleted.isEmpty()) {
+                return;
+            }
+            OffHeapEmbeddingStore compacted = new OffHeapEmbeddingStore(vectorsPerChunk);
+            for (int index = 0; index < size; index++) {
+                if (!deleted.get(index)) {
+                    compacted.add(ids.get(index), new Embedding(vectorAt(index)), segments.get(index));
+                }
+            }
+            // The old chunks keep counting against the direct memory limit until a GC collects their buffers
+            chunks = compacted.chunks;
+            ids = compacted.ids;
+            segments = compacted.segments;
+            deleted = new BitSet();
+            size = compacted.size;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes of off-heap memory reserved for vectors.
+     */
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) chunks.size() * chunkBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        Filter filter = request.filter();
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            if (query.length != dimension) {
+                throw new IllegalArgumentException("Query dimension " + query.length + " does not match store dimension " + dimension);
+            }
+
+            NeighborQueue results = new NeighborQueue(maxResults, true);
+            for (int chunk = 0; chunk < chunks.size(); chunk++) {
+                ByteBuffer vectors = chunks.get(chunk);
+                int first = chunk * vectorsPerChunk;
+                int count = Math.min(vectorsPerChunk, size - first);
+                for (int slot = 0; slot < count; slot++) {
+                    int index = first + slot;
+                    if (deleted.get(index) || (filter != null && !accepts(filter, index))) {
+                        continue;
+                    }
+                    float dot = VectorMath.dot(query, vectors, slot * dimension * Float.BYTES);
+                    results.insertWithOverflow(index, VectorMath.distance(dot), maxResults);
+                }
+            }
+            return new EmbeddingSearchResult<>(toMatches(results, request.minScore()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(String id, Embedding embedding, TextSegment segment) {
+        float[] vector = VectorMath.normalize(embedding.vector());
+
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = vector.length;
+            } else if (vector.length != dimension) {
+                throw new IllegalArgumentException("Embedding dimension " + vector.length + " does not match store dimension " + dimension);
+            }
+            int slot = size % vectorsPerChunk;
+            if (slot == 0) {
+                chunks.add(ByteBuffer.allocateDirect(chunkBytes()).order(ByteOrder.nativeOrder()));
+            }
+            ByteBuffer chunk = chunks.get(chunks.size() - 1);
+            int offset = slot * dimension * Float.BYTES;
+            for (int i = 0; i < dimension; i++) {
+                chunk.putFloat(offset + i * Float.BYTES, vector[i]);
+            }
+            ids.add(id);
+            segments.add(segment);
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean accepts(Filter filter, int index) {
+        TextSegment segment = segments.get(index);
+        return segment != null && filter.test(segment.metadata());
+    }
+
+    private float[] vectorAt(int index) {
+        FloatBuffer vectors = chunks.get(index / vectorsPerChunk).asFloatBuffer();
+        float[] vector = new float[dimension];
+        vectors.get((index % vectorsPerChunk) * dimension, vector);
+        return vector;
+    }
+
+    private List<EmbeddingMatch<TextSegment>> toMatches(NeighborQueue results, double minScore) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(results.size());
+        while (!results.isEmpty()) {
+            float distance = results.topDistance();
+            int index = results.poll();
+            double score = RelevanceScore.fromCosineSimilarity(1 - distance);
+            if (score >= minScore) {
+                // Only the returned matches are copied back onto the heap
+                matches.add(new EmbeddingMatch<>(score, ids.get(index), new Embedding(vectorAt(index)), segments.get(index)));
+            }
+        }
+        // Polled farthest first
+        Collections.reverse(matches);
+        return matches;
+    }
+
+    private int chunkBytes() {
+        return vectorsPerChunk * dimension * Float.BYTES;
+    }
+}
@@ -0,0 +1,28 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.util.List;
+
+/**
+ * Embedding store whose live entries can be copied out and back in with their ids, so a document can move
+ * between storage tiers without changing the ids its manifest refers to.
+ */
+public interface PortableEmbeddingStore {
+
+    /**
+     * Visits every live entry in insertion order.
+     */
+    void forEachEntry(EntryVisitor visitor);
+
+    /**
+     * Adds entries under the given ids.
+     */
+    void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments);
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(String id, Embedding embedding, TextSegment segment);
+    }
+}
@@ -0,0 +1,145 @@
+package org.mkcoding.store;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Product quantizer for unit vectors: the vector is cut into {@code subspaces} equal slices and each slice
+ * is replaced by the index of its nearest centroid in a per-slice codebook of up to 256 entries, one byte each.
+ * <p>
+ * Dot products decompose over slices, so a query is scored against a code by summing entries of a
+ * {@link #dotTable(float[]) lookup table} built once per query.
+ */
+public class ProductQuantizer {
+
+    private static final int CENTROIDS = 256;
+    private static final int ITERATIONS = 8;
+
+    private final int subspaces;
+    private final int subDimension;
+    // [subspace][centroid * subDimension + i]
+    private final float[][] codebooks;
+
+    private ProductQuantizer(int subspaces, int subDimension, float[][] codebooks) {
+        this.subspaces = subspaces;
+        this.subDimension = subDimension;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Trains the codebooks with k-means over the given sample. Training is seeded, so the same sample
+     * always yields the same quantizer.
+     */
+    public static ProductQuantizer train(List<float[]> sample, int subspaces) {
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("Product quantization needs a non-empty training sample.");
+        }
+        int dimension = sample.get(0).length;
+        if (subspaces <= 0 || dimension % subspaces != 0) {
+            throw new IllegalArgumentException("Dimension " + dimension + " is not divisible into " + subspaces + " subspaces.");
+        }
+        int subDimension = dimension / subspaces;
+        int centroids = Math.min(CENTROIDS, sample.size());
+        Random random = new Random(42);
+        float[][] codebooks = new float[subspaces][];
+        for (int s = 0; s < subspaces; s++) {
+            codebooks[s] = kMeans(sample, s * subDimension, subDimension, centroids, random);
+        }
+        return new ProductQuantizer(subspaces, subDimension, codebooks);
+    }
+
+    public int subspaces() {
+        return subspaces;
+    }
+
+    /**
+     * Writes the code of {@code vector} into {@code codes} starting at {@code offset}.
+     */
+    public void encode(float[] vector, byte[] codes, int offset) {
+        for (int s = 0; s < subspaces; s++) {
+            codes[offset + s] = (byte) nearest(codebooks[s], vector, s * subDimension, subDimension);
+        }
+    }
+
+    /**
+     * Dot products between each query slice and every centroid of that slice, laid out as
+     * {@code table[subspace * 256 + centroid]}.
+     */
+    public float[] dotTable(float[] query) {
+        float[] table = new float[subspaces * CENTROIDS];
+        for (int s = 0; s < subspaces; s++) {
+            float[] codebook = codebooks[s];
+            int base = s * subDimension;
+            for (int c = 0; c < codebook.length / subDimension; c++) {
+                float sum = 0f;
+                for (int i = 0; i < subDimension; i++) {
+                    sum += query[base + i] * codebook[c * subDimension + i];
+                }
+                table[s * CENTROIDS + c] = sum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Approximate dot product of the query behind {@code table} with the code at {@code offset}.
+     */
+    public float dot(float[] table, byte[] codes, int offset) {
+        float sum = 0f;
+        for (int s = 0; s < subspaces; s++) {
+            sum += table[s * CENTROIDS + (codes[offset + s] & 0xFF)];
+        }
+        return sum;
+    }
+
+    private static float[] kMeans(List<float[]> sample, int base, int subDimension, int centroids, Random random) {
+        float[] codebook = new float[centroids * subDimension];
+        // Seed with distinct sample points
+        int[] order = random.ints(0, sample.size()).distinct().limit(centroids).toArray();
+        for (int c = 0; c < centroids; c++) {
+            System.arraycopy(sample.get(order[c]), base, codebook, c * subDimension, subDimension);
+        }
+
+        float[] sums = new float[centroids * subDimension];
+        int[] counts = new int[centroids];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            Arrays.fill(sums, 0f);
+            Arrays.fill(counts, 0);
+            for (float[] vector : sample) {
+                int c = nearest(codebook, vector, base, subDimension);
+                counts[c]++;
+                for (int i = 0; i < subDimension; i++) {
+                    sums[c * subDimension + i] += vector[base + i];
+                }
+            }
+            for (int c = 0; c < centroids; c++) {
+                // An empty cluster keeps its previous centroid
+                if (counts[c] == 0) {
+                    continue;
+                }
+                for (int i = 0; i < subDimension; i++) {
+                    codebook[c * subDimension + i] = sums[c * subDimension + i] / counts[c];
+                }
+            }
+        }
+        return codebook;
+    }
+
+    private static int nearest(float[] codebook, float[] vector, int base, int subDimension) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < codebook.length / subDimension; c++) {
+            float distance = 0f;
+            for (int i = 0; i < subDimension; i++) {
+                float diff = vector[base + i] - codebook[c * subDimension + i];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+}
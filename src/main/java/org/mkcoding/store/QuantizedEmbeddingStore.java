@@ -0,0 +1,420 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedding store that keeps only compressed vector codes in memory and scores searches approximately over them.
+ * <p>
+ * Every vector is int8 scalar quantized (one byte per dimension plus a float scale, about 4x smaller).
+ * With {@code pqSubspaces > 0}, once {@code pqTrainingSize} vectors have been added a {@link ProductQuantizer}
+ * is trained on them and all codes are replaced by {@code pqSubspaces} bytes per vector.
+ * <p>
+ * The exact float32 vectors are appended to a temporary file. A search takes the
+ * {@code maxResults * rerankFactor} best approximate candidates and reads only those back to re-rank them exactly.
+ * <p>
+ * Removed entries are tombstoned; {@link #compact()} re-adds the live entries to a fresh store, which also
+ * retrains the product quantizer on what is left, and takes over its codes and exact vector file.
+ */
+public class QuantizedEmbeddingStore implements EmbeddingStore<TextSegment>, CompactableEmbeddingStore, AutoCloseable {
+
+    private final int rerankFactor;
+    private final int pqSubspaces;
+    private final int pqTrainingSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private List<String> ids = new ArrayList<>();
+    private List<TextSegment> segments = new ArrayList<>();
+    private BitSet deleted = new BitSet();
+    private Path exactFile;
+    private FileChannel exactVectors;
+    private int dimension = -1;
+    private int size;
+    // int8 codes and per-vector scales, dropped once product quantization takes over
+    private byte[] scalarCodes = new byte[0];
+    private float[] scales = new float[0];
+    private ProductQuantizer productQuantizer;
+    private byte[] pqCodes;
+
+    public QuantizedEmbeddingStore(int rerankFactor, int pqSubspaces, int pqTrainingSize) {
+        if (rerankFactor < 1) {
+            throw new IllegalArgumentException("Rerank factor must be at least 1.");
+        }
+        if (pqSubspaces > 0 && pqTrainingSize < 1) {
+            throw new IllegalArgumentException("Product quantization training size must be positive.");
+        }
+        this.rerankFactor = rerankFactor;
+        this.pqSubspaces = pqSubspaces;
+        this.pqTrainingSize = pqTrainingSize;
+        try {
+            this.exactFile = Files.createTempFile("embeddings-", ".f32");
+            this.exactFile.toFile().deleteOnExit();
+            this.exactVectors = FileChannel.open(exactFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the exact vector file", e);
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding, null);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        add(id, embedding, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding, segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> generatedIds = new ArrayList<>(embeddings.size());
+        for (Embedding embedding : embeddings) {
+            generatedIds.add(add(embedding));
+        }
+        return generatedIds;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (embeddings.size() != embedded.size()) {
+            throw new IllegalArgumentException("The list of embeddings and segments must have the same size");
+        }
+        List<String> generatedIds = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            generatedIds.add(add(embeddings.get(i), embedded.get(i)));
+        }
+        return generatedIds;
+    }
+
+    /**
+     * Live entries, not counting tombstones.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int slotCount() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return deleted.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        Set<String> removed = new HashSet<>(idsToRemove);
+        lock.writeLock().lock();
+        try {
+            for (int index = 0; index < size; index++) {
+                if (removed.contains(ids.get(index))) {
+                    deleted.set(index);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            if (deleted.isEmpty()) {
+                return;
+            }
+            QuantizedEmbeddingStore compacted = new QuantizedEmbeddingStore(rerankFactor, pqSubspaces, pqTrainingSize);
+            for (int index = 0; index < size; index++) {
+                if (!deleted.get(index)) {
+                    compacted.add(ids.get(index), new Embedding(readExact(index)), segments.get(index));
+                }
+            }
+            exactVectors.close();
+            Files.deleteIfExists(exactFile);
+            ids = compacted.ids;
+            segments = compacted.segments;
+            deleted = new BitSet();
+            exactFile = compacted.exactFile;
+            exactVectors = compacted.exactVectors;
+            dimension = compacted.dimension;
+            size = compacted.size;
+            scalarCodes = compacted.scalarCodes;
+            scales = compacted.scales;
+            productQuantizer = compacted.productQuantizer;
+            pqCodes = compacted.pqCodes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove the exact vector file", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes of in-memory vector codes; the float32 equivalent is {@code size() * dimension * 4}.
+     */
+    public long codeBytes() {
+        lock.readLock().lock();
+        try {
+            if (productQuantizer != null) {
+                return (long) size * pqSubspaces;
+            }
+            return (long) size * (Math.max(dimension, 0) + Float.BYTES);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isProductQuantized() {
+        lock.readLock().lock();
+        try {
+            return productQuantizer != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = VectorMath.normalize(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        int candidates = maxResults * rerankFactor;
+        Filter filter = request.filter();
+
+        lock.readLock().lock();
+        try {
+            if (size == 0) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            if (query.length != dimension) {
+                throw new IllegalArgumentException("Query dimension " + query.length + " does not match store dimension " + dimension);
+            }
+
+            float[] table = productQuantizer != null ? productQuantizer.dotTable(query) : null;
+            NeighborQueue approximate = new NeighborQueue(candidates, true);
+            for (int index = 0; index < size; index++) {
+                if (deleted.get(index) || (filter != null && !accepts(filter, index))) {
+                    continue;
+                }
+                float dot = table != null
+                        ? productQuantizer.dot(table, pqCodes, index * pqSubspaces)
+                        : scalarDot(query, index);
+                // Approximate dots may overshoot 1, so shift by 2 to keep distances non-negative
+                approximate.insertWithOverflow(index, Math.max(0f, 2f - dot), candidates);
+            }
+
+            // Re-rank by candidate position, keeping the exact vectors read for the returned matches
+            int[] indexes = new int[approximate.size()];
+            float[][] vectors = new float[indexes.length][];
+            NeighborQueue exact = new NeighborQueue(maxResults, true);
+            for (int candidate = 0; candidate < indexes.length; candidate++) {
+                indexes[candidate] = approximate.poll();
+                vectors[candidate] = readExact(indexes[candidate]);
+                exact.insertWithOverflow(candidate, VectorMath.distance(VectorMath.dot(query, vectors[candidate])), maxResults);
+            }
+            return new EmbeddingSearchResult<>(toMatches(exact, indexes, vectors, request.minScore()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            exactVectors.close();
+            Files.deleteIfExists(exactFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not remove the exact vector file", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(String id, Embedding embedding, TextSegment segment) {
+        float[] vector = VectorMath.normalize(embedding.vector());
+
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = vector.length;
+                if (pqSubspaces > 0 && dimension % pqSubspaces != 0) {
+                    throw new IllegalArgumentException("Dimension " + dimension + " is not divisible into " + pqSubspaces + " subspaces.");
+                }
+            } else if (vector.length != dimension) {
+                throw new IllegalArgumentException("Embedding dimension " + vector.length + " does not match store dimension " + dimension);
+            }
+            writeExact(size, vector);
+            if (productQuantizer != null) {
+                pqCodes = ensureCapacity(pqCodes, (size + 1) * pqSubspaces);
+                productQuantizer.encode(vector, pqCodes, size * pqSubspaces);
+            } else {
+                encodeScalar(size, vector);
+            }
+            ids.add(id);
+            segments.add(segment);
+            size++;
+            if (productQuantizer == null && pqSubspaces > 0 && size >= pqTrainingSize) {
+                trainProductQuantizer();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void encodeScalar(int index, float[] vector) {
+        scalarCodes = ensureCapacity(scalarCodes, (index + 1) * dimension);
+        if (scales.length <= index) {
+            scales = Arrays.copyOf(scales, Math.max(16, scales.length * 2));
+        }
+        float max = 0f;
+        for (float value : vector) {
+            max = Math.max(max, Math.abs(value));
+        }
+        float scale = max == 0f ? 1f : max / 127f;
+        int offset = index * dimension;
+        for (int i = 0; i < dimension; i++) {
+            scalarCodes[offset + i] = (byte) Math.round(vector[i] / scale);
+        }
+        scales[index] = scale;
+    }
+
+    private float scalarDot(float[] query, int index) {
+        int offset = index * dimension;
+        float sum = 0f;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * scalarCodes[offset + i];
+        }
+        return sum * scales[index];
+    }
+
+    private void trainProductQuantizer() {
+        List<float[]> sample = new ArrayList<>(size);
+        for (int index = 0; index < size; index++) {
+            sample.add(readExact(index));
+        }
+        productQuantizer = ProductQuantizer.train(sample, pqSubspaces);
+        pqCodes = new byte[Math.max(16, size * 2) * pqSubspaces];
+        for (int index = 0; index < size; index++) {
+            productQuantizer.encode(sample.get(index), pqCodes, index * pqSubspaces);
+        }
+        scalarCodes = null;
+        scales = null;
+    }
+
+    private void writeExact(int index, float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        try {
+            long position = (long) index * dimension * Float.BYTES;
+            while (buffer.hasRemaining()) {
+                position += exactVectors.write(buffer, position);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the exact vector file", e);
+        }
+    }
+
+    private float[] readExact(int index) {
+        ByteBuffer buffer = ByteBuffer.allocate(dimension * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            long position = (long) index * dimension * Float.BYTES;
+            while (buffer.hasRemaining()) {
+                int read = exactVectors.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of the exact vector file");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read from the exact vector file", e);
+        }
+        float[] vector = new float[dimension];
+        buffer.flip().asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    private boolean accepts(Filter filter, int index) {
+        TextSegment segment = segments.get(index);
+        return segment != null && filter.test(segment.metadata());
+    }
+
+    private List<EmbeddingMatch<TextSegment>> toMatches(NeighborQueue results, int[] indexes, float[][] vectors, double minScore) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(results.size());
+        while (!results.isEmpty()) {
+            float distance = results.topDistance();
+            int candidate = results.poll();
+            int index = indexes[candidate];
+            double score = RelevanceScore.fromCosineSimilarity(1 - distance);
+            if (score >= minScore) {
+                matches.add(new EmbeddingMatch<>(score, ids.get(index), new Embedding(vectors[candidate]), segments.get(index)));
+            }
+        }
+        // Polled farthest first
+        Collections.reverse(matches);
+        return matches;
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int required) {
+        if (array.length >= required) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(required, array.length * 2));
+    }
+}
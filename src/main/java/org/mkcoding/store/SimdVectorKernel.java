@@ -0,0 +1,84 @@
+package org.mkcoding.store;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Dot products on the widest float vectors the CPU supports, e.g. 16 lanes with AVX-512, written against the
+ * JDK 17 incubator API. Only {@link VectorKernel#simd()} may load this class: it fails to link when
+ * {@code jdk.incubator.vector} is not in the boot layer, and the buffer overload fails on JDK 19+, where
+ * {@code FloatVector.fromByteBuffer} was replaced by {@code fromMemorySegment}.
+ * <p>
+ * Lanes are summed in a different order than the scalar loop, so results can differ from it in the last bits.
+ */
+final class SimdVectorKernel implements VectorKernel {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    static boolean isSupported() {
+        return SPECIES.vectorBitSize() >= 128;
+    }
+
+    int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public float dot(float[] a, float[] b) {
+        int lanes = SPECIES.length();
+        int bound = SPECIES.loopBound(a.length);
+        FloatVector even = FloatVector.zero(SPECIES);
+        FloatVector odd = FloatVector.zero(SPECIES);
+        int i = 0;
+        // Two accumulators, so each add doesn't wait for the previous one
+        for (; i + lanes < bound; i += 2 * lanes) {
+            even = FloatVector.fromArray(SPECIES, a, i).mul(FloatVector.fromArray(SPECIES, b, i)).add(even);
+            odd = FloatVector.fromArray(SPECIES, a, i + lanes).mul(FloatVector.fromArray(SPECIES, b, i + lanes)).add(odd);
+        }
+        if (i < bound) {
+            even = FloatVector.fromArray(SPECIES, a, i).mul(FloatVector.fromArray(SPECIES, b, i)).add(even);
+            i += lanes;
+        }
+        float sum = even.add(odd).reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] query, ByteBuffer vectors, int offset) {
+        int lanes = SPECIES.length();
+        int bound = SPECIES.loopBound(query.length);
+        FloatVector even = FloatVector.zero(SPECIES);
+        FloatVector odd = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (; i + lanes < bound; i += 2 * lanes) {
+            even = FloatVector.fromArray(SPECIES, query, i)
+                    .mul(FloatVector.fromByteBuffer(SPECIES, vectors, offset + i * Float.BYTES, vectors.order()))
+                    .add(even);
+            odd = FloatVector.fromArray(SPECIES, query, i + lanes)
+                    .mul(FloatVector.fromByteBuffer(SPECIES, vectors, offset + (i + lanes) * Float.BYTES, vectors.order()))
+                    .add(odd);
+        }
+        if (i < bound) {
+            even = FloatVector.fromArray(SPECIES, query, i)
+                    .mul(FloatVector.fromByteBuffer(SPECIES, vectors, offset + i * Float.BYTES, vectors.order()))
+                    .add(even);
+            i += lanes;
+        }
+        float sum = even.add(odd).reduceLanes(VectorOperators.ADD);
+        for (; i < query.length; i++) {
+            sum += query[i] * vectors.getFloat(offset + i * Float.BYTES);
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "simd-" + SPECIES.vectorBitSize();
+    }
+}
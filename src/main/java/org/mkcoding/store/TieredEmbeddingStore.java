@@ -0,0 +1,301 @@
+package org.mkcoding.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Per-document store that lives either in memory, as an {@link OffHeapEmbeddingStore}, or on disk in the
+ * {@link MappedEmbeddingStore} format. {@link #evict()} moves the entries to disk and frees the memory;
+ * any later access loads them back with the same ids.
+ * <p>
+ * The disk copy is written once and reused across evictions until the document changes again.
+ */
+public class TieredEmbeddingStore implements EmbeddingStore<TextSegment>, CompactableEmbeddingStore {
+
+    /**
+     * Directory under {@code document.repository.dir} holding the disk tier of every document.
+     */
+    public static final String COLD_DIRECTORY = "cold";
+
+    private static final int COPY_BATCH_SIZE = 256;
+    // Rough heap cost of an entry besides its text: id string, segment, metadata and list slots
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final Path coldDirectory;
+    private final int vectorsPerChunk;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private OffHeapEmbeddingStore hot;
+    private long textBytes;
+    // Whether the disk copy is missing or older than the memory tier
+    private boolean dirty = true;
+    private volatile LongConsumer loadListener = loadNanos -> {
+    };
+
+    public TieredEmbeddingStore(Path coldDirectory, int vectorsPerChunk) {
+        this.coldDirectory = coldDirectory;
+        this.vectorsPerChunk = vectorsPerChunk;
+        this.hot = new OffHeapEmbeddingStore(vectorsPerChunk);
+    }
+
+    public boolean isResident() {
+        lock.readLock().lock();
+        try {
+            return hot != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimated memory held while resident: the vector chunks plus the segment texts and per-entry overhead.
+     * Zero once evicted.
+     */
+    public long memoryBytes() {
+        lock.readLock().lock();
+        try {
+            return hot == null ? 0 : hot.offHeapBytes() + textBytes + (long) hot.slotCount() * ENTRY_OVERHEAD_BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Called with the load time, in nanoseconds, whenever evicted entries are loaded back, outside the store's lock.
+     */
+    public void setLoadListener(LongConsumer loadListener) {
+        this.loadListener = loadListener;
+    }
+
+    /**
+     * Loads the entries back from disk if the store was evicted.
+     *
+     * @return whether anything was loaded
+     */
+    public boolean ensureResident() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            if (hot != null) {
+                return false;
+            }
+            OffHeapEmbeddingStore loaded = new OffHeapEmbeddingStore(vectorsPerChunk);
+            try (MappedEmbeddingStore cold = new MappedEmbeddingStore(coldDirectory)) {
+                textBytes = copy(cold, loaded);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load embedding store from " + coldDirectory, e);
+            }
+            hot = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loadListener.accept(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Moves the entries to disk, unless an up-to-date copy is already there, and frees the memory tier.
+     *
+     * @return the estimated bytes freed
+     */
+    public long evict() {
+        lock.writeLock().lock();
+        try {
+            if (hot == null) {
+                return 0;
+            }
+            long freed = memoryBytes();
+            if (dirty) {
+                writeColdCopy();
+                dirty = false;
+            }
+            hot = null;
+            textBytes = 0;
+            return freed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to evict embedding store to " + coldDirectory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops both tiers, e.g. when the document is deleted.
+     */
+    public void delete() throws IOException {
+        lock.writeLock().lock();
+        try {
+            hot = null;
+            new MappedEmbeddingStore(coldDirectory).delete();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return write(store -> store.add(embedding), null);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        write(store -> {
+            store.add(id, embedding);
+            return null;
+        }, null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return write(store -> store.add(embedding, segment), Collections.singletonList(segment));
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return write(store -> store.addAll(embeddings), null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> segments) {
+        return write(store -> store.addAll(embeddings, segments), segments);
+    }
+
+    @Override
+    public void remove(String id) {
+        removeAll(List.of(id));
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        write(store -> {
+            // Counted out right away: compaction drops the tombstoned segments, and eviction never writes them
+            store.removeLive(ids).forEach(segment -> textBytes -= textBytes(segment));
+            return null;
+        }, null);
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        while (true) {
+            lock.readLock().lock();
+            try {
+                if (hot != null) {
+                    return hot.search(request);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            ensureResident();
+        }
+    }
+
+    @Override
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            // Evicted entries are written without their tombstones
+            return hot == null ? 0 : hot.tombstoneCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int slotCount() {
+        lock.readLock().lock();
+        try {
+            return hot == null ? 0 : hot.slotCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void compact() {
+        lock.readLock().lock();
+        try {
+            if (hot != null) {
+                hot.compact();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <T> T write(StoreWrite<T> operation, List<TextSegment> added) {
+        while (true) {
+            lock.writeLock().lock();
+            try {
+                if (hot != null) {
+                    T result = operation.apply(hot);
+                    if (added != null) {
+                        added.forEach(segment -> textBytes += textBytes(segment));
+                    }
+                    dirty = true;
+                    return result;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ensureResident();
+        }
+    }
+
+    private void writeColdCopy() throws IOException {
+        // Replace whatever an earlier eviction left behind
+        new MappedEmbeddingStore(coldDirectory).delete();
+        try (MappedEmbeddingStore cold = new MappedEmbeddingStore(coldDirectory)) {
+            copy(hot, cold);
+            cold.flush();
+        }
+    }
+
+    /**
+     * Copies the live entries in batches, so only one batch is held twice at a time.
+     *
+     * @return the bytes of segment text copied
+     */
+    private static long copy(PortableEmbeddingStore from, PortableEmbeddingStore to) {
+        List<String> ids = new ArrayList<>(COPY_BATCH_SIZE);
+        List<Embedding> embeddings = new ArrayList<>(COPY_BATCH_SIZE);
+        List<TextSegment> segments = new ArrayList<>(COPY_BATCH_SIZE);
+        long[] copiedTextBytes = {0};
+        from.forEachEntry((id, embedding, segment) -> {
+            ids.add(id);
+            embeddings.add(embedding);
+            segments.add(segment);
+            copiedTextBytes[0] += textBytes(segment);
+            if (ids.size() == COPY_BATCH_SIZE) {
+                to.addAll(ids, embeddings, segments);
+                ids.clear();
+                embeddings.clear();
+                segments.clear();
+            }
+        });
+        to.addAll(ids, embeddings, segments);
+        return copiedTextBytes[0];
+    }
+
+    private static long textBytes(TextSegment segment) {
+        return segment == null ? 0 : (long) segment.text().length() * Character.BYTES;
+    }
+
+    @FunctionalInterface
+    private interface StoreWrite<T> {
+        T apply(OffHeapEmbeddingStore store);
+    }
+}
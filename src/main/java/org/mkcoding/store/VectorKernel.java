@@ -0,0 +1,49 @@
+package org.mkcoding.store;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * Dot product of float32 vectors, the inner loop of every exact search. {@link VectorMath} picks the
+ * {@link #simd()} kernel when it is available and falls back to the {@link #scalar()} one.
+ */
+public interface VectorKernel {
+
+    float dot(float[] a, float[] b);
+
+    /**
+     * Dot product of the query with the {@code query.length} floats stored at byte {@code offset} of the buffer,
+     * in the buffer's byte order.
+     */
+    float dot(float[] query, ByteBuffer vectors, int offset);
+
+    String name();
+
+    static VectorKernel scalar() {
+        return ScalarVectorKernel.INSTANCE;
+    }
+
+    /**
+     * The kernel built on the incubating Vector API. Empty unless the JVM was started with
+     * {@code --add-modules jdk.incubator.vector} on a CPU with at least 128-bit vector registers, and on JDKs
+     * whose incubator API no longer has the methods the kernel was compiled against.
+     */
+    static Optional<VectorKernel> simd() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            if (!SimdVectorKernel.isSupported()) {
+                return Optional.empty();
+            }
+            SimdVectorKernel kernel = new SimdVectorKernel();
+            // A removed method only fails to link when first called, so call both overloads before handing it out
+            float[] probe = new float[2 * kernel.lanes()];
+            kernel.dot(probe, probe);
+            kernel.dot(probe, ByteBuffer.allocate(probe.length * Float.BYTES), 0);
+            return Optional.of(kernel);
+        } catch (LinkageError | UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.mkcoding.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Vector helpers shared by the embedding stores. Stored vectors are unit length,
+ * so cosine similarity reduces to a dot product.
+ * <p>
+ * Dot products run on the SIMD {@link VectorKernel} when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector}, and on the scalar one otherwise.
+ */
+public final class VectorMath {
+
+    // Constant, so the JIT can inline the kernel into the search loops
+    private static final VectorKernel KERNEL = VectorKernel.simd().orElseGet(VectorKernel::scalar);
+
+    private VectorMath() {
+    }
+
+    public static VectorKernel kernel() {
+        return KERNEL;
+    }
+
+    public static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b);
+    }
+
+    /**
+     * See {@link VectorKernel#dot(float[], ByteBuffer, int)}.
+     */
+    public static float dot(float[] query, ByteBuffer vectors, int offset) {
+        return KERNEL.dot(query, vectors, offset);
+    }
+
+    /**
+     * Returns a unit-length copy of the vector. A zero vector is returned unchanged.
+     */
+    public static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm == 0f) {
+            return normalized;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] / norm;
+        }
+        return normalized;
+    }
+
+    /**
+     * Cosine distance in [0, 2] for unit vectors, clamped so that rounding never makes it negative.
+     */
+    public static float distance(float dot) {
+        return Math.max(0f, 1f - dot);
+    }
+}
@@ -0,0 +1,41 @@
+package cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.cache.BoundedCache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void testPut_EvictsLeastRecentlyUsed() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 2, 0, meterRegistry, clock::get);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.getIfPresent("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals("3", cache.getIfPresent("c"));
+        assertEquals(1.0, meterRegistry.get("cache.evictions").tag("cache", "test").counter().count());
+    }
+
+    @Test
+    void testGetIfPresent_ExpiresAfterTtl() {
+        BoundedCache<String, String> cache = new BoundedCache<>("test", 10, 100, meterRegistry, clock::get);
+        cache.put("a", "1");
+
+        clock.set(99);
+        assertEquals("1", cache.getIfPresent("a"));
+        clock.set(100);
+        assertNull(cache.getIfPresent("a"));
+        assertEquals(0, cache.size());
+    }
+}
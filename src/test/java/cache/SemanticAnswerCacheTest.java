@@ -0,0 +1,57 @@
+package cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.cache.SemanticAnswerCache;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SemanticAnswerCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SemanticAnswerCache cache = new SemanticAnswerCache(true, 0.9f, 2, 1, meterRegistry);
+
+    @Test
+    void testLookup_ScopedToDocumentAndInvalidated() {
+        cache.put(1L, 0, new Embedding(new float[]{1f, 0f}), "answer", TimeUnit.SECONDS.toNanos(2));
+
+        assertEquals(Optional.of("answer"), cache.lookup(1L, new Embedding(new float[]{2f, 0.1f})));
+        assertEquals(Optional.empty(), cache.lookup(2L, new Embedding(new float[]{1f, 0f})));
+        assertEquals(2.0, meterRegistry.get("answer.cache.saved.latency").timer().totalTime(TimeUnit.SECONDS));
+
+        cache.invalidate(1L);
+
+        assertEquals(Optional.empty(), cache.lookup(1L, new Embedding(new float[]{1f, 0f})));
+    }
+
+    @Test
+    void testPut_EvictsBeyondBounds() {
+        cache.put(1L, 0, new Embedding(new float[]{1f, 0f}), "x", 0);
+        cache.put(1L, 0, new Embedding(new float[]{0f, 1f}), "y", 0);
+        cache.put(1L, 0, new Embedding(new float[]{-1f, 0f}), "-x", 0);
+        // Only one document fits, so this drops the two remaining answers of document 1
+        cache.put(2L, 0, new Embedding(new float[]{1f, 0f}), "other", 0);
+
+        assertEquals(Optional.empty(), cache.lookup(1L, new Embedding(new float[]{0f, 1f})));
+        assertEquals(3.0, meterRegistry.get("answer.cache.evictions").counter().count());
+    }
+
+    @Test
+    void testPut_DropsAnswersGeneratedBeforeInvalidation() {
+        long version = cache.version(1L);
+
+        // The document changes while the answer is being generated
+        cache.invalidate(1L);
+        cache.put(1L, version, new Embedding(new float[]{1f, 0f}), "outdated", 0);
+
+        assertEquals(Optional.empty(), cache.lookup(1L, new Embedding(new float[]{1f, 0f})));
+
+        cache.put(1L, cache.version(1L), new Embedding(new float[]{1f, 0f}), "current", 0);
+
+        assertEquals(Optional.of("current"), cache.lookup(1L, new Embedding(new float[]{1f, 0f})));
+    }
+}
@@ -0,0 +1,91 @@
+package concurrency;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.concurrency.ModelConcurrencyLimiter;
+import org.mkcoding.exception.exceptions.ModelBusyException;
+import org.mkcoding.llm.ConcurrencyLimitedChatLanguageModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelConcurrencyLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testGenerate_CapsInFlightCalls() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        ChatLanguageModel model = new ConcurrencyLimitedChatLanguageModel(messages -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(20);
+            inFlight.decrementAndGet();
+            return Response.from(AiMessage.from("answer"));
+        }, new ModelConcurrencyLimiter("stub", 3, 5_000, meterRegistry));
+
+        ExecutorService callers = Executors.newFixedThreadPool(12);
+        List<Future<String>> answers = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            answers.add(callers.submit(() -> model.generate("question")));
+        }
+        for (Future<String> answer : answers) {
+            assertEquals("answer", answer.get(10, TimeUnit.SECONDS));
+        }
+        callers.shutdown();
+
+        assertEquals(3, peak.get());
+    }
+
+    @Test
+    void testAcquire_RejectsAfterTimeout() throws Exception {
+        ModelConcurrencyLimiter limiter = new ModelConcurrencyLimiter("stub", 1, 10, meterRegistry);
+        CountDownLatch release = new CountDownLatch(1);
+        ChatLanguageModel model = new ConcurrencyLimitedChatLanguageModel(messages -> {
+            awaitQuietly(release);
+            return Response.from(AiMessage.from("answer"));
+        }, limiter);
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        Future<String> holding = caller.submit(() -> model.generate("first"));
+        while (limiter.availablePermits() > 0) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(ModelBusyException.class, () -> model.generate("second"));
+        assertEquals(1.0, meterRegistry.get("model.permit.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("answer", holding.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.availablePermits());
+        caller.shutdown();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
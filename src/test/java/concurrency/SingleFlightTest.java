@@ -0,0 +1,87 @@
+package concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.concurrency.SingleFlight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>("test", meterRegistry);
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+
+    @Test
+    void testExecute_ConcurrentCallsShareOneComputation() throws Exception {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> answers = submitWhileInFlight(8, () -> {
+            computations.incrementAndGet();
+            await(release);
+            return "answer";
+        }, release);
+
+        for (Future<String> answer : answers) {
+            assertEquals("answer", answer.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, computations.get());
+        assertEquals(7.0, meterRegistry.get("singleflight.calls").tag("result", "coalesced").counter().count());
+        assertEquals(0, singleFlight.inFlight());
+
+        // A later call computes again
+        assertEquals("again", singleFlight.execute("key", () -> "again"));
+    }
+
+    @Test
+    void testExecute_WaitersReceiveLeaderException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> answers = submitWhileInFlight(4, () -> {
+            await(release);
+            throw new IllegalStateException("upstream failed");
+        }, release);
+
+        for (Future<String> answer : answers) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> answer.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+    }
+
+    private List<Future<String>> submitWhileInFlight(int calls, Supplier<String> computation, CountDownLatch release) throws Exception {
+        List<Future<String>> answers = new ArrayList<>();
+        answers.add(callers.submit(() -> singleFlight.execute("key", computation)));
+        while (singleFlight.inFlight() == 0) {
+            Thread.sleep(1);
+        }
+        for (int i = 1; i < calls; i++) {
+            answers.add(callers.submit(() -> singleFlight.execute("key", computation)));
+        }
+        // Give the followers time to join the in-flight computation
+        while (meterRegistry.get("singleflight.calls").tag("result", "coalesced").counter().count() < calls - 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        return answers;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.concurrency.WorkloadScheduler;
+import org.mkcoding.concurrency.WorkloadScheduler.Lane;
+import org.mkcoding.concurrency.WorkloadScheduler.LaneLimits;
+import org.mkcoding.exception.exceptions.WorkloadRejectedException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadSchedulerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testAdmit_RejectsWhenLaneQueueIsFull() {
+        WorkloadScheduler scheduler = scheduler(1, new LaneLimits(1, 1, 0), new LaneLimits(1, 1, 0), 60_000);
+
+        WorkloadScheduler.Permit held = scheduler.admit(Lane.INGESTION);
+        WorkloadRejectedException e = assertThrows(WorkloadRejectedException.class, () -> scheduler.admit(Lane.INGESTION));
+        assertEquals(3, e.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("workload.rejected").tag("lane", "ingestion").tag("reason", "full").counter().count());
+
+        held.close();
+        scheduler.admit(Lane.INTERACTIVE).close();
+    }
+
+    @Test
+    void testAdmit_RejectsWhenNoSlotFreesUpInTime() {
+        WorkloadScheduler scheduler = scheduler(1, new LaneLimits(1, 1, 4), new LaneLimits(1, 1, 4), 20);
+
+        try (WorkloadScheduler.Permit held = scheduler.admit(Lane.INGESTION)) {
+            assertThrows(WorkloadRejectedException.class, () -> scheduler.admit(Lane.INTERACTIVE));
+        }
+        assertEquals(1, meterRegistry.get("workload.rejected").tag("lane", "interactive").tag("reason", "timeout").counter().count());
+        assertEquals(0, meterRegistry.get("workload.queue.size").tag("lane", "interactive").gauge().value());
+    }
+
+    @Test
+    void testBackloggedLanes_ShareSlotsByWeight() throws Exception {
+        WorkloadScheduler scheduler = scheduler(1, new LaneLimits(3, 1, 16), new LaneLimits(1, 1, 16), 60_000);
+        List<Lane> order = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<?>> work = new ArrayList<>();
+
+        try (WorkloadScheduler.Permit held = scheduler.admit(Lane.INGESTION)) {
+            for (int i = 0; i < 4; i++) {
+                work.add(submit(scheduler, Lane.INGESTION, order));
+            }
+            for (int i = 0; i < 12; i++) {
+                work.add(submit(scheduler, Lane.INTERACTIVE, order));
+            }
+            awaitQueued("ingestion", 4);
+            awaitQueued("interactive", 12);
+        }
+        CompletableFuture.allOf(work.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        // The held slot counts against the ingestion lane, then every ingestion slot follows three interactive ones
+        String expected = "IIIIGIIIGIIIGIIG";
+        assertEquals(expected.chars().mapToObj(lane -> lane == 'I' ? Lane.INTERACTIVE : Lane.INGESTION).toList(), order);
+        assertEquals(12, meterRegistry.get("workload.queue.wait").tag("lane", "interactive").timer().count());
+    }
+
+    private WorkloadScheduler scheduler(int slots, LaneLimits interactive, LaneLimits ingestion, long queueTimeoutMillis) {
+        return new WorkloadScheduler(slots, Map.of(Lane.INTERACTIVE, interactive, Lane.INGESTION, ingestion),
+                queueTimeoutMillis, 3, meterRegistry);
+    }
+
+    private static CompletableFuture<?> submit(WorkloadScheduler scheduler, Lane lane, List<Lane> order) {
+        return CompletableFuture.runAsync(() -> {
+            try (WorkloadScheduler.Permit permit = scheduler.admit(lane)) {
+                order.add(lane);
+            }
+        }, runnable -> new Thread(runnable).start());
+    }
+
+    private void awaitQueued(String lane, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("workload.queue.size").tag("lane", lane).gauge().value() < expected) {
+            assertTrue(System.nanoTime() < deadline, "nothing queued in lane " + lane);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.embedding.EmbeddingExecutor;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Encodes the segment text (a number) as the only vector component
+    private final EmbeddingModel embeddingModel = segments -> Response.from(segments.stream()
+            .map(segment -> new Embedding(new float[]{Float.parseFloat(segment.text())}))
+            .toList());
+
+    private final EmbeddingExecutor embeddingExecutor = new EmbeddingExecutor(embeddingModel, 4, 3, 2, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        embeddingExecutor.shutdown();
+    }
+
+    @Test
+    void testEmbedAll_PreservesInputOrder() {
+        List<TextSegment> segments = IntStream.range(0, 100)
+                .mapToObj(i -> TextSegment.from(String.valueOf(i)))
+                .toList();
+
+        List<Embedding> embeddings = embeddingExecutor.embedAll(segments);
+
+        assertEquals(100, embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            assertEquals(i, embeddings.get(i).vector()[0]);
+        }
+        assertEquals(100, meterRegistry.get("embedding.segments").counter().count());
+        assertEquals(34, meterRegistry.get("embedding.batch.latency").timer().count());
+    }
+
+    @Test
+    void testEmbedAll_EmptyInput() {
+        assertTrue(embeddingExecutor.embedAll(List.of()).isEmpty());
+    }
+}
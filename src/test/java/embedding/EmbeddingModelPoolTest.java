@@ -0,0 +1,92 @@
+package embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.embedding.EmbeddingModelPool;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingModelPoolTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch firstSegmentStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstSegment = new CountDownLatch(1);
+    private final List<String> embedded = new CopyOnWriteArrayList<>();
+
+    // Blocks on the first segment, so everything after it queues up behind the single instance
+    private final EmbeddingModel embeddingModel = segments -> {
+        if (embedded.isEmpty() && firstSegmentStarted.getCount() > 0) {
+            firstSegmentStarted.countDown();
+            await(releaseFirstSegment);
+        }
+        segments.forEach(segment -> embedded.add(segment.text()));
+        return Response.from(segments.stream()
+                .map(segment -> new Embedding(new float[]{segment.text().length()}))
+                .toList());
+    };
+
+    private final EmbeddingModelPool pool = new EmbeddingModelPool(List.of(embeddingModel), meterRegistry);
+
+    @AfterEach
+    void tearDown() throws Exception {
+        releaseFirstSegment.countDown();
+        pool.close();
+    }
+
+    @Test
+    void testQuery_OvertakesIngestionBatchesBetweenSegments() throws Exception {
+        CompletableFuture<?> first = CompletableFuture.runAsync(() -> pool.embedAll(List.of(TextSegment.from("batch 1a"), TextSegment.from("batch 1b"))));
+        assertTrue(firstSegmentStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<?> second = CompletableFuture.runAsync(() -> pool.embedAll(List.of(TextSegment.from("batch 2"))));
+        awaitQueued("ingestion", 1);
+        CompletableFuture<Embedding> query = CompletableFuture.supplyAsync(() -> pool.embed("question").content());
+        awaitQueued("query", 1);
+
+        releaseFirstSegment.countDown();
+
+        assertArrayEquals(new float[]{8f}, query.get(5, TimeUnit.SECONDS).vector());
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("batch 1a", "question", "batch 1b", "batch 2"), embedded);
+        assertEquals(1, meterRegistry.get("embedding.pool.queue.wait").tag("priority", "query").timer().count());
+        assertEquals(2, meterRegistry.get("embedding.pool.queue.wait").tag("priority", "ingestion").timer().count());
+    }
+
+    @Test
+    void testEmbedAll_PropagatesModelFailures() throws Exception {
+        EmbeddingModel failingModel = segments -> {
+            throw new IllegalArgumentException("Segment too long");
+        };
+
+        try (EmbeddingModelPool failing = new EmbeddingModelPool(List.of(failingModel), new SimpleMeterRegistry())) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> failing.embed("question"));
+            assertEquals("Segment too long", e.getMessage());
+        }
+    }
+
+    private void awaitQueued(String priority, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("embedding.pool.queue.size").tag("priority", priority).gauge().value() < expected) {
+            assertTrue(System.nanoTime() < deadline, "nothing queued at priority " + priority);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
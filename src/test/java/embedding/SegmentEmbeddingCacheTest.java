@@ -0,0 +1,62 @@
+package embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.embedding.SegmentEmbeddingCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentEmbeddingCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SegmentEmbeddingCache embeddingCache = new SegmentEmbeddingCache(true, 100, meterRegistry);
+    private final List<String> embeddedTexts = new ArrayList<>();
+
+    // Encodes the segment text (a number) as the only vector component, remembering what was embedded
+    private final Function<List<TextSegment>, List<Embedding>> embedder = segments -> segments.stream()
+            .peek(segment -> embeddedTexts.add(segment.text()))
+            .map(segment -> new Embedding(new float[]{Float.parseFloat(segment.text())}))
+            .toList();
+
+    @Test
+    void testEmbedAll_EmbedsOnlyUnseenSegments() {
+        embeddingCache.embedAll(segments("1", "2", "3"), embedder);
+
+        // A new version of the document that changed one segment
+        List<Embedding> embeddings = embeddingCache.embedAll(segments("1", "2", "4"), embedder);
+
+        assertEquals(List.of("1", "2", "3", "4"), embeddedTexts);
+        assertEquals(List.of(1f, 2f, 4f), embeddings.stream().map(embedding -> embedding.vector()[0]).toList());
+        assertEquals(2.0, meterRegistry.get("cache.gets").tag("cache", "segment.embeddings").tag("result", "hit").counter().count());
+        assertEquals(4 * Float.BYTES, meterRegistry.get("embedding.cache.bytes").gauge().value());
+        assertTrue(meterRegistry.get("embedding.cache.saved.time").counter().count() > 0);
+    }
+
+    @Test
+    void testEmbedAll_RepeatedTextInBatchEmbeddedOnce() {
+        List<Embedding> embeddings = embeddingCache.embedAll(segments("5", "6", "5"), embedder);
+
+        assertEquals(List.of("5", "6"), embeddedTexts);
+        assertEquals(List.of(5f, 6f, 5f), embeddings.stream().map(embedding -> embedding.vector()[0]).toList());
+    }
+
+    @Test
+    void testEmbedAll_DisabledAlwaysEmbeds() {
+        SegmentEmbeddingCache disabled = new SegmentEmbeddingCache(false, 100, new SimpleMeterRegistry());
+
+        disabled.embedAll(segments("1"), embedder);
+        disabled.embedAll(segments("1"), embedder);
+
+        assertEquals(List.of("1", "1"), embeddedTexts);
+    }
+
+    private static List<TextSegment> segments(String... texts) {
+        return List.of(texts).stream().map(TextSegment::from).toList();
+    }
+}
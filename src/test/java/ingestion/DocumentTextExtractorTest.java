@@ -0,0 +1,127 @@
+package ingestion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.ingestion.DocumentFormat;
+import org.mkcoding.ingestion.DocumentTextExtractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentTextExtractorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DocumentTextExtractor extractor = new DocumentTextExtractor(4, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        extractor.shutdown();
+    }
+
+    @Test
+    void testPdf_PagesExtractedInParallelAreReadInOrder() throws IOException {
+        byte[] pdf = pdf(64);
+
+        String text = readAll(extractor.open(new ByteArrayInputStream(pdf), DocumentFormat.PDF));
+
+        int previous = -1;
+        for (int page = 1; page <= 64; page++) {
+            int position = text.indexOf("Page " + page + " text.");
+            assertTrue(position > previous, "page " + page + " out of order");
+            previous = position;
+        }
+        assertEquals(64, meterRegistry.get("ingestion.extract.pages").tag("format", "pdf").counter().count());
+        assertEquals(pdf.length, meterRegistry.get("ingestion.extract.bytes").tag("format", "pdf").counter().count());
+        assertEquals(1, meterRegistry.get("ingestion.extract.latency").tag("format", "pdf").timer().count());
+    }
+
+    @Test
+    void testPdf_ClosingEarlyStopsExtraction() throws IOException {
+        try (Reader reader = extractor.open(new ByteArrayInputStream(pdf(64)), DocumentFormat.PDF)) {
+            assertTrue(reader.read(new char[16]) > 0);
+        }
+        // Workers wind down and still record the document once
+        assertEquals(1, meterRegistry.get("ingestion.extract.latency").tag("format", "pdf").timer().count());
+    }
+
+    @Test
+    void testPdf_UnreadUploadDoesNotHoldTheParserThreads() throws IOException {
+        // Enough pages for all four pool threads, none of them read
+        try (Reader unread = extractor.open(new ByteArrayInputStream(pdf(64)), DocumentFormat.PDF)) {
+            byte[] other = pdf(32);
+
+            String text = assertTimeoutPreemptively(Duration.ofSeconds(20),
+                    () -> readAll(extractor.open(new ByteArrayInputStream(other), DocumentFormat.PDF)));
+
+            assertTrue(text.contains("Page 32 text."));
+        }
+        assertEquals(2, meterRegistry.get("ingestion.extract.latency").tag("format", "pdf").timer().count());
+    }
+
+    @Test
+    void testDocx_ParagraphsBecomeParagraphBreaks() throws IOException {
+        ByteArrayOutputStream docx = new ByteArrayOutputStream();
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createParagraph().createRun().setText("First paragraph.");
+            document.createParagraph();
+            document.createParagraph().createRun().setText("Second paragraph.");
+            document.write(docx);
+        }
+
+        String text = readAll(extractor.open(new ByteArrayInputStream(docx.toByteArray()), DocumentFormat.DOCX));
+
+        assertEquals("First paragraph.\n\nSecond paragraph.\n\n", text);
+        assertEquals(text.length(), meterRegistry.get("ingestion.extract.characters").tag("format", "docx").counter().count());
+    }
+
+    @Test
+    void testBinaryFormats_RejectInputOfAnotherFormat() {
+        byte[] text = "Plain text, not an office document.".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> extractor.open(new ByteArrayInputStream(text), DocumentFormat.DOCX));
+        assertThrows(IOException.class, () -> extractor.open(new ByteArrayInputStream(text), DocumentFormat.DOC));
+        assertThrows(IOException.class, () -> extractor.open(new ByteArrayInputStream(text), DocumentFormat.PDF));
+    }
+
+    private static byte[] pdf(int pages) throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (int page = 1; page <= pages; page++) {
+                PDPage pdPage = new PDPage();
+                document.addPage(pdPage);
+                try (PDPageContentStream content = new PDPageContentStream(document, pdPage)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("Page " + page + " text.");
+                    content.endText();
+                }
+            }
+            document.save(pdf);
+        }
+        return pdf.toByteArray();
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        try (reader) {
+            StringWriter text = new StringWriter();
+            reader.transferTo(text);
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ingestion;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.ingestion.ContentHash;
+import org.mkcoding.ingestion.StreamingTextSplitter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamingTextSplitterTest {
+
+    @Test
+    void testSplit_PrefersParagraphBoundaries() throws IOException {
+        String text = "First paragraph.\n\nSecond paragraph that is a bit longer.";
+        List<TextSegment> segments = new ArrayList<>();
+
+        int count = new StreamingTextSplitter(40).split(new StringReader(text), segments::add);
+
+        assertEquals(2, count);
+        assertEquals("First paragraph.", segments.get(0).text());
+        assertEquals("Second paragraph that is a bit longer.", segments.get(1).text());
+        assertEquals("1", segments.get(1).metadata().getString("index"));
+    }
+
+    @Test
+    void testSplit_LargeInputKeepsSegmentsBounded() throws IOException {
+        String text = "Lorem ipsum dolor sit amet. ".repeat(10_000);
+        List<TextSegment> segments = new ArrayList<>();
+
+        new StreamingTextSplitter(300).split(new StringReader(text), segments::add);
+
+        assertFalse(segments.isEmpty());
+        assertTrue(segments.stream().allMatch(segment -> segment.text().length() <= 300));
+        assertEquals(text.replace(" ", "").length(),
+                segments.stream().mapToInt(segment -> segment.text().replace(" ", "").length()).sum());
+    }
+
+    @Test
+    void testSplit_BlankInput() throws IOException {
+        List<TextSegment> segments = new ArrayList<>();
+
+        int count = new StreamingTextSplitter(300).split(new StringReader(" \n\n "), segments::add);
+
+        assertEquals(0, count);
+        assertTrue(segments.isEmpty());
+    }
+
+    @Test
+    void testSentenceMode_OverlapStartsAtSentence() throws IOException {
+        String text = "One is short. Two is a little longer. Three ends here. Four is last.";
+        List<TextSegment> segments = new ArrayList<>();
+
+        new StreamingTextSplitter(StreamingTextSplitter.Mode.SENTENCE, 40, 25, null)
+                .split(new StringReader(text), segments::add);
+
+        assertEquals(List.of("One is short. Two is a little longer.", "Two is a little longer. Three ends here.",
+                        "Three ends here. Four is last."),
+                segments.stream().map(TextSegment::text).toList());
+    }
+
+    @Test
+    void testTokenMode_SegmentsStayWithinTokenBudget() throws IOException {
+        Tokenizer tokenizer = new OpenAiTokenizer(OpenAiChatModelName.GPT_4_O_MINI);
+        StringBuilder text = new StringBuilder();
+        for (int word = 0; word < 2000; word++) {
+            text.append("word").append(word).append(word % 10 == 9 ? ". " : " ");
+        }
+        List<TextSegment> segments = new ArrayList<>();
+
+        new StreamingTextSplitter(StreamingTextSplitter.Mode.TOKEN, 64, 8, tokenizer)
+                .split(new StringReader(text.toString()), segments::add);
+
+        assertTrue(segments.size() > 1);
+        assertTrue(segments.stream().allMatch(segment -> tokenizer.estimateTokenCountInText(segment.text()) <= 64));
+        // The second segment starts with words from the end of the first
+        String first = segments.get(0).text();
+        String second = segments.get(1).text();
+        String firstWordOfSecond = second.substring(0, second.indexOf(' '));
+        assertTrue(first.contains(firstWordOfSecond + " "));
+        assertTrue(first.endsWith(second.substring(0, first.length() - first.indexOf(firstWordOfSecond + " "))));
+    }
+
+    @Test
+    void testViews_HashLikeTheirText() throws IOException {
+        String text = "Zażółć gęślą jaźń. \uD83D\uDE00 and an unpaired \uD800 surrogate.\n\nSecond paragraph.";
+        List<String> hashes = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+
+        new StreamingTextSplitter(40).splitViews(new StringReader(text), view -> {
+            hashes.add(ContentHash.of(view));
+            texts.add(view.toString());
+        });
+
+        assertEquals(texts.stream().map(ContentHash::of).toList(), hashes);
+    }
+}
@@ -0,0 +1,32 @@
+package ingestion;
+
+import org.junit.jupiter.api.Test;
+import org.mkcoding.ingestion.UploadJob;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadJobTest {
+
+    @Test
+    void testTotalSegments_ExtrapolatedFromBytesRead() {
+        UploadJob job = new UploadJob(1000);
+        job.start();
+
+        job.progress(10, 250);
+
+        assertEquals(40, job.getTotalSegments());
+    }
+
+    @Test
+    void testTotalSegments_UnknownUntilCompletedWithoutBytesRead() {
+        UploadJob job = new UploadJob(1000);
+        job.start();
+
+        job.progress(10);
+
+        assertNull(job.getTotalSegments());
+        job.progress(25);
+        job.complete(1L);
+        assertEquals(25, job.getTotalSegments());
+    }
+}
@@ -8,6 +8,7 @@ import org.mkcoding.run.Main;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
@@ -17,13 +18,19 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @AutoConfigureMockMvc
-@SpringBootTest(classes = Main.class)
+@SpringBootTest(classes = Main.class, properties = {"chat.streaming.model=fake", "chat.streaming.fake.token.delay.millis=1"})
 class DocumentControllerTest {
 
     @Autowired
@@ -88,6 +95,83 @@ class DocumentControllerTest {
                 .andExpect(jsonPath("$.answer").exists());
     }
 
+    @Test
+    void testStreamChatWithDocument() throws Exception {
+        // Upload a document to stream a chat about
+        MockMultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "The rabbit lives in the forest.".getBytes());
+        String uploadResponse = mockMvc.perform(multipart("/upload")
+                        .file(file))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Long documentId = JsonPath.parse(uploadResponse).read("$.documentId", Long.class);
+
+        ObjectNode requestJson = objectMapper.createObjectNode();
+        requestJson.put("documentId", documentId);
+        requestJson.put("question", "Where does the rabbit live?");
+
+        // The fake streaming model answers without network access
+        MvcResult streamResult = mockMvc.perform(post("/chat/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .content(objectMapper.writeValueAsString(requestJson)))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String events = mockMvc.perform(asyncDispatch(streamResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM))
+                .andReturn().getResponse().getContentAsString();
+
+        // Context first, then the tokens, then the full answer
+        int context = events.indexOf("event:context");
+        int token = events.indexOf("event:token");
+        int done = events.indexOf("event:done");
+        assertTrue(context >= 0 && context < token && token < done, events);
+        assertTrue(events.contains("The rabbit lives in the forest."), events);
+    }
+
+    @Test
+    void testStreamChatWithDocument_DocumentNotFound() throws Exception {
+        ObjectNode requestJson = objectMapper.createObjectNode();
+        requestJson.put("documentId", 9999L);
+        requestJson.put("question", "What is the content?");
+
+        mockMvc.perform(post("/chat/stream")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestJson)))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message", containsString("Document not found with ID: 9999")));
+    }
+
+    @Test
+    void testSearchDocuments_AcrossSelectedDocuments() throws Exception {
+        Long rabbits = upload("Rabbits live in burrows in the forest.");
+        Long ships = upload("Container ships carry goods across the ocean.");
+
+        ObjectNode requestJson = objectMapper.createObjectNode();
+        requestJson.putArray("documentIds").add(rabbits).add(ships);
+        requestJson.put("question", "Where do rabbits live?");
+
+        mockMvc.perform(post("/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestJson)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.matches[0].documentId", is(rabbits.intValue())))
+                .andExpect(jsonPath("$.matches[0].text", containsString("burrows")));
+    }
+
+    @Test
+    void testSearchDocuments_NoDocumentSelection() throws Exception {
+        ObjectNode requestJson = objectMapper.createObjectNode();
+        requestJson.put("question", "Where do rabbits live?");
+
+        mockMvc.perform(post("/search")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(requestJson)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message", containsString("Either documentIds or allDocuments must be set")));
+    }
+
     @Test
     void testChatWithDocument_DocumentNotFound() throws Exception {
         // Use a non-existent document ID
@@ -150,4 +234,84 @@ class DocumentControllerTest {
                 .andExpect(status().isUnsupportedMediaType())
                 .andExpect(jsonPath("$.message", containsString("Unsupported file type: application/xyz")));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUploadDocument_async() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "Test content for an asynchronous upload.".getBytes());
+
+        // Submit the upload as a background job
+        MvcResult submitResult = mockMvc.perform(multipart("/upload")
+                        .file(file)
+                        .param("async", "true"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.jobId").exists())
+                .andReturn();
+        String jobId = JsonPath.parse(submitResult.getResponse().getContentAsString()).read("$.jobId", String.class);
+
+        // Poll until the job has finished
+        String status = "QUEUED";
+        for (int attempt = 0; attempt < 100 && !status.equals("COMPLETED") && !status.equals("FAILED"); attempt++) {
+            Thread.sleep(100);
+            String jobResponse = mockMvc.perform(get("/upload/" + jobId))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            status = JsonPath.parse(jobResponse).read("$.status", String.class);
+        }
+
+        mockMvc.perform(get("/upload/" + jobId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("COMPLETED")))
+                .andExpect(jsonPath("$.segmentsEmbedded", is(1)))
+                .andExpect(jsonPath("$.totalSegments", is(1)))
+                .andExpect(jsonPath("$.documentId").exists());
+    }
+
+    @Test
+    void testReplaceAndDeleteDocument() throws Exception {
+        String kept = "Invoices are archived for ten years.";
+        MockMultipartFile file = new MockMultipartFile("file", "policy.txt", "text/plain", kept.getBytes());
+        MvcResult uploadResult = mockMvc.perform(multipart("/upload").file(file))
+                .andExpect(status().isOk())
+                .andReturn();
+        Long documentId = JsonPath.parse(uploadResult.getResponse().getContentAsString()).read("$.documentId", Long.class);
+
+        // The unchanged paragraph is kept as stored, only the new one is embedded
+        MockMultipartFile replacement = new MockMultipartFile("file", "policy.txt", "text/plain",
+                (kept + "\n\n" + "Receipts are archived for five years. ".repeat(10)).getBytes());
+        mockMvc.perform(multipart(HttpMethod.PUT, "/documents/{documentId}", documentId).file(replacement))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.documentId", is(documentId.intValue())))
+                .andExpect(jsonPath("$.segmentsKept", is(1)))
+                .andExpect(jsonPath("$.segmentsAdded", greaterThan(0)))
+                .andExpect(jsonPath("$.segmentsRemoved", is(0)));
+
+        mockMvc.perform(delete("/documents/{documentId}", documentId))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(delete("/documents/{documentId}", documentId))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testUploadJob_NotFound() throws Exception {
+        mockMvc.perform(get("/upload/unknown-job"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message", containsString("Upload job not found with ID: unknown-job")));
+    }
+
+    @Test
+    void testReadinessCheck_ModelsReady() throws Exception {
+        mockMvc.perform(get("/health/ready"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("UP")))
+                .andExpect(jsonPath("$.details.embeddingDimension", is(384)));
+    }
+
+    private Long upload(String content) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", content.getBytes());
+        String uploadResponse = mockMvc.perform(multipart("/upload")
+                        .file(file))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.parse(uploadResponse).read("$.documentId", Long.class);
+    }
+}
@@ -0,0 +1,75 @@
+package lexical;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.lexical.Bm25Index;
+import org.mkcoding.lexical.LexicalTokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25IndexTest {
+
+    @Test
+    void testTokenize_KeepsIdentifiersAndTheirParts() {
+        List<String> terms = new ArrayList<>();
+
+        LexicalTokenizer.tokenize("Error ERR-1042 in v2.3, see max_tokens.", terms::add);
+
+        assertEquals(List.of("error", "err-1042", "err", "1042", "in", "v2.3", "v2", "3", "see", "max_tokens", "max", "tokens"), terms);
+    }
+
+    @Test
+    void testSearch_RanksExactIdentifierFirst() {
+        Bm25Index.Builder builder = Bm25Index.builder();
+        builder.add(segment("The upload failed with a generic error."));
+        builder.add(segment("Error ERR-1042 means the embedding model is not loaded."));
+        builder.add(segment("Errors are logged, errors are retried, errors are reported."));
+        Bm25Index index = builder.build();
+
+        List<Bm25Index.Hit> hits = index.search("what does ERR-1042 mean", 2);
+
+        assertEquals(1, hits.get(0).ordinal());
+        assertTrue(hits.get(0).score() > 0);
+        assertEquals("Error ERR-1042 means the embedding model is not loaded.", index.segment(1).text());
+        assertEquals("1", index.segment(1).metadata().getString("index"));
+        assertTrue(index.search("unrelated words", 5).isEmpty());
+    }
+
+    @Test
+    void testSearch_LargeCorpusStaysFast() {
+        Random random = new Random(3);
+        Bm25Index.Builder builder = Bm25Index.builder();
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 40; w++) {
+                text.append("word").append(random.nextInt(20_000)).append(' ');
+            }
+            text.append("code-").append(i);
+            builder.add(segment(text.toString()));
+        }
+        Bm25Index index = builder.build();
+
+        // Warm up, then measure
+        for (int q = 0; q < 50; q++) {
+            index.search("word" + q + " word" + (q + 1), 10);
+        }
+        long start = System.nanoTime();
+        int queries = 200;
+        for (int q = 0; q < queries; q++) {
+            index.search("word" + random.nextInt(20_000) + " word" + random.nextInt(20_000) + " code-" + q, 10);
+        }
+        double averageMillis = (System.nanoTime() - start) / 1e6 / queries;
+
+        assertEquals(73_000, index.search("code-73000", 1).get(0).ordinal());
+        assertTrue(averageMillis < 10, "Average BM25 query took " + averageMillis + " ms");
+    }
+
+    private static TextSegment segment(String text) {
+        return TextSegment.from(text, new Metadata());
+    }
+}
@@ -0,0 +1,98 @@
+package llm;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.lexical.Bm25Index;
+import org.mkcoding.lexical.LexicalIndexRegistry;
+import org.mkcoding.llm.ContentRetrieverService;
+import org.mkcoding.llm.RetrievedSegment;
+import org.mkcoding.model.Document;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ContentRetrieverServiceTest {
+
+    private EmbeddingModel embeddingModel;
+    private SimpleMeterRegistry meterRegistry;
+    private ContentRetrieverService contentRetrieverService;
+    private InMemoryEmbeddingStore<TextSegment> embeddingStore;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyString())).thenReturn(Response.from(new Embedding(new float[]{1f, 0f})));
+        meterRegistry = new SimpleMeterRegistry();
+        contentRetrieverService = new ContentRetrieverService(embeddingModel, 5, 0.5, 100, 60, 2, new LexicalIndexRegistry("dense"), 20, 60, meterRegistry);
+
+        embeddingStore = new InMemoryEmbeddingStore<>();
+        embeddingStore.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("relevant"));
+        embeddingStore.add(new Embedding(new float[]{-1f, 0f}), TextSegment.from("opposite"));
+    }
+
+    @Test
+    void testRetrieveRelevantContents_FiltersByMinScore() {
+        List<Content> contents = contentRetrieverService.retrieveRelevantContents("What is it?", embeddingStore);
+
+        assertEquals(1, contents.size());
+        assertEquals("relevant", contents.get(0).textSegment().text());
+    }
+
+    @Test
+    void testRetrieveRelevantContents_RepeatedQuestionSkipsEmbedding() {
+        contentRetrieverService.retrieveRelevantContents("What is it?", embeddingStore);
+        contentRetrieverService.retrieveRelevantContents("  what IS   it? ", embeddingStore);
+
+        verify(embeddingModel, times(1)).embed(anyString());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "query.embeddings").tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "query.embeddings").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testRetrieveAcrossDocuments_MergesGlobalTopK() {
+        InMemoryEmbeddingStore<TextSegment> otherStore = new InMemoryEmbeddingStore<>();
+        otherStore.add(new Embedding(new float[]{0.9f, 0.1f}), TextSegment.from("also relevant"));
+        otherStore.add(new Embedding(new float[]{0.1f, 0.9f}), TextSegment.from("barely relevant"));
+
+        List<RetrievedSegment> segments = contentRetrieverService.retrieveAcrossDocuments("What is it?",
+                List.of(new Document(1L, embeddingStore), new Document(2L, otherStore)));
+
+        assertEquals(List.of("relevant", "also relevant", "barely relevant"),
+                segments.stream().map(segment -> segment.segment().text()).toList());
+        assertEquals(List.of(1L, 2L, 2L), segments.stream().map(RetrievedSegment::documentId).toList());
+    }
+
+    @Test
+    void testRetrieveRelevantContents_HybridSurfacesExactIdentifier() {
+        LexicalIndexRegistry lexicalIndexes = new LexicalIndexRegistry("hybrid");
+        ContentRetrieverService hybrid = new ContentRetrieverService(embeddingModel, 1, 0.0, 100, 60, 2, lexicalIndexes, 20, 60, meterRegistry);
+
+        // The embedding ranks the identifier segment last, BM25 ranks it first
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        List<TextSegment> segments = List.of(
+                TextSegment.from("General troubleshooting advice.", Metadata.from("index", "0")),
+                TextSegment.from("ERR-1042: the embedding model is not loaded.", Metadata.from("index", "1")));
+        store.add(new Embedding(new float[]{1f, 0f}), segments.get(0));
+        store.add(new Embedding(new float[]{0f, 1f}), segments.get(1));
+        LexicalIndexRegistry.Indexing indexing = lexicalIndexes.startIndexing();
+        segments.forEach(indexing);
+        lexicalIndexes.register(7L, indexing);
+
+        List<Content> dense = hybrid.retrieveRelevantContents("What is ERR-1042?", store);
+        List<Content> fused = hybrid.retrieveRelevantContents("What is ERR-1042?", store, 7L);
+
+        assertEquals("General troubleshooting advice.", dense.get(0).textSegment().text());
+        assertEquals("ERR-1042: the embedding model is not loaded.", fused.get(0).textSegment().text());
+    }
+}
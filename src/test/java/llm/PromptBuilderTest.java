@@ -0,0 +1,111 @@
+package llm;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.openai.OpenAiChatModelName;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.rag.content.Content;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.llm.PromptBuilder;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptBuilderTest {
+
+    private OpenAiTokenizer tokenizer;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        tokenizer = new OpenAiTokenizer(OpenAiChatModelName.GPT_4_O_MINI);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void testBuildPrompt_DropsNearDuplicates() {
+        PromptBuilder promptBuilder = new PromptBuilder(tokenizer, 1000, 0.9, 0, meterRegistry);
+
+        String prompt = promptBuilder.buildPrompt(List.of(
+                segment("The service restarts the embedding model on failure.", 3),
+                segment("The service restarts the embedding model on failure!", 8),
+                segment("Uploads are limited to ten megabytes.", 12)), "What happens on failure?");
+
+        assertEquals(1, count(prompt, "restarts the embedding model"));
+        assertTrue(prompt.contains("Uploads are limited to ten megabytes."));
+        assertEquals(1.0, meterRegistry.get("prompt.segments.dropped").tag("reason", "duplicate").counter().count());
+    }
+
+    @Test
+    void testBuildPrompt_PacksBestSegmentsIntoBudget() {
+        String best = "Answers are cached per document.";
+        String longer = "Cached answers are invalidated whenever a document is ingested again, "
+                + "so a re-uploaded document never serves answers generated from its previous content.";
+        String shorter = "The cache holds one hundred answers.";
+        int budget = tokenizer.estimateTokenCountInText(best) + tokenizer.estimateTokenCountInText(shorter);
+        PromptBuilder promptBuilder = new PromptBuilder(tokenizer, budget, 0.9, 0, meterRegistry);
+
+        String prompt = promptBuilder.buildPrompt(List.of(
+                Content.from(best), Content.from(longer), Content.from(shorter)), "How are answers cached?");
+
+        assertTrue(prompt.contains(best));
+        assertFalse(prompt.contains(longer));
+        assertTrue(prompt.contains(shorter));
+        assertEquals(1.0, meterRegistry.get("prompt.segments.dropped").tag("reason", "budget").counter().count());
+        assertEquals(1, meterRegistry.get("prompt.tokens").summary().count());
+    }
+
+    @Test
+    void testBuildPrompt_MergesAdjacentChunksInDocumentOrder() {
+        PromptBuilder promptBuilder = new PromptBuilder(tokenizer, 1000, 0.9, 0, meterRegistry);
+
+        String prompt = promptBuilder.buildPrompt(List.of(
+                segment("the second half of the sentence.", 5, 1L),
+                segment("An unrelated passage.", 9, 1L),
+                segment("This is the first half of", 4, 1L)), "Question?");
+
+        assertTrue(prompt.contains("Context:\nThis is the first half of the second half of the sentence.\nAn unrelated passage.\n"));
+        assertTrue(prompt.endsWith("\nQuestion:\nQuestion?\n\nAnswer:"));
+    }
+
+    @Test
+    void testBuildPrompt_MergesOnlyPositionedNeighboursFromTheSameDocument() {
+        PromptBuilder promptBuilder = new PromptBuilder(tokenizer, 1000, 0.9, 0, meterRegistry);
+
+        String prompt = promptBuilder.buildPrompt(List.of(
+                segment("Segment four of the first document.", 4, 1L),
+                segment("Segment five of the second document.", 5, 2L),
+                segment("A segment of no known position.", 6),
+                segment("The next one after it.", 7)), "Question?");
+
+        assertTrue(prompt.contains("Context:\nSegment four of the first document.\nSegment five of the second document.\n"
+                + "A segment of no known position.\nThe next one after it.\n"));
+    }
+
+    @Test
+    void testBuildPrompt_MergesOverlappingSegmentsWithoutRepeatingTheOverlap() {
+        PromptBuilder promptBuilder = new PromptBuilder(tokenizer, 1000, 0.9, 20, meterRegistry);
+
+        String prompt = promptBuilder.buildPrompt(List.of(
+                segment("The cache is invalidated on every upload.", 0, 1L),
+                segment("on every upload. Replaced documents keep their cache.", 1, 1L)), "Question?");
+
+        assertTrue(prompt.contains("Context:\nThe cache is invalidated on every upload. Replaced documents keep their cache.\n"));
+    }
+
+    private static Content segment(String text, int index) {
+        return Content.from(TextSegment.from(text, Metadata.from("index", String.valueOf(index))));
+    }
+
+    private static Content segment(String text, int position, Long documentId) {
+        return PromptBuilder.positioned(TextSegment.from(text), documentId, position);
+    }
+
+    private static int count(String text, String part) {
+        return text.split(Pattern.quote(part), -1).length - 1;
+    }
+}
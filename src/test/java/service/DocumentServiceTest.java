@@ -7,17 +7,28 @@ import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.output.Response;
 import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mkcoding.cache.SemanticAnswerCache;
+import org.mkcoding.embedding.EmbeddingExecutor;
+import org.mkcoding.embedding.SegmentEmbeddingCache;
 import org.mkcoding.exception.exceptions.DocumentNotFoundException;
 import org.mkcoding.exception.exceptions.FileProcessingException;
 import org.mkcoding.exception.exceptions.UnsupportedMediaTypeException;
+import org.mkcoding.ingestion.DocumentTextExtractor;
+import org.mkcoding.ingestion.StreamingIngestionPipeline;
+import org.mkcoding.lexical.LexicalIndexRegistry;
 import org.mkcoding.llm.ContentRetrieverService;
 import org.mkcoding.llm.PromptBuilder;
 import org.mkcoding.model.Document;
 import org.mkcoding.repository.DocumentRepository;
 import org.mkcoding.service.DocumentService;
+import org.mkcoding.service.DocumentUpdate;
+import org.mkcoding.store.EmbeddingStoreFactory;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -38,6 +49,7 @@ class DocumentServiceTest {
     private ContentRetrieverService contentRetrieverService;
     private ChatLanguageModel chatLanguageModel;
     private PromptBuilder promptBuilder;
+    private SimpleMeterRegistry meterRegistry;
 
     @BeforeEach
     void setUp() {
@@ -46,7 +58,13 @@ class DocumentServiceTest {
         chatLanguageModel = mock(ChatLanguageModel.class);
         contentRetrieverService = mock(ContentRetrieverService.class);
         promptBuilder = mock(PromptBuilder.class);
-        documentService = new DocumentService(documentRepository, embeddingModel, chatLanguageModel, contentRetrieverService, promptBuilder);
+        meterRegistry = new SimpleMeterRegistry();
+        EmbeddingExecutor embeddingExecutor = new EmbeddingExecutor(embeddingModel, 1, 16, 16, new SimpleMeterRegistry());
+        StreamingIngestionPipeline ingestionPipeline = new StreamingIngestionPipeline(embeddingExecutor, new SegmentEmbeddingCache(true, 1000, meterRegistry), new DocumentTextExtractor(1, meterRegistry), "character", 300, 0, null, 64, meterRegistry);
+        EmbeddingStoreFactory embeddingStoreFactory = new EmbeddingStoreFactory("memory", 16, 200, 64, 1000, 4096, "data/documents", 4, 0, 1024);
+        SemanticAnswerCache answerCache = new SemanticAnswerCache(true, 0.95f, 100, 1000, new SimpleMeterRegistry());
+        documentService = new DocumentService(documentRepository, embeddingModel, chatLanguageModel, contentRetrieverService, promptBuilder, ingestionPipeline, embeddingStoreFactory, answerCache, new LexicalIndexRegistry("dense"), meterRegistry);
+        when(contentRetrieverService.embedQuery(anyString())).thenReturn(new Embedding(new float[]{1f, 0f, 0f}));
     }
 
     @Test
@@ -66,6 +84,125 @@ class DocumentServiceTest {
         assertNotNull(documentId);
     }
 
+    @Test
+    void testUploadDocument_RecordsStageMetrics() {
+        MultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "This is a test document.".getBytes());
+        Response<List<Embedding>> response = Response.from(List.of(new Embedding(new float[]{0.5f, 0.2f, 0.3f})));
+        when(embeddingModel.embedAll(anyList())).thenReturn(response);
+
+        documentService.uploadDocument(file);
+
+        for (String stage : List.of("parse", "split", "embed", "store")) {
+            assertEquals(1, meterRegistry.get("rag.stage.latency").tag("operation", "ingest").tag("stage", stage).timer().count());
+        }
+        assertEquals(1.0, meterRegistry.get("rag.ingest.segments").summary().totalAmount());
+    }
+
+    @Test
+    void testUploadDocument_SameContentReturnsExistingDocument() {
+        MultipartFile file = new MockMultipartFile("file", "test.txt", "text/plain", "This is a test document.".getBytes());
+        MultipartFile retry = new MockMultipartFile("file", "copy.txt", "text/plain", "This is a test document.".getBytes());
+        Response<List<Embedding>> response = Response.from(List.of(new Embedding(new float[]{0.5f, 0.2f, 0.3f})));
+        when(embeddingModel.embedAll(anyList())).thenReturn(response);
+        when(embeddingModel.dimension()).thenReturn(3);
+        when(documentRepository.nextId()).thenReturn(1L, 2L);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(mock(Document.class)));
+
+        Long documentId = documentService.uploadDocument(file);
+        Long retriedId = documentService.uploadDocument(retry);
+
+        assertEquals(documentId, retriedId);
+        verify(documentRepository, times(1)).save(any());
+        verify(embeddingModel, times(1)).embedAll(anyList());
+        assertEquals(1.0, meterRegistry.get("upload.dedup.hits").counter().count());
+        assertEquals(3.0 * Float.BYTES, meterRegistry.get("upload.dedup.saved.bytes").counter().count());
+    }
+
+    @Test
+    void testReplaceDocument_EmbedsOnlyChangedSegments() {
+        when(embeddingModel.embedAll(anyList())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream().map(segment -> new Embedding(new float[]{segment.text().length(), 1f, 0f})).toList());
+        });
+        when(documentRepository.nextId()).thenReturn(1L);
+        String kept = "Invoices are archived for ten years. ".repeat(6).strip();
+        String changed = "Receipts are archived for five years. ".repeat(6).strip();
+        Long documentId = documentService.uploadDocument(textFile(kept + "\n\n" + changed));
+        Document document = savedDocument();
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+
+        String replacement = "Receipts are archived for seven years. ".repeat(6).strip();
+        DocumentUpdate update = documentService.replaceDocument(documentId, textFile(kept + "\n\n" + replacement));
+
+        assertEquals(new DocumentUpdate(documentId, 1, 1, 1), update);
+        ArgumentCaptor<List<TextSegment>> embedded = ArgumentCaptor.forClass(List.class);
+        verify(embeddingModel, times(2)).embedAll(embedded.capture());
+        assertEquals(List.of(replacement), embedded.getValue().stream().map(TextSegment::text).toList());
+        List<String> stored = document.getDocumentEmbeddingStore().search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(new Embedding(new float[]{1f, 0f, 0f}))
+                        .maxResults(10)
+                        .build()).matches().stream()
+                .map(match -> match.embedded().text())
+                .toList();
+        assertEquals(2, stored.size());
+        assertTrue(stored.containsAll(List.of(kept, replacement)));
+    }
+
+    @Test
+    void testReplaceDocument_PositionsFollowTheNewContent() {
+        when(embeddingModel.embedAll(anyList())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream().map(segment -> new Embedding(new float[]{segment.text().length(), 1f, 0f})).toList());
+        });
+        when(documentRepository.nextId()).thenReturn(1L);
+        String first = "Invoices are archived for ten years. ".repeat(6).strip();
+        String last = "Receipts are archived for five years. ".repeat(6).strip();
+        Long documentId = documentService.uploadDocument(textFile(first + "\n\n" + last));
+        Document document = savedDocument();
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+
+        String inserted = "Contracts are archived for thirty years. ".repeat(6).strip();
+        documentService.replaceDocument(documentId, textFile(first + "\n\n" + inserted + "\n\n" + last));
+
+        // Kept segments keep indexes 0 and 1, the inserted one is stored as 2 but sits between them
+        assertEquals(List.of(0, 2, 1), document.getManifest().entries().stream().map(entry -> entry.index()).toList());
+        assertEquals(List.of(0, 2, 1), List.of(0, 1, 2).stream().map(index -> document.getManifest().positionOf(index)).toList());
+    }
+
+    @Test
+    void testAppendToDocument_NumbersNewSegmentsAfterExistingOnes() {
+        Response<List<Embedding>> response = Response.from(List.of(new Embedding(new float[]{0.5f, 0.2f, 0.3f})));
+        when(embeddingModel.embedAll(anyList())).thenReturn(response);
+        when(documentRepository.nextId()).thenReturn(1L);
+        Long documentId = documentService.uploadDocument(textFile("This is a test document."));
+        Document document = savedDocument();
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+
+        DocumentUpdate update = documentService.appendToDocument(documentId, textFile("This is the appendix."));
+
+        assertEquals(new DocumentUpdate(documentId, 1, 1, 0), update);
+        assertEquals(List.of(0, 1), document.getManifest().entries().stream().map(entry -> entry.index()).toList());
+    }
+
+    @Test
+    void testDeleteDocument_RemovesDocument() {
+        Document document = mock(Document.class);
+        when(document.getId()).thenReturn(1L);
+        when(document.getDocumentEmbeddingStore()).thenReturn(mock(EmbeddingStore.class));
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+
+        documentService.deleteDocument(1L);
+
+        verify(documentRepository).deleteById(1L);
+    }
+
+    @Test
+    void testDeleteDocument_DocumentNotFound() {
+        when(documentRepository.findById(999L)).thenReturn(Optional.empty());
+
+        assertThrows(DocumentNotFoundException.class, () -> documentService.deleteDocument(999L));
+    }
+
     @Test
     void testUploadDocument_UnsupportedMediaType() {
         MultipartFile file = new MockMultipartFile("file", "test.xyz", "application/xyz", new byte[]{});
@@ -98,8 +235,8 @@ class DocumentServiceTest {
 
         // Mock the ContentRetrieverService and ChatLanguageModel behavior
         List<Content> contents = Collections.singletonList(Content.from("This is the content."));
-        when(contentRetrieverService.retrieveRelevantContents(eq(question), eq(embeddingStore))).thenReturn(contents);
-        when(promptBuilder.buildPrompt(contents, question)).thenReturn("You are an assistant that answers questions based on the provided document.\n\n Context: ");
+        when(contentRetrieverService.retrieveRelevantContents(eq(question), eq(embeddingStore), eq(documentId))).thenReturn(contents);
+        when(promptBuilder.buildPrompt(anyList(), eq(question))).thenReturn("You are an assistant that answers questions based on the provided document.\n\n Context: ");
         when(chatLanguageModel.generate(anyString())).thenReturn("This is the answer.");
 
 
@@ -108,9 +245,39 @@ class DocumentServiceTest {
 
         // Assert
         assertEquals("This is the answer.", answer);
+        for (String stage : List.of("embed", "retrieve", "prompt", "generate")) {
+            assertEquals(1, meterRegistry.get("rag.stage.latency").tag("operation", "chat").tag("stage", stage).timer().count());
+        }
     }
 
 
+    @Test
+    void testChatWithDocument_SimilarQuestionAnsweredFromCache() {
+        // Arrange
+        Long documentId = 1L;
+        Document document = mock(Document.class);
+        EmbeddingStore<TextSegment> embeddingStore = mock(EmbeddingStore.class);
+        when(documentRepository.findById(documentId)).thenReturn(Optional.of(document));
+        when(document.getId()).thenReturn(documentId);
+        when(document.getDocumentEmbeddingStore()).thenReturn(embeddingStore);
+        when(contentRetrieverService.embedQuery("What is the content?")).thenReturn(new Embedding(new float[]{1f, 0f, 0f}));
+        when(contentRetrieverService.embedQuery("What is in it?")).thenReturn(new Embedding(new float[]{0.99f, 0.05f, 0f}));
+        when(contentRetrieverService.embedQuery("Who wrote it?")).thenReturn(new Embedding(new float[]{0f, 1f, 0f}));
+        when(promptBuilder.buildPrompt(any(), anyString())).thenReturn("prompt");
+        when(chatLanguageModel.generate(anyString())).thenReturn("This is the answer.", "Someone.");
+
+        // Act
+        String first = documentService.chatWithDocument(documentId, "What is the content?");
+        String similar = documentService.chatWithDocument(documentId, "What is in it?");
+        String different = documentService.chatWithDocument(documentId, "Who wrote it?");
+
+        // Assert
+        assertEquals("This is the answer.", first);
+        assertEquals("This is the answer.", similar);
+        assertEquals("Someone.", different);
+        verify(chatLanguageModel, times(2)).generate(anyString());
+    }
+
     @Test
     void testChatWithDocument_DocumentNotFound() {
         // Arrange
@@ -129,6 +296,35 @@ class DocumentServiceTest {
         assertThrows(DocumentNotFoundException.class, () -> documentService.chatWithDocument(documentId, question));
     }
 
+    @Test
+    void testUploadDocument_FailedEmbeddingLeavesNoNodesInTheSharedIndex() {
+        EmbeddingStoreFactory hnswStores = new EmbeddingStoreFactory("hnsw", 16, 200, 64, 1000, 4096, "data/documents", 4, 0, 1024);
+        EmbeddingExecutor embeddingExecutor = new EmbeddingExecutor(embeddingModel, 1, 16, 16, new SimpleMeterRegistry());
+        StreamingIngestionPipeline ingestionPipeline = new StreamingIngestionPipeline(embeddingExecutor, new SegmentEmbeddingCache(false, 1000, meterRegistry), new DocumentTextExtractor(1, meterRegistry), "character", 300, 0, null, 64, meterRegistry);
+        DocumentService service = new DocumentService(documentRepository, embeddingModel, chatLanguageModel, contentRetrieverService, promptBuilder, ingestionPipeline, hnswStores, new SemanticAnswerCache(true, 0.95f, 100, 1000, new SimpleMeterRegistry()), new LexicalIndexRegistry("dense"), meterRegistry);
+        when(documentRepository.nextId()).thenReturn(1L);
+        // The first ingestion batch of 64 segments is stored, then embedding fails
+        int[] calls = {0};
+        when(embeddingModel.embedAll(anyList())).thenAnswer(invocation -> {
+            if (++calls[0] > 4) {
+                throw new IllegalStateException("embedding failed");
+            }
+            List<TextSegment> segments = invocation.getArgument(0);
+            return Response.from(segments.stream().map(segment -> new Embedding(new float[]{segment.text().length(), 1f, 0f})).toList());
+        });
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("Paragraph ").append(i).append(" of the report. ".repeat(12).strip()).append("\n\n");
+        }
+
+        assertThrows(IllegalStateException.class, () -> service.uploadDocument(textFile(content.toString())));
+
+        // Nodes were added before the failure and are tombstoned now
+        assertTrue(hnswStores.getSharedIndex().slotCount() > 0);
+        assertEquals(0, hnswStores.getSharedIndex().size());
+        verify(documentRepository, never()).save(any());
+    }
+
     @Test
     void testUploadDocument_EmptyFile() {
         // Arrange
@@ -185,4 +381,13 @@ class DocumentServiceTest {
         assertThrows(IllegalArgumentException.class, () -> documentService.chatWithDocument(documentId, question));
     }
 
+    private static MultipartFile textFile(String content) {
+        return new MockMultipartFile("file", "test.txt", "text/plain", content.getBytes());
+    }
+
+    private Document savedDocument() {
+        ArgumentCaptor<Document> saved = ArgumentCaptor.forClass(Document.class);
+        verify(documentRepository).save(saved.capture());
+        return saved.getValue();
+    }
 }
@@ -0,0 +1,257 @@
+package store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.store.DocumentScopedEmbeddingStore;
+import org.mkcoding.store.HnswEmbeddingStore;
+import org.mkcoding.store.VectorMath;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 32;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void testSearch_RecallAgainstExactSearch() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(16, 100, 64, 0);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            float[] vector = randomVector();
+            vectors.add(VectorMath.normalize(vector));
+            index.add(new Embedding(vector), TextSegment.from(String.valueOf(i)));
+        }
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = VectorMath.normalize(randomVector());
+            Set<String> expected = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -VectorMath.dot(query, vectors.get(i))))
+                    .limit(10)
+                    .map(String::valueOf)
+                    .collect(Collectors.toSet());
+
+            List<EmbeddingMatch<TextSegment>> matches = index.search(request(query, 10)).matches();
+
+            assertEquals(10, matches.size());
+            hits += (int) matches.stream().filter(match -> expected.contains(match.embedded().text())).count();
+        }
+        assertTrue(hits / (queries * 10.0) > 0.9, "Recall@10 should exceed 0.9 but was " + hits / (queries * 10.0));
+    }
+
+    @Test
+    void testSearch_ConcurrentSearchesMatchSequentialOnes() throws Exception {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 0);
+        for (int i = 0; i < 2_000; i++) {
+            index.add(new Embedding(randomVector()), TextSegment.from(String.valueOf(i)));
+        }
+        List<float[]> queries = IntStream.range(0, 64).mapToObj(i -> randomVector()).toList();
+        List<List<String>> expected = queries.stream().map(query -> ids(index, query)).toList();
+
+        // More threads than pooled visited sets, so some searches borrow and others allocate their own
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (float[] query : queries) {
+                results.add(threads.submit(() -> ids(index, query)));
+            }
+            for (int i = 0; i < queries.size(); i++) {
+                assertEquals(expected.get(i), results.get(i).get());
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSearch_ScopedToDocument() {
+        // A tenth of a small graph is cheaper to scan than to walk to, whatever the threshold
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 0);
+        DocumentScopedEmbeddingStore first = new DocumentScopedEmbeddingStore(index, 1L);
+        DocumentScopedEmbeddingStore second = new DocumentScopedEmbeddingStore(index, 2L);
+        for (int i = 0; i < 500; i++) {
+            (i % 10 == 0 ? first : second).add(new Embedding(randomVector()), TextSegment.from("segment " + i, new Metadata()));
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = first.search(request(randomVector(), 5)).matches();
+
+        assertEquals(5, matches.size());
+        assertTrue(matches.stream().allMatch(match -> match.embedded().metadata().getLong(HnswEmbeddingStore.DOCUMENT_ID_KEY) == 1L));
+        assertTrue(matches.get(0).score() >= matches.get(4).score());
+    }
+
+    @Test
+    void testSearch_ScopedToLargeDocumentWalksTheGraph() {
+        // Half of 12000 nodes is past the exact scan cost of 4 * ef * 2m / selectivity = 4096 visits
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 0);
+        DocumentScopedEmbeddingStore document = new DocumentScopedEmbeddingStore(index, 1L);
+        DocumentScopedEmbeddingStore other = new DocumentScopedEmbeddingStore(index, 2L);
+        List<float[]> documentVectors = new ArrayList<>();
+        for (int i = 0; i < 12_000; i++) {
+            float[] vector = randomVector();
+            if (i % 2 == 0) {
+                documentVectors.add(VectorMath.normalize(vector));
+                document.add(new Embedding(vector), TextSegment.from(String.valueOf(documentVectors.size() - 1), new Metadata()));
+            } else {
+                other.add(new Embedding(vector), TextSegment.from("other " + i, new Metadata()));
+            }
+        }
+
+        int hits = 0;
+        int queries = 20;
+        for (int q = 0; q < queries; q++) {
+            float[] query = VectorMath.normalize(randomVector());
+            Set<String> expected = IntStream.range(0, documentVectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -VectorMath.dot(query, documentVectors.get(i))))
+                    .limit(10)
+                    .map(String::valueOf)
+                    .collect(Collectors.toSet());
+
+            List<EmbeddingMatch<TextSegment>> matches = document.search(request(query, 10)).matches();
+
+            assertEquals(10, matches.size());
+            assertTrue(matches.stream().allMatch(match -> match.embedded().metadata().getLong(HnswEmbeddingStore.DOCUMENT_ID_KEY) == 1L));
+            hits += (int) matches.stream().filter(match -> expected.contains(match.embedded().text())).count();
+        }
+        // Same as an unbounded walk reaches with ef 32 on this graph
+        assertTrue(hits / (queries * 10.0) > 0.7, "Recall@10 should exceed 0.7 but was " + hits / (queries * 10.0));
+    }
+
+    @Test
+    void testSearch_ReturnsCopiesOfStoredVectors() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 1000);
+        float[] vector = randomVector();
+        index.add(new Embedding(vector), TextSegment.from("segment"));
+
+        float[] returned = index.search(request(vector, 1)).matches().get(0).embedding().vector();
+        returned[0] = Float.NaN;
+
+        assertEquals(1, index.search(request(vector, 1)).matches().get(0).score(), 1e-5);
+    }
+
+    @Test
+    void testSearch_AcrossSelectedDocuments() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 0);
+        for (long documentId = 1; documentId <= 3; documentId++) {
+            DocumentScopedEmbeddingStore store = new DocumentScopedEmbeddingStore(index, documentId);
+            for (int i = 0; i < 200; i++) {
+                store.add(new Embedding(randomVector()), TextSegment.from("segment " + i, new Metadata()));
+            }
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = index.search(request(randomVector(), 10), Set.of(1L, 3L)).matches();
+
+        assertEquals(10, matches.size());
+        assertTrue(matches.stream().map(match -> match.embedded().metadata().getLong(HnswEmbeddingStore.DOCUMENT_ID_KEY))
+                .allMatch(documentId -> documentId == 1L || documentId == 3L));
+        for (int i = 1; i < matches.size(); i++) {
+            assertTrue(matches.get(i - 1).score() >= matches.get(i).score());
+        }
+    }
+
+    @Test
+    void testRemoveDocument_TombstonesUntilCompaction() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 0);
+        DocumentScopedEmbeddingStore kept = new DocumentScopedEmbeddingStore(index, 1L);
+        DocumentScopedEmbeddingStore deleted = new DocumentScopedEmbeddingStore(index, 2L);
+        for (int i = 0; i < 300; i++) {
+            (i % 2 == 0 ? kept : deleted).add(new Embedding(randomVector()), TextSegment.from("segment " + i, new Metadata()));
+        }
+
+        index.removeDocument(2L);
+
+        assertEquals(150, index.tombstoneCount());
+        assertTrue(deleted.search(request(randomVector(), 5)).matches().isEmpty());
+        List<EmbeddingMatch<TextSegment>> matches = index.search(request(randomVector(), 20)).matches();
+        assertEquals(20, matches.size());
+        assertTrue(matches.stream().allMatch(match -> match.embedded().metadata().getLong(HnswEmbeddingStore.DOCUMENT_ID_KEY) == 1L));
+
+        index.compact();
+
+        assertEquals(0, index.tombstoneCount());
+        assertEquals(150, index.slotCount());
+        assertEquals(5, kept.search(request(randomVector(), 5)).matches().size());
+    }
+
+    @Test
+    void testRemoveAll_ByIdBeforeAndAfterCompaction() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 1000);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(index.add(new Embedding(randomVector()), TextSegment.from("segment " + i)));
+        }
+
+        index.removeAll(ids.subList(0, 40));
+        index.compact();
+        // Ids keep resolving to their nodes in the rebuilt graph; unknown and already removed ids are ignored
+        index.removeAll(List.of(ids.get(0), ids.get(50), "unknown"));
+
+        assertEquals(59, index.size());
+        assertTrue(index.search(request(randomVector(), 100)).matches().stream()
+                .noneMatch(match -> match.embeddingId().equals(ids.get(50))));
+    }
+
+    @Test
+    void testScopedStore_AddsByIdAndOnlyRemovesItsOwnSegments() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(8, 50, 32, 1000);
+        DocumentScopedEmbeddingStore first = new DocumentScopedEmbeddingStore(index, 1L);
+        DocumentScopedEmbeddingStore second = new DocumentScopedEmbeddingStore(index, 2L);
+        float[] vector = randomVector();
+        first.add("chosen-id", new Embedding(vector));
+        String otherId = second.add(new Embedding(randomVector()), TextSegment.from("other", new Metadata()));
+
+        EmbeddingMatch<TextSegment> match = first.search(request(vector, 1)).matches().get(0);
+        assertEquals("chosen-id", match.embeddingId());
+        assertEquals(1, first.search(request(randomVector(), 5)).matches().size());
+
+        first.removeAll(List.of("chosen-id", otherId));
+
+        assertEquals(1, index.size());
+        assertEquals(otherId, second.search(request(randomVector(), 1)).matches().get(0).embeddingId());
+    }
+
+    @Test
+    void testSearch_EmptyIndex() {
+        HnswEmbeddingStore index = new HnswEmbeddingStore(16, 100, 64, 1000);
+
+        assertTrue(index.search(request(randomVector(), 5)).matches().isEmpty());
+    }
+
+    private static List<String> ids(HnswEmbeddingStore index, float[] query) {
+        return index.search(request(query, 10)).matches().stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static EmbeddingSearchRequest request(float[] query, int maxResults) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(query))
+                .maxResults(maxResults)
+                .minScore(0.0)
+                .build();
+    }
+}
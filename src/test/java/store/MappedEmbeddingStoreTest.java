@@ -0,0 +1,136 @@
+package store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mkcoding.model.Document;
+import org.mkcoding.repository.MappedFileDocumentRepository;
+import org.mkcoding.store.MappedEmbeddingStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedEmbeddingStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReopen_RestoresVectorsAndSegments() throws Exception {
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory)) {
+            store.addAll(
+                    List.of(new Embedding(new float[]{1f, 0f}), new Embedding(new float[]{0f, 1f})),
+                    List.of(TextSegment.from("first", Metadata.from("index", "0")), TextSegment.from("second", Metadata.from("index", "1"))));
+            store.flush();
+        }
+
+        try (MappedEmbeddingStore reopened = new MappedEmbeddingStore(directory)) {
+            List<EmbeddingMatch<TextSegment>> matches = reopened.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(new Embedding(new float[]{0f, 1f}))
+                    .maxResults(1)
+                    .build()).matches();
+
+            assertEquals(2, reopened.size());
+            assertEquals("second", matches.get(0).embedded().text());
+            assertEquals("1", matches.get(0).embedded().metadata().getString("index"));
+        }
+    }
+
+    @Test
+    void testRemove_TombstonesSurviveReopenAndCompactionRewritesFiles() throws Exception {
+        Path storeDirectory = directory.resolve("1");
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(storeDirectory)) {
+            List<String> ids = store.addAll(
+                    List.of(new Embedding(new float[]{1f, 0f}), new Embedding(new float[]{0f, 1f}), new Embedding(new float[]{0.7f, 0.7f})),
+                    List.of(TextSegment.from("first"), TextSegment.from("second"), TextSegment.from("third")));
+            store.remove(ids.get(1));
+            store.flush();
+        }
+
+        try (MappedEmbeddingStore reopened = new MappedEmbeddingStore(storeDirectory)) {
+            assertEquals(1, reopened.tombstoneCount());
+            assertEquals("third", search(reopened, new float[]{0f, 1f}).get(0).embedded().text());
+            long vectorBytes = Files.size(storeDirectory.resolve("vectors.f32"));
+
+            reopened.compact();
+
+            assertEquals(0, reopened.tombstoneCount());
+            assertEquals(2, reopened.slotCount());
+            assertEquals(vectorBytes - 2 * Float.BYTES, Files.size(storeDirectory.resolve("vectors.f32")));
+            assertEquals("third", search(reopened, new float[]{0f, 1f}).get(0).embedded().text());
+            // Still writable after the swap
+            reopened.add(new Embedding(new float[]{0f, 1f}), TextSegment.from("fourth"));
+            assertEquals("fourth", search(reopened, new float[]{0f, 1f}).get(0).embedded().text());
+        }
+        assertTrue(Files.notExists(directory.resolve("1.compacting")));
+        assertTrue(Files.notExists(directory.resolve("1.old")));
+    }
+
+    @Test
+    void testOpen_FinishesInterruptedCompaction() throws Exception {
+        // A crash between moving the original away and moving the compacted copy into place
+        try (MappedEmbeddingStore compacted = new MappedEmbeddingStore(directory.resolve("1.compacting"))) {
+            compacted.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("compacted"));
+            compacted.flush();
+        }
+        new MappedEmbeddingStore(directory.resolve("1.old")).close();
+
+        try (MappedEmbeddingStore store = new MappedEmbeddingStore(directory.resolve("1"))) {
+            assertEquals(1, store.size());
+            assertEquals("compacted", search(store, new float[]{1f, 0f}).get(0).embedded().text());
+        }
+        assertTrue(Files.notExists(directory.resolve("1.old")));
+    }
+
+    @Test
+    void testRepository_KeepsIdsMonotonicAcrossRestarts() throws Exception {
+        MappedFileDocumentRepository repository = new MappedFileDocumentRepository(directory.toString());
+        Long committedId = repository.nextId();
+        MappedEmbeddingStore store = new MappedEmbeddingStore(repository.documentDirectory(committedId));
+        store.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("kept"));
+        repository.save(new Document(committedId, store));
+        // Allocated but never committed, e.g. an upload interrupted by a crash
+        Long abandonedId = repository.nextId();
+        new MappedEmbeddingStore(repository.documentDirectory(abandonedId)).close();
+        repository.close();
+
+        MappedFileDocumentRepository restarted = new MappedFileDocumentRepository(directory.toString());
+
+        assertTrue(restarted.findById(committedId).isPresent());
+        assertTrue(restarted.findById(abandonedId).isEmpty());
+        assertTrue(restarted.nextId() > abandonedId);
+        restarted.close();
+    }
+
+    @Test
+    void testRepository_DeletedDocumentStaysDeletedAfterRestart() throws Exception {
+        MappedFileDocumentRepository repository = new MappedFileDocumentRepository(directory.toString());
+        Long id = repository.nextId();
+        MappedEmbeddingStore store = new MappedEmbeddingStore(repository.documentDirectory(id));
+        store.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("deleted"));
+        repository.save(new Document(id, store));
+
+        repository.deleteById(id);
+        store.delete();
+        repository.close();
+
+        MappedFileDocumentRepository restarted = new MappedFileDocumentRepository(directory.toString());
+        assertTrue(restarted.findById(id).isEmpty());
+        assertTrue(Files.notExists(restarted.documentDirectory(id)));
+        restarted.close();
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(MappedEmbeddingStore store, float[] query) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(query))
+                .maxResults(1)
+                .build()).matches();
+    }
+}
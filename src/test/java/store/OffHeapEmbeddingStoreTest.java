@@ -0,0 +1,79 @@
+package store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.store.OffHeapEmbeddingStore;
+
+import java.util.List;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapEmbeddingStoreTest {
+
+    @Test
+    void testSearch_ReturnsClosestVectorsAcrossChunks() {
+        // Two vectors per chunk forces the scan over several buffers
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore(2);
+        store.add(new Embedding(new float[]{1f, 0f, 0f}), TextSegment.from("x"));
+        store.add(new Embedding(new float[]{0f, 1f, 0f}), TextSegment.from("y"));
+        store.add(new Embedding(new float[]{0f, 0f, 1f}), TextSegment.from("z"));
+        store.add(new Embedding(new float[]{0.9f, 0.1f, 0f}), TextSegment.from("mostly x"));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(new float[]{1f, 0f, 0f}))
+                .maxResults(2)
+                .build()).matches();
+
+        assertEquals(List.of("x", "mostly x"), matches.stream().map(match -> match.embedded().text()).toList());
+        assertEquals(1.0, matches.get(0).score(), 1e-6);
+        assertEquals(4, store.size());
+        assertEquals(2 * 2 * 3 * Float.BYTES, store.offHeapBytes());
+    }
+
+    @Test
+    void testSearch_AppliesMetadataFilter() {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore(16);
+        store.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("a", Metadata.from("lang", "en")));
+        store.add(new Embedding(new float[]{0.8f, 0.2f}), TextSegment.from("b", Metadata.from("lang", "pl")));
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(new float[]{1f, 0f}))
+                .maxResults(5)
+                .filter(metadataKey("lang").isEqualTo("pl"))
+                .build()).matches();
+
+        assertEquals(1, matches.size());
+        assertEquals("b", matches.get(0).embedded().text());
+    }
+
+    @Test
+    void testRemove_TombstonesUntilCompaction() {
+        OffHeapEmbeddingStore store = new OffHeapEmbeddingStore(2);
+        String x = store.add(new Embedding(new float[]{1f, 0f, 0f}), TextSegment.from("x"));
+        store.add(new Embedding(new float[]{0f, 1f, 0f}), TextSegment.from("y"));
+        store.add(new Embedding(new float[]{0.9f, 0.1f, 0f}), TextSegment.from("mostly x"));
+
+        store.removeAll(List.of(x));
+
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(new float[]{1f, 0f, 0f}))
+                .maxResults(1)
+                .build();
+        assertEquals("mostly x", store.search(request).matches().get(0).embedded().text());
+        assertEquals(1, store.tombstoneCount());
+        assertEquals(3, store.slotCount());
+
+        store.compact();
+
+        assertEquals("mostly x", store.search(request).matches().get(0).embedded().text());
+        assertEquals(0, store.tombstoneCount());
+        assertEquals(2, store.size());
+        assertEquals(2, store.slotCount());
+        assertEquals(2 * 3 * Float.BYTES, store.offHeapBytes());
+    }
+}
@@ -0,0 +1,110 @@
+package store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.mkcoding.store.QuantizedEmbeddingStore;
+import org.mkcoding.store.VectorMath;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recall of the quantized store against the exact brute-force ranking, which is what the per-document
+ * in-memory stores return today.
+ */
+class QuantizedEmbeddingStoreTest {
+
+    private static final int DIMENSION = 64;
+    private static final int VECTORS = 3_000;
+
+    private final Random random = new Random(11);
+
+    @Test
+    void testScalarQuantization_RecallAndCompression() {
+        try (QuantizedEmbeddingStore store = new QuantizedEmbeddingStore(4, 0, 0)) {
+            double recall = recallAt10(store);
+
+            long floatBytes = (long) VECTORS * DIMENSION * Float.BYTES;
+            assertTrue(recall > 0.98, "int8 recall@10 should exceed 0.98 but was " + recall);
+            assertTrue(floatBytes / store.codeBytes() >= 3);
+        }
+    }
+
+    @Test
+    void testProductQuantization_RecallAndCompression() {
+        try (QuantizedEmbeddingStore store = new QuantizedEmbeddingStore(8, 16, 1_000)) {
+            double recall = recallAt10(store);
+
+            long floatBytes = (long) VECTORS * DIMENSION * Float.BYTES;
+            assertTrue(store.isProductQuantized());
+            assertTrue(recall > 0.8, "PQ recall@10 should exceed 0.8 but was " + recall);
+            assertEquals(16, floatBytes / store.codeBytes());
+        }
+    }
+
+    @Test
+    void testSearch_ReturnsExactScores() {
+        try (QuantizedEmbeddingStore store = new QuantizedEmbeddingStore(2, 0, 0)) {
+            store.add(new Embedding(new float[]{1f, 0f, 0f}), TextSegment.from("x"));
+            store.add(new Embedding(new float[]{0f, 1f, 0f}), TextSegment.from("y"));
+            store.add(new Embedding(new float[]{0.9f, 0.1f, 0f}), TextSegment.from("mostly x"));
+
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request(new float[]{1f, 0f, 0f}, 2)).matches();
+
+            assertEquals(List.of("x", "mostly x"), matches.stream().map(match -> match.embedded().text()).toList());
+            assertEquals(1.0, matches.get(0).score(), 1e-6);
+            assertArrayEquals(new float[]{1f, 0f, 0f}, matches.get(0).embedding().vector(), 1e-6f);
+        }
+    }
+
+    private double recallAt10(QuantizedEmbeddingStore store) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < VECTORS; i++) {
+            float[] vector = randomVector();
+            vectors.add(VectorMath.normalize(vector));
+            store.add(new Embedding(vector), TextSegment.from(String.valueOf(i)));
+        }
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = VectorMath.normalize(randomVector());
+            Set<String> expected = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -VectorMath.dot(query, vectors.get(i))))
+                    .limit(10)
+                    .map(String::valueOf)
+                    .collect(Collectors.toSet());
+
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request(query, 10)).matches();
+
+            assertEquals(10, matches.size());
+            hits += (int) matches.stream().filter(match -> expected.contains(match.embedded().text())).count();
+        }
+        return hits / (queries * 10.0);
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static EmbeddingSearchRequest request(float[] vector, int maxResults) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(vector))
+                .maxResults(maxResults)
+                .build();
+    }
+}
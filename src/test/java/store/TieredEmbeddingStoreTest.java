@@ -0,0 +1,135 @@
+package store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mkcoding.model.Document;
+import org.mkcoding.repository.TieredDocumentRepository;
+import org.mkcoding.store.TieredEmbeddingStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredEmbeddingStoreTest {
+
+    // One chunk of 4-dimensional vectors is 640 KB, so two resident stores exceed a 1 MB budget
+    private static final int VECTORS_PER_CHUNK = 40_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEvict_ReloadsSameIdsAndSegmentsOnAccess() throws Exception {
+        TieredEmbeddingStore store = new TieredEmbeddingStore(directory.resolve("1"), 16);
+        List<String> ids = store.addAll(
+                List.of(new Embedding(new float[]{1f, 0f}), new Embedding(new float[]{0f, 1f}), new Embedding(new float[]{0.7f, 0.7f})),
+                List.of(TextSegment.from("first", Metadata.from("index", "0")), TextSegment.from("second", Metadata.from("index", "1")),
+                        TextSegment.from("third", Metadata.from("index", "2"))));
+        store.remove(ids.get(2));
+
+        assertTrue(store.evict() > 0);
+        assertFalse(store.isResident());
+        assertEquals(0, store.memoryBytes());
+        assertTrue(Files.exists(directory.resolve("1")));
+
+        EmbeddingMatch<TextSegment> match = search(store, new float[]{0f, 1f});
+        assertTrue(store.isResident());
+        assertEquals(ids.get(1), match.embeddingId());
+        assertEquals("second", match.embedded().text());
+        assertEquals("1", match.embedded().metadata().getString("index"));
+        // Removed entries are not carried over to disk
+        assertEquals(2, store.slotCount());
+
+        // Removing by an id assigned before the eviction still works after the reload
+        store.remove(ids.get(1));
+        assertEquals("first", search(store, new float[]{0f, 1f}).embedded().text());
+
+        store.delete();
+        assertTrue(Files.notExists(directory.resolve("1")));
+    }
+
+    @Test
+    void testRemove_LowersMemoryBytesToTheLiveEntries() {
+        TieredEmbeddingStore store = new TieredEmbeddingStore(directory.resolve("1"), 16);
+        String kept = store.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("kept"));
+        String removed = store.add(new Embedding(new float[]{0f, 1f}), TextSegment.from("x".repeat(10_000)));
+        TieredEmbeddingStore live = new TieredEmbeddingStore(directory.resolve("2"), 16);
+        live.add(new Embedding(new float[]{1f, 0f}), TextSegment.from("kept"));
+        long before = store.memoryBytes();
+
+        store.remove(removed);
+        // Removing an id twice counts its text once
+        store.remove(removed);
+
+        assertTrue(store.memoryBytes() <= before - 20_000);
+        store.compact();
+        assertEquals(live.memoryBytes(), store.memoryBytes());
+        assertEquals(kept, search(store, new float[]{0f, 1f}).embeddingId());
+    }
+
+    @Test
+    void testRepository_EvictsLeastRecentlyUsedOverBudgetAndReloadsOnFind() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TieredDocumentRepository repository = new TieredDocumentRepository(directory.toString(), 1, "lru", meterRegistry);
+        TieredEmbeddingStore first = store(1, "first");
+        TieredEmbeddingStore second = store(2, "second");
+
+        repository.save(new Document(1L, first));
+        repository.save(new Document(2L, second));
+
+        assertFalse(first.isResident());
+        assertTrue(second.isResident());
+        assertEquals(1, meterRegistry.get("document.repository.evictions").counter().count());
+        assertEquals(1, meterRegistry.get("document.repository.resident.documents").gauge().value());
+
+        Document found = repository.findById(1L).orElseThrow();
+
+        assertTrue(first.isResident());
+        assertFalse(second.isResident());
+        assertEquals("first", search(found.getDocumentEmbeddingStore(), new float[]{1f, 0f, 0f, 0f}).embedded().text());
+        assertEquals(2, meterRegistry.get("document.repository.evictions").counter().count());
+        assertEquals(1, meterRegistry.get("document.repository.reload.latency").timer().count());
+        assertTrue(meterRegistry.get("document.repository.resident.bytes").gauge().value() <= 1024 * 1024);
+    }
+
+    @Test
+    void testRepository_SizePolicyEvictsLargestFirst() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        TieredDocumentRepository repository = new TieredDocumentRepository(directory.toString(), 1, "size", meterRegistry);
+        TieredEmbeddingStore small = new TieredEmbeddingStore(directory.resolve("cold").resolve("1"), 16);
+        small.add(new Embedding(new float[]{1f, 0f, 0f, 0f}), TextSegment.from("small"));
+        TieredEmbeddingStore large = store(2, "large");
+        TieredEmbeddingStore latest = store(3, "latest");
+
+        repository.save(new Document(1L, small));
+        repository.save(new Document(2L, large));
+        repository.save(new Document(3L, latest));
+
+        // The least recently used document is small enough to stay
+        assertTrue(small.isResident());
+        assertFalse(large.isResident());
+        assertTrue(latest.isResident());
+    }
+
+    private TieredEmbeddingStore store(long documentId, String text) {
+        TieredEmbeddingStore store = new TieredEmbeddingStore(directory.resolve("cold").resolve(String.valueOf(documentId)), VECTORS_PER_CHUNK);
+        store.add(new Embedding(new float[]{1f, 0f, 0f, 0f}), TextSegment.from(text));
+        return store;
+    }
+
+    private static EmbeddingMatch<TextSegment> search(EmbeddingStore<TextSegment> store, float[] query) {
+        return store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(new Embedding(query))
+                .maxResults(1)
+                .build()).matches().get(0);
+    }
+}
@@ -0,0 +1,62 @@
+package store;
+
+import org.junit.jupiter.api.Test;
+import org.mkcoding.store.VectorKernel;
+import org.mkcoding.store.VectorMath;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VectorKernelTest {
+
+    private static final int DIMENSION = 384;
+
+    @Test
+    void testPreferredKernel_IsSimdWhenTheIncubatorModuleIsLoaded() {
+        // Surefire adds the module; an IDE run may not
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+
+        assertTrue(VectorKernel.simd().isPresent());
+        assertEquals(VectorKernel.simd().get().name(), VectorMath.kernel().name());
+    }
+
+    @Test
+    void testSimd_MatchesScalarForAnyLengthAndByteOrder() {
+        VectorKernel simd = VectorKernel.simd().orElseGet(VectorKernel::scalar);
+        VectorKernel scalar = VectorKernel.scalar();
+        Random random = new Random(7);
+
+        // Lengths around the lane counts exercise the two-accumulator loop, the single step and the tail
+        for (int length : IntStream.concat(IntStream.rangeClosed(1, 70), IntStream.of(DIMENSION)).toArray()) {
+            float[] a = randomVector(random, length);
+            float[] b = randomVector(random, length);
+            float expected = scalar.dot(a, b);
+            assertEquals(expected, simd.dot(a, b), 1e-4, "length " + length);
+
+            for (ByteBuffer buffer : new ByteBuffer[]{
+                    ByteBuffer.allocate((length + 3) * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN),
+                    ByteBuffer.allocateDirect((length + 3) * Float.BYTES).order(ByteOrder.BIG_ENDIAN)}) {
+                // An unaligned offset after three other floats
+                int offset = 3 * Float.BYTES;
+                for (int i = 0; i < length; i++) {
+                    buffer.putFloat(offset + i * Float.BYTES, b[i]);
+                }
+                assertEquals(expected, scalar.dot(a, buffer, offset), 1e-4, "length " + length);
+                assertEquals(expected, simd.dot(a, buffer, offset), 1e-4, "length " + length);
+            }
+        }
+    }
+
+    private static float[] randomVector(Random random, int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian() / 8;
+        }
+        return vector;
+    }
+}